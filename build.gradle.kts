@@ -34,10 +34,57 @@ java {
     }
 }
 
+// Multi-release sources. Classes in src/main/javaN replace the ones in
+// src/main/java on Java N+, and are packaged in META-INF/versions/N.
+// They are all compiled by the newest JDK, targeting their release.
+val releases = listOf(16, 21)
+val newestRelease = JavaLanguageVersion.of(releases.last())
+
+for (release in releases) {
+    val sourceSet = sourceSets.create("java$release") {
+        java.srcDir("src/main/java$release")
+        compileClasspath += sourceSets.main.get().output + sourceSets.main.get().compileClasspath
+    }
+    tasks.named<JavaCompile>(sourceSet.compileJavaTaskName) {
+        javaCompiler.set(javaToolchains.compilerFor {
+            languageVersion.set(newestRelease)
+        })
+        options.release.set(release)
+    }
+}
+
+tasks.jar {
+    manifest {
+        attributes("Multi-Release" to "true")
+    }
+    for (release in releases) {
+        into("META-INF/versions/$release") {
+            from(sourceSets["java$release"].output)
+        }
+    }
+}
+
 tasks.named<Test>("test") {
     useJUnitPlatform()
 }
 
+// Runs the tests against the multi-release jar on the newest JDK, so that
+// the classes in META-INF/versions are tested too
+val multiReleaseTest by tasks.registering(Test::class) {
+    description = "Runs the tests against the multi-release jar on Java ${newestRelease.asInt()}."
+    group = LifecycleBasePlugin.VERIFICATION_GROUP
+    useJUnitPlatform()
+    testClassesDirs = sourceSets.test.get().output.classesDirs
+    classpath = files(tasks.jar) + sourceSets.test.get().runtimeClasspath.minus(sourceSets.main.get().output)
+    javaLauncher.set(javaToolchains.launcherFor {
+        languageVersion.set(newestRelease)
+    })
+}
+
+tasks.check {
+    dependsOn(multiReleaseTest)
+}
+
 mavenPublishing {
     coordinates(
         groupId = group as String,
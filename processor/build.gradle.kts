@@ -0,0 +1,55 @@
+import com.vanniktech.maven.publish.SonatypeHost
+
+plugins {
+    id("java")
+    id("com.vanniktech.maven.publish")
+}
+
+group = rootProject.group
+version = rootProject.version
+
+repositories {
+    mavenCentral()
+}
+
+java {
+    toolchain {
+        languageVersion.set(JavaLanguageVersion.of(11))
+    }
+}
+
+mavenPublishing {
+    coordinates(
+        groupId = group as String,
+        artifactId = "spec-processor",
+        version = version as String
+    )
+    pom {
+        name.set("spec-processor")
+        description.set("An optional annotation processor that generates spec metadata at compile time")
+        inceptionYear.set("2024")
+        url.set("https://github.com/Revxrsal/spec/")
+        licenses {
+            license {
+                name.set("MIT")
+                url.set("https://mit-license.org/")
+                distribution.set("https://mit-license.org/")
+            }
+        }
+        developers {
+            developer {
+                id.set("revxrsal")
+                name.set("Revxrsal")
+                url.set("https://github.com/Revxrsal/")
+            }
+        }
+        scm {
+            url.set("https://github.com/Revxrsal/spec/")
+            connection.set("scm:git:git://github.com/Revxrsal/spec.git")
+            developerConnection.set("scm:git:ssh://git@github.com/Revxrsal/spec.git")
+        }
+    }
+
+    publishToMavenCentral(SonatypeHost.CENTRAL_PORTAL)
+    signAllPublications()
+}
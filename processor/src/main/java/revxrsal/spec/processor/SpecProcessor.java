@@ -0,0 +1,495 @@
+/*
+ * This file is part of Cream, licensed under the MIT License.
+ *
+ *  Copyright (c) Revxrsal <reflxction.github@gmail.com>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+package revxrsal.spec.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * Generates the metadata of {@code @ConfigSpec} interfaces at compile time, so
+ * that they do not have to be parsed with reflection when they are first used.
+ * <p>
+ * This mirrors {@code SpecProperty.propertiesOf()}: every spec gets a
+ * {@code <spec>$$SpecMetadata} class in the same package, and is listed in
+ * {@code META-INF/spec/metadata.index}. Specs that are not listed in the
+ * index are parsed with reflection as usual.
+ * <p>
+ * Invalid specs are reported as compile errors.
+ */
+@SupportedAnnotationTypes(SpecProcessor.CONFIG_SPEC)
+public final class SpecProcessor extends AbstractProcessor {
+
+    static final String CONFIG_SPEC = "revxrsal.spec.annotation.ConfigSpec";
+    private static final String KEY = "revxrsal.spec.annotation.Key";
+    private static final String COMMENT = "revxrsal.spec.annotation.Comment";
+    private static final String ORDER = "revxrsal.spec.annotation.Order";
+    private static final String IGNORE_METHOD = "revxrsal.spec.annotation.IgnoreMethod";
+    private static final String HANDLED_BY_PROXY = "revxrsal.spec.annotation.HandledByProxy";
+    private static final String SERIALIZED_NAME = "com.google.gson.annotations.SerializedName";
+
+    private static final String METADATA = "revxrsal.spec.SpecMetadata";
+    private static final String INDEX = "META-INF/spec/metadata.index";
+    private static final String SUFFIX = "$$SpecMetadata";
+
+    private static final Pattern NEW_LINE = Pattern.compile("\n", Pattern.LITERAL);
+    private static final Pattern CAMEL_CASE = Pattern.compile("([a-z])([A-Z])");
+
+    private Elements elements;
+    private Types types;
+    private Filer filer;
+    private Messager messager;
+
+    /**
+     * The binary names of all specs that had metadata generated, and their
+     * elements
+     */
+    private final Map<String, TypeElement> indexed = new LinkedHashMap<>();
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        this.elements = processingEnv.getElementUtils();
+        this.types = processingEnv.getTypeUtils();
+        this.filer = processingEnv.getFiler();
+        this.messager = processingEnv.getMessager();
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round) {
+        if (round.processingOver()) {
+            writeIndex();
+            return false;
+        }
+        TypeElement configSpec = elements.getTypeElement(CONFIG_SPEC);
+        if (configSpec == null)
+            return false;
+        for (Element element : round.getElementsAnnotatedWith(configSpec)) {
+            if (element.getKind() != ElementKind.INTERFACE || !isAccessible(element))
+                continue;
+            TypeElement type = (TypeElement) element;
+            try {
+                Map<String, Property> properties = propertiesOf(type);
+                String binaryName = elements.getBinaryName(type).toString();
+                writeMetadata(type, binaryName, properties);
+                indexed.put(binaryName, type);
+            } catch (InvalidSpecException e) {
+                messager.printMessage(Diagnostic.Kind.ERROR, e.getMessage(), e.element);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tests whether the generated class can access the given spec. Private
+     * specs are left for reflection.
+     */
+    private static boolean isAccessible(Element element) {
+        for (Element e = element; e instanceof TypeElement; e = e.getEnclosingElement()) {
+            if (e.getModifiers().contains(Modifier.PRIVATE))
+                return false;
+        }
+        return true;
+    }
+
+    private Map<String, Property> propertiesOf(TypeElement type) {
+        List<ExecutableElement> methods = new ArrayList<>();
+        collectMethods(type, type, methods);
+        sortByOrder(methods);
+
+        Map<String, Property> properties = new LinkedHashMap<>();
+        for (ExecutableElement method : methods) {
+            if (annotation(method, IGNORE_METHOD) != null) {
+                if (method.isDefault())
+                    continue;
+                throw new InvalidSpecException(method, "Cannot ignore a non-default method! Ignored methods must be default");
+            }
+            parse(method, properties);
+        }
+        for (Property property : properties.values()) {
+            if (property.getter == null)
+                throw new InvalidSpecException(type, "No getter exists for property '" + property.key + "'!");
+        }
+
+        Map<String, Property> fieldNames = new HashMap<>();
+        for (Property property : properties.values()) {
+            Property existing = fieldNames.putIfAbsent(property.fieldName(), property);
+            if (existing != null)
+                throw new InvalidSpecException(type, String.format("Property '%s' and '%s' have the same field name.",
+                        existing.key, property.key));
+        }
+        return properties;
+    }
+
+    /**
+     * Collects the methods of the given interface in declaration order, followed
+     * by the methods it inherits from its superinterfaces, like
+     * {@link Class#getMethods()} lists them. Overridden methods are skipped.
+     */
+    private void collectMethods(TypeElement type, TypeElement spec, List<ExecutableElement> methods) {
+        for (Element member : type.getEnclosedElements()) {
+            if (member.getKind() != ElementKind.METHOD)
+                continue;
+            Set<Modifier> modifiers = member.getModifiers();
+            if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.PRIVATE))
+                continue;
+            ExecutableElement method = (ExecutableElement) member;
+            if (!isOverridden(method, spec, methods))
+                methods.add(method);
+        }
+        for (TypeMirror superinterface : type.getInterfaces())
+            collectMethods((TypeElement) types.asElement(superinterface), spec, methods);
+    }
+
+    private boolean isOverridden(ExecutableElement method, TypeElement spec, List<ExecutableElement> methods) {
+        for (ExecutableElement other : methods) {
+            // A superinterface can be inherited more than once
+            if (other.equals(method))
+                return true;
+            if (other.getSimpleName().contentEquals(method.getSimpleName()) && elements.overrides(other, method, spec))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Sorts methods the same way as {@code SpecProperty.sortByAnnotation()}: by
+     * their order, unannotated methods first. The sort is stable, so methods with
+     * the same order stay in declaration order.
+     */
+    private void sortByOrder(List<ExecutableElement> methods) {
+        methods.sort((o1, o2) -> {
+            Integer order1 = orderOf(o1);
+            Integer order2 = orderOf(o2);
+            if (order1 == null && order2 == null)
+                return 0;
+            if (order1 == null)
+                return -1;
+            if (order2 == null)
+                return 1;
+            return Integer.compare(order1, order2);
+        });
+    }
+
+    private Integer orderOf(ExecutableElement method) {
+        AnnotationMirror order = annotation(method, ORDER);
+        return order == null ? null : (Integer) value(order).getValue();
+    }
+
+    private void parse(ExecutableElement method, Map<String, Property> properties) {
+        String key = keyOf(method);
+        Property existing = properties.computeIfAbsent(key, Property::new);
+        List<String> comments = commentsOf(method);
+        if (isHandledByProxy(method)) {
+            existing.handledByProxy = true;
+            existing.getter = method;
+            existing.setType(method, method.getReturnType());
+            return;
+        }
+        if (annotation(method, KEY) != null || annotation(method, SERIALIZED_NAME) != null)
+            existing.keyRemap = false;
+        if (comments != null) {
+            if (existing.comments.isEmpty())
+                existing.comments = comments;
+            else
+                throw new InvalidSpecException(method, "Inconsistent comments for property '" + key + "'");
+        }
+        String name = method.getSimpleName().toString();
+        boolean returnsVoid = method.getReturnType().getKind() == TypeKind.VOID;
+        if (returnsVoid || name.startsWith("set")) {
+            if (existing.setter != null)
+                throw new InvalidSpecException(method, "Found 2 setters for property '" + key + "'!");
+            if (!returnsVoid)
+                throw new InvalidSpecException(method, "Setter for property '" + key + "' must return void!");
+            if (method.getParameters().isEmpty())
+                throw new InvalidSpecException(method, "Setter for property '" + key + "' has no parameters!");
+            if (method.getParameters().size() > 1)
+                throw new InvalidSpecException(method, "Setter for property '" + key + "' has more than 1 parameter!");
+            existing.setType(method, method.getParameters().get(0).asType());
+            existing.setter = method;
+        } else {
+            if (existing.getter != null)
+                throw new InvalidSpecException(method, "Found 2 getters for property '" + key + "'!");
+            if (!method.getParameters().isEmpty())
+                throw new InvalidSpecException(method, "Getter for property '" + key + "' cannot take parameters!");
+            existing.setType(method, method.getReturnType());
+            existing.getter = method;
+        }
+    }
+
+    private String keyOf(ExecutableElement method) {
+        AnnotationMirror key = annotation(method, KEY);
+        if (key == null)
+            key = annotation(method, SERIALIZED_NAME);
+        if (key != null)
+            return (String) value(key).getValue();
+        String name = method.getSimpleName().toString();
+        if (name.startsWith("get") || name.startsWith("set"))
+            return lowerFirst(name.substring(3));
+        if (name.startsWith("is"))
+            return lowerFirst(name.substring(2));
+        return name;
+    }
+
+    private static String lowerFirst(String name) {
+        if (name.isEmpty())
+            return name;
+        return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private List<String> commentsOf(Element element) {
+        AnnotationMirror comment = annotation(element, COMMENT);
+        return comment == null ? null : lines(value(comment));
+    }
+
+    private List<String> headerOf(TypeElement type) {
+        AnnotationMirror spec = annotation(type, CONFIG_SPEC);
+        if (spec == null)
+            return Collections.emptyList();
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : elements.getElementValuesWithDefaults(spec).entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals("header"))
+                return lines(entry.getValue());
+        }
+        return Collections.emptyList();
+    }
+
+    private static List<String> lines(AnnotationValue value) {
+        List<String> lines = new ArrayList<>();
+        @SuppressWarnings("unchecked")
+        List<? extends AnnotationValue> values = (List<? extends AnnotationValue>) value.getValue();
+        for (AnnotationValue line : values)
+            Collections.addAll(lines, NEW_LINE.split((String) line.getValue()));
+        return lines;
+    }
+
+    private boolean isHandledByProxy(Element element) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (annotation(mirror.getAnnotationType().asElement(), HANDLED_BY_PROXY) != null)
+                return true;
+        }
+        return false;
+    }
+
+    private static AnnotationMirror annotation(Element element, String name) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            TypeElement type = (TypeElement) mirror.getAnnotationType().asElement();
+            if (type.getQualifiedName().contentEquals(name))
+                return mirror;
+        }
+        return null;
+    }
+
+    private AnnotationValue value(AnnotationMirror mirror) {
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : elements.getElementValuesWithDefaults(mirror).entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals("value"))
+                return entry.getValue();
+        }
+        throw new IllegalArgumentException("No value() in " + mirror);
+    }
+
+    private void writeMetadata(TypeElement type, String binaryName, Map<String, Property> properties) {
+        PackageElement pkg = elements.getPackageOf(type);
+        String packageName = pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+        String className = binaryName.substring(packageName.isEmpty() ? 0 : packageName.length() + 1) + SUFFIX;
+
+        StringBuilder out = new StringBuilder();
+        if (!packageName.isEmpty())
+            out.append("package ").append(packageName).append(";\n\n");
+        out.append("/**\n")
+                .append(" * Spec metadata of {@link ").append(type.getQualifiedName()).append("}.\n")
+                .append(" * Generated by the spec annotation processor. Do not edit.\n")
+                .append(" */\n");
+        out.append("public final class ").append(className).append(" extends ").append(METADATA).append(" {\n\n");
+        out.append("    public ").append(className).append("() {\n");
+        out.append("        super(\n");
+        out.append("            ").append(stringArray(headerOf(type))).append(",\n");
+        out.append("            new ").append(METADATA).append(".Property[]{\n");
+        for (Property property : properties.values()) {
+            StringJoiner getterParameters = new StringJoiner(", ", "new Class<?>[]{", "}");
+            for (VariableElement parameter : property.getter.getParameters())
+                getterParameters.add(classLiteral(parameter.asType()));
+            out.append("                new ").append(METADATA).append(".Property(")
+                    .append(stringLiteral(property.key)).append(", ")
+                    .append(stringLiteral(property.fieldName())).append(", ")
+                    .append(classLiteral(property.type)).append(", ")
+                    .append(stringLiteral(property.getter.getSimpleName().toString())).append(", ")
+                    .append(getterParameters).append(", ")
+                    .append(property.setter == null ? "null" : stringLiteral(property.setter.getSimpleName().toString())).append(", ")
+                    .append(stringArray(property.comments)).append(", ")
+                    .append(property.handledByProxy)
+                    .append("),\n");
+        }
+        out.append("            }\n");
+        out.append("        );\n");
+        out.append("    }\n");
+        out.append("}\n");
+
+        String qualifiedName = packageName.isEmpty() ? className : packageName + "." + className;
+        try {
+            JavaFileObject file = filer.createSourceFile(qualifiedName, type);
+            try (Writer writer = file.openWriter()) {
+                writer.write(out.toString());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeIndex() {
+        if (indexed.isEmpty())
+            return;
+        try {
+            FileObject file = filer.createResource(StandardLocation.CLASS_OUTPUT, "", INDEX,
+                    indexed.values().toArray(new Element[0]));
+            try (Writer writer = file.openWriter()) {
+                for (String name : new TreeSet<>(indexed.keySet()))
+                    writer.write(name + "\n");
+            }
+        } catch (IOException e) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "Failed to write " + INDEX + ": " + e);
+        }
+    }
+
+    private String classLiteral(TypeMirror type) {
+        return types.erasure(type).toString() + ".class";
+    }
+
+    private static String stringArray(List<String> values) {
+        StringJoiner joiner = new StringJoiner(", ", "new String[]{", "}");
+        for (String value : values)
+            joiner.add(stringLiteral(value));
+        return joiner.toString();
+    }
+
+    private static String stringLiteral(String value) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20 || c > 0x7e)
+                        sb.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+                    else
+                        sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * A property being parsed. See {@code SpecProperty}
+     */
+    private final class Property {
+
+        private final String key;
+        private boolean keyRemap = true;
+        private TypeMirror type;
+        private ExecutableElement getter;
+        private ExecutableElement setter;
+        private List<String> comments = Collections.emptyList();
+        private boolean handledByProxy;
+
+        private Property(String key) {
+            this.key = key;
+        }
+
+        private void setType(ExecutableElement method, TypeMirror type) {
+            TypeMirror erased = types.erasure(type);
+            if (this.type == null)
+                this.type = erased;
+            else if (!types.isSameType(this.type, erased))
+                throw new InvalidSpecException(method, "Inconsistent types for property " + key + ". Received "
+                        + this.type + " and " + erased + ".");
+        }
+
+        private String fieldName() {
+            return keyRemap ? CAMEL_CASE.matcher(key).replaceAll("$1-$2").toLowerCase() : key;
+        }
+    }
+
+    private static final class InvalidSpecException extends RuntimeException {
+
+        private final Element element;
+
+        private InvalidSpecException(Element element, String message) {
+            super(message);
+            this.element = element;
+        }
+    }
+}
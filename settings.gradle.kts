@@ -1 +1,8 @@
+plugins {
+    // Downloads the JDK toolchains that are not installed locally
+    id("org.gradle.toolchains.foojay-resolver-convention") version "0.8.0"
+}
+
 rootProject.name = "spec"
+
+include("processor")
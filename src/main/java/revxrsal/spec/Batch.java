@@ -0,0 +1,293 @@
+/*
+ * This file is part of Cream, licensed under the MIT License.
+ *
+ *  Copyright (c) Revxrsal <reflxction.github@gmail.com>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+package revxrsal.spec;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static revxrsal.spec.Specs.isConfigSpec;
+
+/**
+ * Stages the setter calls made on a spec, so that they can be applied together.
+ * <p>
+ * The changes are made against a staging proxy. Getters on it return the
+ * staged value if there is one, and the value of the spec otherwise. Nested
+ * specs are returned as staging proxies as well. Only setters are staged:
+ * modifying a list or a map returned by a getter modifies the spec directly.
+ * <p>
+ * Once the changes are made, the write hooks of every changed property
+ * are run, once per property. If any of them throws, nothing is applied.
+ * <p>
+ * Properties without a slot, such as the ones handled by the proxy, are
+ * staged by key, and are written to the property map when the changes
+ * are applied.
+ *
+ * @see Specs#batch(Object, Consumer)
+ * @see SpecReference#batch(Consumer, boolean)
+ */
+final class Batch implements InvocationHandler {
+
+    private final Class<?> type;
+    private final SpecClass specClass;
+    private final Object target;
+    private final PropertyMap properties;
+
+    private final Object[] staged;
+    private final boolean[] changed;
+
+    /**
+     * The staging proxies of nested specs, by slot
+     */
+    private final Batch[] nested;
+    private final Object[] nestedProxies;
+
+    /**
+     * The staged values of properties without a slot, by key. Null until one is set
+     */
+    private Map<String, Object> stagedExtras;
+
+    private Batch(@NotNull Class<?> type, @NotNull Object target) {
+        this.type = type;
+        this.specClass = Specs.from(type);
+        this.target = target;
+        this.properties = MapProxy.getInternalMap(target);
+        int size = specClass.keys().length;
+        this.staged = new Object[size];
+        this.changed = new boolean[size];
+        this.nested = new Batch[size];
+        this.nestedProxies = new Object[size];
+    }
+
+    /**
+     * Runs the given changes against a staging proxy of the given spec,
+     * and validates them
+     *
+     * @param type    The spec interface
+     * @param target  The spec. This must not be a reference
+     * @param changes The changes
+     * @param <T>     The spec type
+     * @return The staged changes
+     */
+    @SuppressWarnings("unchecked")
+    static @NotNull <T> Batch stage(@NotNull Class<T> type, @NotNull T target, @NotNull Consumer<? super T> changes) {
+        Batch batch = new Batch(type, target);
+        changes.accept((T) batch.proxy());
+        batch.validate();
+        return batch;
+    }
+
+    /**
+     * Applies the staged changes directly to the spec, and then invalidates
+     * the memoized results that read the changed properties.
+     * <p>
+     * The properties are written one at a time, so threads that read the
+     * spec meanwhile may see some of the changes without the others.
+     */
+    void applyInPlace() {
+        for (int slot = 0; slot < changed.length; slot++) {
+            if (changed[slot])
+                properties.setSlot(slot, staged[slot]);
+            else if (nested[slot] != null)
+                nested[slot].applyInPlace();
+        }
+        if (stagedExtras != null)
+            MapProxy.getUnderlyingMap(target).putAll(stagedExtras);
+        Memoized memoized = Memoized.of(target, false);
+        if (memoized == null)
+            return;
+        for (int slot = 0; slot < changed.length; slot++) {
+            if (changed[slot])
+                memoized.invalidate(slot);
+        }
+    }
+
+    /**
+     * Creates a new spec with the staged changes applied, leaving the
+     * original spec untouched. Properties that did not change are shared
+     * with the original spec.
+     * <p>
+     * The copy uses the same backend as the original spec.
+     * {@link MapProxy#isPersistent(Object) Persistent} specs are copied in
+     * constant time, and only the changed properties are written to the copy.
+     *
+     * @return The new spec
+     */
+    @NotNull Object applyToCopy() {
+        boolean persistent = MapProxy.isPersistent(target);
+        Object copy = persistent ? MapProxy.copy(target) : newInstanceLike(target);
+        PropertyMap copyProperties = MapProxy.getInternalMap(copy);
+        for (int slot = 0; slot < changed.length; slot++) {
+            if (changed[slot])
+                copyProperties.setSlot(slot, staged[slot]);
+            else if (nested[slot] != null && nested[slot].hasChanges())
+                copyProperties.setSlot(slot, nested[slot].applyToCopy());
+            else if (!persistent)
+                copyProperties.setSlot(slot, properties.getSlot(slot));
+        }
+        copyExtras(copy);
+        return copy;
+    }
+
+    /**
+     * Creates an empty spec with the same backend as the given one. The
+     * spec must not be persistent
+     */
+    private @NotNull Object newInstanceLike(@NotNull Object spec) {
+        if (spec instanceof GeneratedSpec)
+            return ((GeneratedSpec) spec).layout().newInstance();
+        return MapProxy.generate(type, false);
+    }
+
+    /**
+     * Copies the properties without a slot to the given copy, with the
+     * staged ones applied
+     */
+    private void copyExtras(@NotNull Object copy) {
+        Map<String, Object> source = MapProxy.getUnderlyingMap(target);
+        Map<String, Object> extras = source instanceof PropertyMap ? ((PropertyMap) source).extras() : source;
+        if (extras.isEmpty() && stagedExtras == null)
+            return;
+        Map<String, Object> destination = MapProxy.getUnderlyingMap(copy);
+        for (Map.Entry<String, Object> entry : extras.entrySet()) {
+            if (!specClass.slots().containsKey(entry.getKey()))
+                destination.put(entry.getKey(), entry.getValue());
+        }
+        if (stagedExtras != null)
+            destination.putAll(stagedExtras);
+    }
+
+    /**
+     * Tests whether any property of this spec or its nested specs was changed
+     *
+     * @return if there are any changes
+     */
+    boolean hasChanges() {
+        if (stagedExtras != null)
+            return true;
+        for (int slot = 0; slot < changed.length; slot++) {
+            if (changed[slot] || (nested[slot] != null && nested[slot].hasChanges()))
+                return true;
+        }
+        return false;
+    }
+
+    private void validate() {
+        for (SpecProperty property : specClass.properties().values()) {
+            if (property.isHandledByProxy())
+                continue;
+            int slot = property.ordinal();
+            if (changed[slot]) {
+                for (Consumer<Object> hook : property.getWriteHook())
+                    hook.accept(staged[slot]);
+            } else if (nested[slot] != null) {
+                nested[slot].validate();
+            }
+        }
+    }
+
+    private @NotNull Object proxy() {
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class[]{type}, this);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        MethodDispatch dispatch = specClass.dispatch(method);
+        switch (dispatch.kind()) {
+            case GETTER: {
+                int slot = dispatch.slot();
+                if (slot < 0) {
+                    if (stagedExtras != null && stagedExtras.containsKey(dispatch.key()))
+                        return stagedExtras.get(dispatch.key());
+                    return dispatch.forward(target, args);
+                }
+                if (changed[slot])
+                    return staged[slot];
+                Object value = properties.getSlot(slot);
+                if (value != null && isConfigSpec(method.getReturnType()))
+                    return nestedProxy(slot, method.getReturnType(), value);
+                return value;
+            }
+            case SETTER: {
+                int slot = dispatch.slot();
+                if (slot < 0) {
+                    if (stagedExtras == null)
+                        stagedExtras = new LinkedHashMap<>();
+                    stagedExtras.put(dispatch.key(), args[0]);
+                    return null;
+                }
+                staged[slot] = args[0];
+                changed[slot] = true;
+                nested[slot] = null;
+                nestedProxies[slot] = null;
+                return null;
+            }
+            case MEMOIZE:
+            case IGNORED:
+                // Computed against the staged values, without caching
+                return dispatch.invokeDefault(proxy, args);
+            case AS_MAP:
+            case RESET:
+            case RELOAD:
+            case SAVE:
+                throw new IllegalStateException("Method " + method.getName() + " cannot be called inside a batch");
+            case EQUALS:
+                return proxy == args[0];
+            case HASH_CODE:
+                return System.identityHashCode(proxy);
+            case TO_STRING:
+                return "Batch(" + type.getSimpleName() + ")";
+        }
+        throw new IllegalArgumentException("Don't know how to handle " + method);
+    }
+
+    private @NotNull Object nestedProxy(int slot, @NotNull Class<?> type, @NotNull Object spec) {
+        if (nested[slot] == null) {
+            nested[slot] = new Batch(type, spec);
+            nestedProxies[slot] = nested[slot].proxy();
+        }
+        return nestedProxies[slot];
+    }
+
+    /**
+     * Returns the {@link SpecReference} behind the given reference proxy,
+     * or null if the given spec is not a reference proxy
+     *
+     * @param spec The spec
+     * @return The reference, or null
+     */
+    static @Nullable SpecReference<?> referenceOf(@NotNull Object spec) {
+        if (spec instanceof GeneratedReference)
+            return ((GeneratedReference) spec).reference();
+        if (Proxy.isProxyClass(spec.getClass()) && Proxy.getInvocationHandler(spec) instanceof SpecProxy)
+            return ((SpecProxy<?>) Proxy.getInvocationHandler(spec)).getReference();
+        return null;
+    }
+}
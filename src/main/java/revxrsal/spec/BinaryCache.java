@@ -0,0 +1,249 @@
+/*
+ * This file is part of Cream, licensed under the MIT License.
+ *
+ *  Copyright (c) Revxrsal <reflxction.github@gmail.com>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+package revxrsal.spec;
+
+import com.google.gson.Gson;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.CRC32C;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.READ;
+import static revxrsal.spec.SpecProperty.fieldName;
+import static revxrsal.spec.Specs.isConfigSpec;
+
+/**
+ * A binary cache of a config file, which lets a spec be loaded without
+ * parsing the file again while it has not changed.
+ * <p>
+ * The cache is written next to the file, with {@link #SUFFIX} appended to its
+ * name. It contains the decoded spec, encoded with {@link BinaryWriter}, after a
+ * header with the size, modification time and CRC32C of the file, and the
+ * fingerprint of the spec schema and default values. The cache is only read
+ * if all of them match, and it is memory-mapped when it is.
+ * <p>
+ * Caches are best-effort: failing to read or write them is never an error,
+ * and the file is parsed instead.
+ */
+final class BinaryCache {
+
+    /**
+     * The suffix appended to the name of a config file to get the name of its cache
+     */
+    static final String SUFFIX = ".cache";
+
+    private static final int MAGIC = 0x43524D43; // "CRMC"
+    private static final byte VERSION = 1;
+    private static final int HEADER_SIZE = Integer.BYTES + Byte.BYTES + Long.BYTES + Long.BYTES + Integer.BYTES + Long.BYTES;
+
+    private final Path cache;
+    private final Class<?> type;
+    private final Gson gson;
+    private final long size;
+    private final long modified;
+    private final int checksum;
+    private final long fingerprint;
+
+    private BinaryCache(Path cache, Class<?> type, Gson gson, long size, long modified, int checksum, long fingerprint) {
+        this.cache = cache;
+        this.type = type;
+        this.gson = gson;
+        this.size = size;
+        this.modified = modified;
+        this.checksum = checksum;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * Returns the cache of the given config, as it currently is. This should be
+     * called before the config is parsed, so that changes made while it is
+     * being parsed invalidate the cache.
+     *
+     * @param socket The config socket
+     * @param type   The spec interface
+     * @param gson   The Gson instance used to decode the config
+     * @return The cache, or null if the config is not a file
+     */
+    static @Nullable BinaryCache of(@NotNull DataSocket socket, @NotNull Class<?> type, @NotNull Gson gson) {
+        Path source = socket.path();
+        if (source == null)
+            return null;
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+            if (!attributes.isRegularFile())
+                return null;
+            return new BinaryCache(
+                    source.resolveSibling(source.getFileName() + SUFFIX),
+                    type,
+                    gson,
+                    attributes.size(),
+                    attributes.lastModifiedTime().toMillis(),
+                    checksum(source),
+                    fingerprint(type, gson)
+            );
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads the cached spec, if the cache is still valid
+     *
+     * @param <T> The spec type
+     * @return The spec, or null if the cache is missing or invalid
+     */
+    @SuppressWarnings("unchecked")
+    <T> @Nullable T read() {
+        try (FileChannel channel = FileChannel.open(cache, READ)) {
+            long length = channel.size();
+            if (length < HEADER_SIZE)
+                return null;
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            if (buffer.getInt() != MAGIC
+                    || buffer.get() != VERSION
+                    || buffer.getLong() != size
+                    || buffer.getLong() != modified
+                    || buffer.getInt() != checksum
+                    || buffer.getLong() != fingerprint)
+                return null;
+            return (T) gson.fromJson(new BinaryReader(buffer), type);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Replaces the cache with the given spec, which was decoded from the
+     * config as it was when this cache was created
+     *
+     * @param value The decoded spec
+     */
+    void write(@NotNull Object value) {
+        Path temporary = null;
+        try {
+            temporary = Files.createTempFile(cache.toAbsolutePath().getParent(), cache.getFileName().toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeByte(VERSION);
+                out.writeLong(size);
+                out.writeLong(modified);
+                out.writeInt(checksum);
+                out.writeLong(fingerprint);
+                BinaryWriter writer = new BinaryWriter(out);
+                gson.toJson(value, type, writer);
+                writer.flush();
+            }
+            try {
+                Files.move(temporary, cache, REPLACE_EXISTING, ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, cache, REPLACE_EXISTING);
+            }
+        } catch (IOException | RuntimeException e) {
+            if (temporary != null) {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the CRC32C of the given file.
+     * <p>
+     * The file is read rather than memory-mapped, as it may be truncated
+     * by an editor while it is being read.
+     */
+    private static int checksum(@NotNull Path file) throws IOException {
+        CRC32C crc = new CRC32C();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+            }
+        }
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Computes the fingerprint of the given spec, from the keys and types of
+     * its properties and nested specs, and its default values
+     */
+    private static long fingerprint(@NotNull Class<?> type, @NotNull Gson gson) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        describe(type, out, new HashSet<>());
+        BinaryWriter writer = new BinaryWriter(out);
+        gson.toJson(Specs.createDefault(type), type, writer);
+        writer.flush();
+
+        // 64-bit FNV-1a
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : bytes.toByteArray()) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static void describe(@NotNull Type type, @NotNull DataOutputStream out, @NotNull Set<Class<?>> visited) throws IOException {
+        if (type instanceof ParameterizedType) {
+            describe(((ParameterizedType) type).getRawType(), out, visited);
+            for (Type argument : ((ParameterizedType) type).getActualTypeArguments())
+                describe(argument, out, visited);
+        } else if (type instanceof GenericArrayType) {
+            describe(((GenericArrayType) type).getGenericComponentType(), out, visited);
+        } else if (type instanceof WildcardType) {
+            for (Type bound : ((WildcardType) type).getUpperBounds())
+                describe(bound, out, visited);
+        } else if (type instanceof Class && isConfigSpec((Class<?>) type) && visited.add((Class<?>) type)) {
+            out.writeUTF(((Class<?>) type).getName());
+            for (SpecProperty property : Specs.from((Class<?>) type).properties().values()) {
+                if (property.isHandledByProxy())
+                    continue;
+                Type propertyType = property.getter().getGenericReturnType();
+                out.writeUTF(fieldName(property));
+                out.writeUTF(propertyType.getTypeName());
+                describe(propertyType, out, visited);
+            }
+        }
+    }
+}
@@ -0,0 +1,380 @@
+/*
+ * This file is part of Cream, licensed under the MIT License.
+ *
+ *  Copyright (c) Revxrsal <reflxction.github@gmail.com>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+package revxrsal.spec;
+
+import com.google.gson.stream.JsonToken;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static revxrsal.spec.BinaryWriter.*;
+
+/**
+ * A {@link DataReader} that reads the encoding of {@link BinaryWriter}
+ * from a buffer, such as a memory-mapped file.
+ * <p>
+ * Skipped values are skipped by their length, without being decoded.
+ */
+final class BinaryReader extends DataReader {
+
+    /*
+     * Scopes of the containers being read
+     */
+    private static final int OBJECT_NAME = 1;
+    private static final int OBJECT_VALUE = 2;
+    private static final int ARRAY = 3;
+
+    private final ByteBuffer buffer;
+
+    /**
+     * The names that have been read, by index
+     */
+    private final List<String> names = new ArrayList<>();
+
+    /**
+     * A name that was promoted to a value, or null
+     */
+    private @Nullable String promoted;
+
+    private int[] scopes = new int[32];
+    private String[] pathNames = new String[32];
+    private int[] pathIndices = new int[32];
+    private int depth = 0;
+
+    BinaryReader(@NotNull ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    @Override
+    public void beginArray() throws IOException {
+        expect(JsonToken.BEGIN_ARRAY);
+        buffer.get();
+        push(ARRAY);
+    }
+
+    @Override
+    public void endArray() throws IOException {
+        expect(JsonToken.END_ARRAY);
+        buffer.get();
+        depth--;
+        valueConsumed();
+    }
+
+    @Override
+    public void beginObject() throws IOException {
+        expect(JsonToken.BEGIN_OBJECT);
+        buffer.get();
+        push(OBJECT_NAME);
+    }
+
+    @Override
+    public void endObject() throws IOException {
+        expect(JsonToken.END_OBJECT);
+        buffer.get();
+        depth--;
+        valueConsumed();
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        JsonToken token = peek();
+        return token != JsonToken.END_OBJECT && token != JsonToken.END_ARRAY && token != JsonToken.END_DOCUMENT;
+    }
+
+    @Override
+    public JsonToken peek() {
+        if (promoted != null)
+            return JsonToken.STRING;
+        if (!buffer.hasRemaining())
+            return JsonToken.END_DOCUMENT;
+        byte tag = buffer.get(buffer.position());
+        switch (tag) {
+            case BEGIN_OBJECT:
+                return JsonToken.BEGIN_OBJECT;
+            case END_OBJECT:
+                return JsonToken.END_OBJECT;
+            case BEGIN_ARRAY:
+                return JsonToken.BEGIN_ARRAY;
+            case END_ARRAY:
+                return JsonToken.END_ARRAY;
+            case NAME:
+            case NAME_REF:
+                return JsonToken.NAME;
+            case STRING:
+                return JsonToken.STRING;
+            case INT:
+            case LONG:
+            case DOUBLE:
+            case NUMBER:
+                return JsonToken.NUMBER;
+            case TRUE:
+            case FALSE:
+                return JsonToken.BOOLEAN;
+            case NULL:
+                return JsonToken.NULL;
+            default:
+                throw new IllegalStateException("Unknown tag " + tag + locationString());
+        }
+    }
+
+    @Override
+    public String nextName() throws IOException {
+        expect(JsonToken.NAME);
+        String name = readName();
+        pathNames[depth - 1] = name;
+        scopes[depth - 1] = OBJECT_VALUE;
+        return name;
+    }
+
+    @Override
+    void promoteNameToValue() throws IOException {
+        promoted = nextName();
+    }
+
+    @Override
+    public String nextString() throws IOException {
+        if (promoted != null)
+            return takePromoted();
+        JsonToken token = peek();
+        if (token != JsonToken.STRING && token != JsonToken.NUMBER)
+            throw new IllegalStateException("Expected " + JsonToken.STRING + " but was " + token + locationString());
+        String result = readScalar().toString();
+        valueConsumed();
+        return result;
+    }
+
+    @Override
+    public boolean nextBoolean() throws IOException {
+        expect(JsonToken.BOOLEAN);
+        boolean result = buffer.get() == TRUE;
+        valueConsumed();
+        return result;
+    }
+
+    @Override
+    public void nextNull() throws IOException {
+        expect(JsonToken.NULL);
+        buffer.get();
+        valueConsumed();
+    }
+
+    @Override
+    public double nextDouble() throws IOException {
+        double result = asDouble(nextNumber());
+        valueConsumed();
+        return result;
+    }
+
+    @Override
+    public long nextLong() throws IOException {
+        long result = asLong(nextNumber());
+        valueConsumed();
+        return result;
+    }
+
+    @Override
+    public int nextInt() throws IOException {
+        int result = asInt(nextNumber());
+        valueConsumed();
+        return result;
+    }
+
+    @Override
+    public void skipValue() throws IOException {
+        if (promoted != null) {
+            takePromoted();
+            return;
+        }
+        switch (peek()) {
+            case NAME:
+                nextName();
+                pathNames[depth - 1] = "<skipped>";
+                return;
+            case END_ARRAY:
+                endArray();
+                return;
+            case END_OBJECT:
+                endObject();
+                return;
+            case END_DOCUMENT:
+                return;
+        }
+        int nested = 0;
+        do {
+            byte tag = buffer.get();
+            switch (tag) {
+                case BEGIN_OBJECT:
+                case BEGIN_ARRAY:
+                    nested++;
+                    break;
+                case END_OBJECT:
+                case END_ARRAY:
+                    nested--;
+                    break;
+                case NAME:
+                    // Later names may refer to this one
+                    names.add(readString());
+                    break;
+                case NAME_REF:
+                    readVarInt();
+                    break;
+                case STRING:
+                case NUMBER:
+                    int length = readVarInt();
+                    buffer.position(buffer.position() + length);
+                    break;
+                case INT:
+                    buffer.position(buffer.position() + Integer.BYTES);
+                    break;
+                case LONG:
+                    buffer.position(buffer.position() + Long.BYTES);
+                    break;
+                case DOUBLE:
+                    buffer.position(buffer.position() + Double.BYTES);
+                    break;
+            }
+        } while (nested > 0);
+        valueConsumed();
+    }
+
+    @Override
+    public void close() {
+        buffer.position(buffer.limit());
+        promoted = null;
+        depth = 0;
+    }
+
+    @Override
+    @NotNull List<Object> path() {
+        List<Object> path = new ArrayList<>();
+        for (int i = 0; i < depth; i++) {
+            if (scopes[i] == ARRAY)
+                path.add(pathIndices[i]);
+            else if (pathNames[i] != null)
+                path.add(pathNames[i]);
+        }
+        return path;
+    }
+
+    private void expect(@NotNull JsonToken expected) {
+        JsonToken token = peek();
+        if (token != expected)
+            throw new IllegalStateException("Expected " + expected + " but was " + token + locationString());
+    }
+
+    private @NotNull Object nextNumber() {
+        if (promoted != null)
+            return takePromoted();
+        JsonToken token = peek();
+        if (token != JsonToken.NUMBER && token != JsonToken.STRING)
+            throw new IllegalStateException("Expected " + JsonToken.NUMBER + " but was " + token + locationString());
+        return readScalar();
+    }
+
+    private @NotNull String takePromoted() {
+        String result = promoted;
+        promoted = null;
+        return result;
+    }
+
+    /**
+     * Reads a string or a number
+     */
+    private @NotNull Object readScalar() {
+        byte tag = buffer.get();
+        switch (tag) {
+            case INT:
+                return buffer.getInt();
+            case LONG:
+                return buffer.getLong();
+            case DOUBLE:
+                return buffer.getDouble();
+            default:
+                return readString();
+        }
+    }
+
+    private @NotNull String readName() {
+        byte tag = buffer.get();
+        if (tag == NAME) {
+            String name = readString();
+            names.add(name);
+            return name;
+        }
+        return names.get(readVarInt());
+    }
+
+    private @NotNull String readString() {
+        int length = readVarInt();
+        if (buffer.hasArray()) {
+            String result = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+            return result;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int readVarInt() {
+        int result = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return result;
+        }
+    }
+
+    private void push(int scope) {
+        if (depth == scopes.length) {
+            int newLength = depth * 2;
+            scopes = Arrays.copyOf(scopes, newLength);
+            pathNames = Arrays.copyOf(pathNames, newLength);
+            pathIndices = Arrays.copyOf(pathIndices, newLength);
+        }
+        scopes[depth] = scope;
+        pathNames[depth] = null;
+        pathIndices[depth] = 0;
+        depth++;
+    }
+
+    /**
+     * Moves past a value of the current container
+     */
+    private void valueConsumed() {
+        if (depth == 0)
+            return;
+        if (scopes[depth - 1] == ARRAY)
+            pathIndices[depth - 1]++;
+        else
+            scopes[depth - 1] = OBJECT_NAME;
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * This file is part of Cream, licensed under the MIT License.
+ *
+ *  Copyright (c) Revxrsal <reflxction.github@gmail.com>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+package revxrsal.spec;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonWriter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A {@link JsonWriter} that writes a compact binary encoding, which is
+ * read by {@link BinaryReader}.
+ * <p>
+ * Every token starts with one of the tags below. Strings are prefixed with
+ * their length in UTF-8, and numbers are written in binary. Names are written
+ * once, and referred to by index afterwards.
+ */
+final class BinaryWriter extends JsonWriter {
+
+    static final byte BEGIN_OBJECT = 1;
+    static final byte END_OBJECT = 2;
+    static final byte BEGIN_ARRAY = 3;
+    static final byte END_ARRAY = 4;
+    /** A name that has not been written before */
+    static final byte NAME = 5;
+    /** The index of a name that has been written before */
+    static final byte NAME_REF = 6;
+    static final byte STRING = 7;
+    static final byte INT = 8;
+    static final byte LONG = 9;
+    static final byte DOUBLE = 10;
+    /** A number that is written as text, like a {@link java.math.BigDecimal} */
+    static final byte NUMBER = 11;
+    static final byte TRUE = 12;
+    static final byte FALSE = 13;
+    static final byte NULL = 14;
+
+    private static final Writer UNWRITABLE = new Writer() {
+        @Override
+        public void write(char @NotNull [] buffer, int offset, int count) {
+            throw new AssertionError();
+        }
+
+        @Override
+        public void flush() {
+            throw new AssertionError();
+        }
+
+        @Override
+        public void close() {
+            throw new AssertionError();
+        }
+    };
+
+    private final DataOutputStream out;
+    private final Map<String, Integer> names = new HashMap<>();
+
+    /**
+     * The name of the next value, which is only written with the value
+     */
+    private @Nullable String pendingName;
+
+    BinaryWriter(@NotNull OutputStream out) {
+        super(UNWRITABLE);
+        this.out = new DataOutputStream(out);
+    }
+
+    @Override
+    public JsonWriter beginArray() throws IOException {
+        writePendingName();
+        out.writeByte(BEGIN_ARRAY);
+        return this;
+    }
+
+    @Override
+    public JsonWriter endArray() throws IOException {
+        out.writeByte(END_ARRAY);
+        return this;
+    }
+
+    @Override
+    public JsonWriter beginObject() throws IOException {
+        writePendingName();
+        out.writeByte(BEGIN_OBJECT);
+        return this;
+    }
+
+    @Override
+    public JsonWriter endObject() throws IOException {
+        if (pendingName != null)
+            throw new IllegalStateException("Expected a value for " + pendingName);
+        out.writeByte(END_OBJECT);
+        return this;
+    }
+
+    @Override
+    public JsonWriter name(@NotNull String name) {
+        Objects.requireNonNull(name, "name == null");
+        if (pendingName != null)
+            throw new IllegalStateException("Expected a value for " + pendingName);
+        pendingName = name;
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(@Nullable String value) throws IOException {
+        if (value == null)
+            return nullValue();
+        writePendingName();
+        out.writeByte(STRING);
+        writeString(value);
+        return this;
+    }
+
+    @Override
+    public JsonWriter jsonValue(@Nullable String value) throws IOException {
+        if (value == null)
+            return nullValue();
+        writeElement(JsonParser.parseString(value));
+        return this;
+    }
+
+    @Override
+    public JsonWriter nullValue() throws IOException {
+        if (pendingName != null && !getSerializeNulls()) {
+            // Omit the property, like JsonWriter does
+            pendingName = null;
+            return this;
+        }
+        writePendingName();
+        out.writeByte(NULL);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(boolean value) throws IOException {
+        writePendingName();
+        out.writeByte(value ? TRUE : FALSE);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(@Nullable Boolean value) throws IOException {
+        if (value == null)
+            return nullValue();
+        return value(value.booleanValue());
+    }
+
+    // Not an override on older versions of Gson
+    public JsonWriter value(float value) throws IOException {
+        return value((double) value);
+    }
+
+    @Override
+    public JsonWriter value(double value) throws IOException {
+        if (!isLenient() && (Double.isNaN(value) || Double.isInfinite(value)))
+            throw new IllegalArgumentException("Numeric values must be finite, but was " + value);
+        writePendingName();
+        out.writeByte(DOUBLE);
+        out.writeDouble(value);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(long value) throws IOException {
+        writePendingName();
+        if (value == (int) value) {
+            out.writeByte(INT);
+            out.writeInt((int) value);
+        } else {
+            out.writeByte(LONG);
+            out.writeLong(value);
+        }
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(@Nullable Number value) throws IOException {
+        if (value == null)
+            return nullValue();
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte)
+            return value(value.longValue());
+        if (value instanceof Double || value instanceof Float)
+            return value(value.doubleValue());
+        writePendingName();
+        out.writeByte(NUMBER);
+        writeString(value.toString());
+        return this;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void writePendingName() throws IOException {
+        if (pendingName == null)
+            return;
+        Integer index = names.get(pendingName);
+        if (index == null) {
+            names.put(pendingName, names.size());
+            out.writeByte(NAME);
+            writeString(pendingName);
+        } else {
+            out.writeByte(NAME_REF);
+            writeVarInt(index);
+        }
+        pendingName = null;
+    }
+
+    private void writeString(@NotNull String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private void writeVarInt(int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private void writeElement(@NotNull JsonElement element) throws IOException {
+        if (element.isJsonNull()) {
+            nullValue();
+        } else if (element.isJsonObject()) {
+            beginObject();
+            for (Map.Entry<String, JsonElement> entry : ((JsonObject) element).entrySet()) {
+                name(entry.getKey());
+                writeElement(entry.getValue());
+            }
+            endObject();
+        } else if (element.isJsonArray()) {
+            beginArray();
+            for (JsonElement child : (JsonArray) element)
+                writeElement(child);
+            endArray();
+        } else {
+            JsonPrimitive primitive = (JsonPrimitive) element;
+            if (primitive.isBoolean())
+                value(primitive.getAsBoolean());
+            else if (primitive.isNumber())
+                value(primitive.getAsNumber());
+            else
+                value(primitive.getAsString());
+        }
+    }
+}
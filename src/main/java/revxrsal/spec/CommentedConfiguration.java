@@ -25,7 +25,6 @@ package revxrsal.spec;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.reflect.TypeToken;
 import lombok.SneakyThrows;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -35,16 +34,19 @@ import org.yaml.snakeyaml.Yaml;
 import org.yaml.snakeyaml.events.*;
 import revxrsal.spec.Util.PeekingIterator;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.StringReader;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.regex.Pattern;
 
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 import static java.nio.file.StandardOpenOption.*;
 import static java.util.regex.Pattern.LITERAL;
 
@@ -54,13 +56,6 @@ import static java.util.regex.Pattern.LITERAL;
  */
 public class CommentedConfiguration {
 
-    private static final ThreadLocal<Yaml> YAML = ThreadLocal.withInitial(() -> {
-        DumperOptions options = new DumperOptions();
-        setProcessComments(options, false);
-        options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
-        return new Yaml(options);
-    });
-
     public static final Gson GSON = new GsonBuilder()
             .registerTypeAdapterFactory(SpecAdapterFactory.INSTANCE)
             .create();
@@ -69,14 +64,19 @@ public class CommentedConfiguration {
      * Pattern for matching newline characters.
      */
     public static final Pattern NEW_LINE = Pattern.compile("\n", LITERAL);
-    private static final Type MAP_TYPE = new TypeToken<Map<String, Object>>() {
-    }.getType();
 
     /**
      * YAML processor instance for reading and writing YAML data.
      */
     protected final Yaml yaml;
 
+    /**
+     * Whether this configuration parses and dumps with instances borrowed
+     * from the shared {@link YamlPool}, rather than with {@link #yaml}, so
+     * that concurrent loads and saves do not share an instance
+     */
+    private final boolean pooled;
+
     /**
      * A map storing comments associated with specific configuration keys.
      */
@@ -107,27 +107,100 @@ public class CommentedConfiguration {
      */
     protected final ArrayCommentStyle arrayCommentStyle;
 
+    /**
+     * Whether specs are decoded while the content is parsed. See {@link #setStreaming(boolean)}
+     */
+    protected volatile boolean streaming;
+
     public CommentedConfiguration(DataSocket socket, Gson gson, ArrayCommentStyle arrayCommentStyle, Yaml yaml) {
+        this(socket, gson, arrayCommentStyle, yaml, false);
+    }
+
+    public CommentedConfiguration(DataSocket socket, Gson gson, ArrayCommentStyle arrayCommentStyle) {
+        this(socket, gson, arrayCommentStyle, YamlPool.borrow(), true);
+    }
+
+    private CommentedConfiguration(DataSocket socket, Gson gson, ArrayCommentStyle arrayCommentStyle, Yaml yaml, boolean pooled) {
         this.socket = socket;
         this.gson = gson;
         this.arrayCommentStyle = arrayCommentStyle;
         this.yaml = yaml;
+        this.pooled = pooled;
+        this.streaming = socket.format().isStreamingByDefault();
     }
 
-    public CommentedConfiguration(DataSocket socket, Gson gson, ArrayCommentStyle arrayCommentStyle) {
-        this(socket, gson, arrayCommentStyle, YAML.get());
+    /**
+     * Loads the content of this configuration
+     */
+    public void load() {
+        data = read();
     }
 
     /**
-     * Loads the content of this configuration
+     * Parses the content of this configuration, without loading it. Use
+     * {@link #setData(Map)} to load the result.
+     *
+     * @return The parsed data
      */
     @SneakyThrows
-    public void load() {
-        try (BufferedReader reader = new BufferedReader(socket.openReader())) {
-            data = yaml.load(reader);
-            if (data == null)
-                data = new LinkedHashMap<>();
-        }
+    public @NotNull Map<String, Object> read() {
+        return socket.format().read(this, socket.openReader());
+    }
+
+    /**
+     * Parses the content of this configuration and decodes it to the
+     * specified type, without building the tree of the content when the
+     * {@link ConfigFormat format} of the socket supports it.
+     * <p>
+     * For YAML, values are decoded as the parser reads them, and unknown keys
+     * are skipped without being constructed. Content that needs the whole tree,
+     * such as merge keys, is read with {@link #read()} instead.
+     *
+     * @param type The type to deserialize the content into.
+     * @param <T>  The type of the returned value.
+     * @return The deserialized content.
+     */
+    @SneakyThrows
+    public <T> T readAs(@NotNull Type type) {
+        return socket.format().readAs(this, socket.openReader(), type);
+    }
+
+    /**
+     * Sets whether specs that are loaded from this configuration are decoded
+     * while the content is parsed, with {@link #readAs(Type)}.
+     * <p>
+     * This avoids holding the whole tree of a large configuration in memory
+     * while it is decoded. Streamed content is not kept, so {@link #getData()}
+     * is empty after a reload. Specs are saved with {@link #save(Object, Type)},
+     * which also skips the tree if the format supports it.
+     * <p>
+     * This is enabled by default if the {@link ConfigFormat format} of the
+     * socket {@link ConfigFormat#isStreamingByDefault() streams by default}.
+     *
+     * @param streaming Whether to decode specs while parsing
+     */
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    /**
+     * Tests whether specs that are loaded from this configuration are decoded
+     * while the content is parsed. See {@link #setStreaming(boolean)}
+     *
+     * @return if loads are streamed
+     */
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    /**
+     * Replaces the configuration data with the given data, such as
+     * the result of {@link #read()}.
+     *
+     * @param data The new data
+     */
+    public void setData(@NotNull Map<String, Object> data) {
+        this.data = data;
     }
 
     /**
@@ -156,37 +229,71 @@ public class CommentedConfiguration {
      */
     @SneakyThrows
     public void save() {
-        if (configComments.isEmpty()) {
-            try (BufferedWriter writer = new BufferedWriter(socket.openWriter())) {
-                yaml.dump(data, writer);
-            }
+        socket.format().write(this, socket.openWriter());
+    }
+
+    /**
+     * Saves the given value as the content of this configuration.
+     * <p>
+     * If this configuration is {@link #setStreaming(boolean) streaming}, the value
+     * is encoded without replacing the configuration data, if the
+     * {@link ConfigFormat format} of the socket supports it. Otherwise, this is
+     * equivalent to {@link #setTo(Object, Type)} followed by {@link #save()}.
+     *
+     * @param value The value to save
+     * @param type  The type used for serialization
+     */
+    @SneakyThrows
+    public void save(@NotNull Object value, @NotNull Type type) {
+        if (!streaming) {
+            setTo(value, type);
+            save();
             return;
         }
-        String simpleDump = yaml.dump(data);
-        String[] split = NEW_LINE.split(simpleDump);
-        List<String> lines = new ArrayList<>(split.length);
-        Collections.addAll(lines, split);
-        StringReader reader = new StringReader(simpleDump);
-        Iterable<Event> events = yaml.parse(reader);
-        handleEvents(events.iterator(), lines); // terribly inefficient way but I can't care less lol
-        if (!lines.isEmpty()) {
-            String first = lines.get(0);
-            if (Character.isWhitespace(first.charAt(0))) {
-                lines.set(0, first.substring(1));
+        Path path = socket.path();
+        if (path == null) {
+            // Encode before opening the socket, which may truncate its content,
+            // so that a value that fails to serialize does not leave it half-written
+            StringWriter buffer = new StringWriter();
+            socket.format().write(this, buffer, value, type);
+            try (Writer writer = socket.openWriter()) {
+                writer.write(buffer.toString());
             }
+            return;
         }
-        for (int i = 0; i < headers.size(); i++) {
-            String l = headers.get(i);
-            if (l.startsWith("#"))
-                lines.add(i, "#" + l);
-            else
-                lines.add(i, "# " + l);
-        }
-        if (!headers.isEmpty()) {
-            lines.add(headers.size(), "");
+        saveToFile(path, value, type);
+    }
+
+    /**
+     * Encodes the value into a temporary file next to the given one, and
+     * moves it over the file once it is complete. A value that fails to
+     * serialize leaves the file untouched.
+     */
+    private void saveToFile(@NotNull Path path, @NotNull Object value, @NotNull Type type) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(temporary)) {
+                socket.format().write(this, writer, value, type);
+            }
+            try {
+                Files.move(temporary, path, REPLACE_EXISTING, ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, path, REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
         }
+    }
 
-        socket.writeStrings(lines);
+    @NotNull Yaml borrowYaml() {
+        return pooled ? YamlPool.borrow() : yaml;
+    }
+
+    void releaseYaml(@NotNull Yaml yaml) {
+        if (pooled)
+            YamlPool.release(yaml);
     }
 
     /**
@@ -256,7 +363,7 @@ public class CommentedConfiguration {
      * @return The deserialized value.
      */
     public <T> T get(@NotNull String key, @NotNull Type type) {
-        return fromValue(gson, data.get(key), Object.class, type);
+        return fromValue(gson, data.get(key), type);
     }
 
 
@@ -268,7 +375,19 @@ public class CommentedConfiguration {
      * @return The deserialized data.
      */
     public <T> T getAs(@NotNull Type type) {
-        return fromValue(gson, data, MAP_TYPE, type);
+        return getAs(data, type);
+    }
+
+    /**
+     * Deserializes the given data to the specified type, without loading it.
+     *
+     * @param data The data, such as the result of {@link #read()}.
+     * @param type The type to deserialize the data into.
+     * @param <T>  The type of the returned value.
+     * @return The deserialized data.
+     */
+    public <T> T getAs(@NotNull Map<String, Object> data, @NotNull Type type) {
+        return fromValue(gson, data, type);
     }
 
     /**
@@ -307,14 +426,22 @@ public class CommentedConfiguration {
         data.put(key, toJsonValue(gson, v, type));
     }
 
+    /**
+     * Encodes the given value straight into a tree that can be dumped,
+     * without writing it to JSON first
+     */
     private static Object toJsonValue(Gson gson, @NotNull Object o, @NotNull Type type) {
-        String toJson = gson.toJson(o, type);
-        return gson.fromJson(toJson, Object.class);
+        TreeWriter writer = new TreeWriter();
+        gson.toJson(o, type, writer);
+        return writer.get();
     }
 
-    private static <T> T fromValue(Gson gson, Object o, @NotNull Type valueType, @NotNull Type javaType) {
-        String toJson = gson.toJson(o, valueType);
-        return gson.fromJson(toJson, javaType);
+    /**
+     * Decodes the given value straight from the loaded tree, without
+     * writing it to JSON first
+     */
+    private static <T> T fromValue(Gson gson, Object o, @NotNull Type javaType) {
+        return gson.fromJson(new TreeReader(gson, o), javaType);
     }
 
     /**
@@ -341,8 +468,9 @@ public class CommentedConfiguration {
         if (!(value instanceof Map)) {
             throw new IllegalArgumentException("Expected data to be a map-like structure, found " + value);
         }
+        // The tree writer creates a new map, so there is no need to copy it
         //noinspection unchecked
-        this.data = new LinkedHashMap<>((Map<String, Object>) value);
+        this.data = (Map<String, Object>) value;
     }
 
     /**
@@ -0,0 +1,117 @@
+/*
+ * This file is part of Cream, licensed under the MIT License.
+ *
+ *  Copyright (c) Revxrsal <reflxction.github@gmail.com>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+package revxrsal.spec;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.util.Map;
+
+/**
+ * The format of the content of a {@link CommentedConfiguration}, which
+ * parses and writes it.
+ * <p>
+ * The format of a configuration is chosen by its {@link DataSocket}. See
+ * {@link DataSocket#fromPath(java.nio.file.Path, ConfigFormat)} and
+ * {@link DataSocket#withFormat(ConfigFormat)}.
+ */
+public interface ConfigFormat {
+
+    /**
+     * YAML, with comments and headers. This is the default format.
+     */
+    ConfigFormat YAML = YamlFormat.INSTANCE;
+
+    /**
+     * JSON, without comments. Specs are decoded and encoded directly
+     * with Gson's streaming API, without building the data of the
+     * configuration, so configurations in JSON are
+     * {@link CommentedConfiguration#setStreaming(boolean) streaming} by default.
+     */
+    ConfigFormat JSON = JsonFormat.INSTANCE;
+
+    /**
+     * Parses the given content into maps, lists and scalars
+     *
+     * @param config The configuration
+     * @param reader The content
+     * @return The parsed data
+     * @throws IOException if reading fails
+     */
+    @NotNull Map<String, Object> read(@NotNull CommentedConfiguration config, @NotNull Reader reader) throws IOException;
+
+    /**
+     * Parses the given content and decodes it to the specified type. Formats
+     * should do this without building the tree of the content when they can.
+     *
+     * @param config The configuration
+     * @param reader The content
+     * @param type   The type to deserialize the content into
+     * @param <T>    The type of the returned value
+     * @return The deserialized content
+     * @throws IOException if reading fails
+     */
+    default <T> T readAs(@NotNull CommentedConfiguration config, @NotNull Reader reader, @NotNull Type type) throws IOException {
+        return config.getAs(read(config, reader), type);
+    }
+
+    /**
+     * Writes the data of the given configuration, along with its comments
+     * and headers if the format supports them
+     *
+     * @param config The configuration
+     * @param writer The writer
+     * @throws IOException if writing fails
+     */
+    void write(@NotNull CommentedConfiguration config, @NotNull Writer writer) throws IOException;
+
+    /**
+     * Writes the given value as the content of the configuration. Formats
+     * should do this without building the data of the configuration when
+     * they can.
+     *
+     * @param config The configuration
+     * @param writer The writer
+     * @param value  The value to write
+     * @param type   The type used for serialization
+     * @throws IOException if writing fails
+     */
+    default void write(@NotNull CommentedConfiguration config, @NotNull Writer writer, @NotNull Object value, @NotNull Type type) throws IOException {
+        config.setTo(value, type);
+        write(config, writer);
+    }
+
+    /**
+     * Tests whether configurations in this format are streaming by default.
+     * See {@link CommentedConfiguration#setStreaming(boolean)}
+     *
+     * @return if configurations stream by default
+     */
+    default boolean isStreamingByDefault() {
+        return false;
+    }
+}
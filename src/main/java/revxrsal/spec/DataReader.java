@@ -0,0 +1,151 @@
+/*
+ * This file is part of Cream, licensed under the MIT License.
+ *
+ *  Copyright (c) Revxrsal <reflxction.github@gmail.com>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+package revxrsal.spec;
+
+import com.google.gson.stream.JsonReader;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigInteger;
+import java.util.List;
+
+/**
+ * A {@link JsonReader} that reads configuration data instead of JSON text.
+ * <p>
+ * Gson's own {@link java.util.Map} adapter relies on internals of {@link JsonReader}
+ * that are not available to subclasses, so maps in object form are decoded by
+ * {@link SpecAdapterFactory} when reading from these readers, using
+ * {@link #promoteNameToValue()}.
+ */
+abstract class DataReader extends JsonReader {
+
+    private static final Reader UNREADABLE = new Reader() {
+        @Override
+        public int read(char @NotNull [] buffer, int offset, int count) {
+            throw new AssertionError();
+        }
+
+        @Override
+        public void close() {
+            throw new AssertionError();
+        }
+    };
+
+    DataReader() {
+        super(UNREADABLE);
+    }
+
+    /**
+     * Turns the name of the next entry into a string value, so that it can
+     * be read with the adapter of the map keys
+     */
+    abstract void promoteNameToValue() throws IOException;
+
+    /**
+     * Returns the current path of the reader, in the format of
+     * {@link Util.JsonPathUtils#getJsonPath(JsonReader)}
+     *
+     * @return The path
+     */
+    abstract @NotNull List<Object> path();
+
+    @Override
+    public String getPath() {
+        StringBuilder result = new StringBuilder("$");
+        for (Object element : path()) {
+            if (element instanceof Integer)
+                result.append('[').append(element).append(']');
+            else
+                result.append('.').append(element);
+        }
+        return result.toString();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + locationString();
+    }
+
+    final @NotNull String locationString() {
+        return " at path " + getPath();
+    }
+
+    /**
+     * Converts a number, or the text of a number, to a double
+     */
+    final double asDouble(@NotNull Object value) {
+        double result = value instanceof Number ? ((Number) value).doubleValue() : Double.parseDouble((String) value);
+        if (!isLenient() && (Double.isNaN(result) || Double.isInfinite(result)))
+            throw new NumberFormatException("JSON forbids NaN and infinities: " + result + locationString());
+        return result;
+    }
+
+    /**
+     * Converts a number, or the text of a number, to a long
+     */
+    final long asLong(@NotNull Object value) {
+        if (isIntegral(value))
+            return ((Number) value).longValue();
+        if (value instanceof String && isLong((String) value))
+            return Long.parseLong((String) value);
+        double asDouble = value instanceof Number ? ((Number) value).doubleValue() : Double.parseDouble((String) value);
+        long result = (long) asDouble;
+        if (result != asDouble)
+            throw new NumberFormatException("Expected a long but was " + value + locationString());
+        return result;
+    }
+
+    /**
+     * Converts a number, or the text of a number, to an int
+     */
+    final int asInt(@NotNull Object value) {
+        if (isIntegral(value) || (value instanceof String && isLong((String) value))) {
+            long asLong = value instanceof Number ? ((Number) value).longValue() : Long.parseLong((String) value);
+            int result = (int) asLong;
+            if (result != asLong)
+                throw new NumberFormatException("Expected an int but was " + value + locationString());
+            return result;
+        }
+        double asDouble = value instanceof Number ? ((Number) value).doubleValue() : Double.parseDouble((String) value);
+        int result = (int) asDouble;
+        if (result != asDouble)
+            throw new NumberFormatException("Expected an int but was " + value + locationString());
+        return result;
+    }
+
+    private static boolean isIntegral(Object value) {
+        return value instanceof Integer || value instanceof Long || value instanceof Short
+                || value instanceof Byte || value instanceof BigInteger;
+    }
+
+    private static boolean isLong(@NotNull String value) {
+        try {
+            Long.parseLong(value);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
@@ -11,15 +11,25 @@ import java.io.StringReader;
 import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 public class DataSocket {
 
     private final SocketSupplier<Reader> reader;
     private final SocketSupplier<Writer> writer;
+    private final @Nullable Path path;
+    private final ConfigFormat format;
 
     public DataSocket(SocketSupplier<Reader> reader, SocketSupplier<Writer> writer) {
+        this(reader, writer, null, ConfigFormat.YAML);
+    }
+
+    private DataSocket(SocketSupplier<Reader> reader, SocketSupplier<Writer> writer, @Nullable Path path, ConfigFormat format) {
         this.reader = reader;
         this.writer = writer;
+        this.path = path;
+        this.format = format;
     }
 
     public interface SocketSupplier<T> {
@@ -35,6 +45,37 @@ public class DataSocket {
         return writer != null;
     }
 
+    /**
+     * Returns the file this socket reads and writes, or null if it
+     * was not created with {@link #fromPath(Path)}
+     *
+     * @return The file, or null
+     */
+    public @Nullable Path path() {
+        return path;
+    }
+
+    /**
+     * Returns the format of the content of this socket. This is
+     * {@link ConfigFormat#YAML} unless specified otherwise
+     *
+     * @return The format
+     */
+    public @NotNull ConfigFormat format() {
+        return format;
+    }
+
+    /**
+     * Returns a socket that reads and writes the same content as this one,
+     * in the given format
+     *
+     * @param format The format
+     * @return The new socket
+     */
+    public @NotNull DataSocket withFormat(@NotNull ConfigFormat format) {
+        return new DataSocket(reader, writer, path, format);
+    }
+
     public Reader openReader() throws IOException {
         if (reader == null) {
             throw new IllegalStateException("This socket was not configured for reading");
@@ -58,7 +99,27 @@ public class DataSocket {
         }
     }
 
+    /**
+     * Creates a socket that reads and writes the given file in
+     * {@link ConfigFormat#YAML YAML}, whatever its extension is. Use
+     * {@link #fromPath(Path, ConfigFormat)} for other formats.
+     *
+     * @param path The file
+     * @return The socket
+     */
     public static DataSocket fromPath(Path path) {
+        return fromPath(path, ConfigFormat.YAML);
+    }
+
+    /**
+     * Creates a socket that reads and writes the given file in the
+     * given format
+     *
+     * @param path   The file
+     * @param format The format
+     * @return The socket
+     */
+    public static DataSocket fromPath(Path path, ConfigFormat format) {
         return new DataSocket(() -> {
             if (Files.exists(path)) {
                 return Files.newBufferedReader(path);
@@ -69,7 +130,7 @@ public class DataSocket {
             if (path.getParent() != null)
                 Files.createDirectories(path.getParent());
             return Files.newBufferedWriter(path, CREATE, TRUNCATE_EXISTING, WRITE);
-        });
+        }, path, format);
     }
 
     public static DataSocket readOnly(SocketSupplier<Reader> reader) {
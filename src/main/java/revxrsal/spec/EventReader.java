@@ -0,0 +1,517 @@
+/*
+ * This file is part of Cream, licensed under the MIT License.
+ *
+ *  Copyright (c) Revxrsal <reflxction.github@gmail.com>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+package revxrsal.spec;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonToken;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.yaml.snakeyaml.LoaderOptions;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+import org.yaml.snakeyaml.events.*;
+import org.yaml.snakeyaml.nodes.NodeId;
+import org.yaml.snakeyaml.nodes.ScalarNode;
+import org.yaml.snakeyaml.nodes.Tag;
+import org.yaml.snakeyaml.resolver.Resolver;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * A {@link DataReader} that reads the events of a YAML parser, so that
+ * values are decoded as they are parsed.
+ * <p>
+ * Unlike {@link TreeReader}, this never builds the tree of the document.
+ * Skipped values are skipped event by event, and their scalars are never
+ * constructed. Only anchored nodes are remembered, so that their aliases can
+ * be replayed.
+ * <p>
+ * Scalars are resolved and constructed like {@link org.yaml.snakeyaml.Yaml#load(java.io.Reader)}
+ * would. Merge keys ({@code <<}) and keys that are not scalars need the whole
+ * tree, and fail with {@link Unsupported}.
+ */
+final class EventReader extends DataReader {
+
+    private static final Resolver RESOLVER = new Resolver();
+    private static final int MAX_ALIASES = new LoaderOptions().getMaxAliasesForCollections();
+
+    /*
+     * Scopes of the containers being read
+     */
+    private static final int OBJECT_NAME = 1;
+    private static final int OBJECT_VALUE = 2;
+    private static final int ARRAY = 3;
+
+    private final Gson gson;
+    private final Iterator<Event> source;
+    private final ScalarConstructor constructor = new ScalarConstructor();
+
+    /**
+     * The events of anchored nodes, by their anchor
+     */
+    private final Map<String, List<Event>> anchors = new HashMap<>();
+
+    /**
+     * The anchored nodes whose events are being recorded
+     */
+    private final List<Recording> recordings = new ArrayList<>();
+
+    /**
+     * The aliases being replayed. The first one is the innermost
+     */
+    private final Deque<Iterator<Event>> replays = new ArrayDeque<>();
+    private int aliases;
+
+    /**
+     * The next event, if it has been pulled already
+     */
+    private @Nullable Event pending;
+
+    /**
+     * The token of the pending event, and its value if it is a scalar or a name
+     */
+    private @Nullable JsonToken peeked;
+    private @Nullable Object peekedValue;
+
+    /**
+     * Whether the peeked value is a name that was promoted to a value
+     */
+    private boolean promoted;
+
+    private int[] scopes = new int[32];
+    private String[] pathNames = new String[32];
+    private int[] pathIndices = new int[32];
+    private int depth = 0;
+
+    EventReader(@NotNull Gson gson, @NotNull Iterable<Event> events) {
+        this.gson = gson;
+        this.source = events.iterator();
+    }
+
+    @Override
+    public void beginArray() throws IOException {
+        expect(JsonToken.BEGIN_ARRAY);
+        take();
+        push(ARRAY);
+    }
+
+    @Override
+    public void endArray() throws IOException {
+        expect(JsonToken.END_ARRAY);
+        take();
+        depth--;
+        valueConsumed();
+    }
+
+    @Override
+    public void beginObject() throws IOException {
+        expect(JsonToken.BEGIN_OBJECT);
+        take();
+        push(OBJECT_NAME);
+    }
+
+    @Override
+    public void endObject() throws IOException {
+        expect(JsonToken.END_OBJECT);
+        take();
+        depth--;
+        valueConsumed();
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        JsonToken token = peek();
+        return token != JsonToken.END_OBJECT && token != JsonToken.END_ARRAY && token != JsonToken.END_DOCUMENT;
+    }
+
+    @Override
+    public JsonToken peek() throws IOException {
+        if (peeked != null)
+            return peeked;
+        Event event = pendingEvent();
+        int scope = depth == 0 ? 0 : scopes[depth - 1];
+        if (scope == OBJECT_NAME) {
+            if (event instanceof MappingEndEvent)
+                return peeked = JsonToken.END_OBJECT;
+            if (!(event instanceof ScalarEvent))
+                throw new Unsupported("Keys that are not scalars are not supported when streaming" + locationString());
+            ScalarEvent scalar = (ScalarEvent) event;
+            Tag tag = tagOf(scalar);
+            if (tag.equals(Tag.MERGE))
+                throw new Unsupported("Merge keys are not supported when streaming" + locationString());
+            peekedValue = String.valueOf(constructor.construct(scalar, tag));
+            return peeked = JsonToken.NAME;
+        }
+        if (event instanceof MappingStartEvent)
+            return peeked = JsonToken.BEGIN_OBJECT;
+        if (event instanceof SequenceStartEvent)
+            return peeked = JsonToken.BEGIN_ARRAY;
+        if (event instanceof SequenceEndEvent)
+            return peeked = JsonToken.END_ARRAY;
+        if (event instanceof DocumentEndEvent || event instanceof StreamEndEvent)
+            return peeked = JsonToken.END_DOCUMENT;
+        if (!(event instanceof ScalarEvent))
+            throw new IllegalStateException("Unexpected event " + event + locationString());
+        ScalarEvent scalar = (ScalarEvent) event;
+        Object value = normalize(constructor.construct(scalar, tagOf(scalar)));
+        peekedValue = value;
+        if (value == null)
+            return peeked = JsonToken.NULL;
+        if (value instanceof String)
+            return peeked = JsonToken.STRING;
+        if (value instanceof Number)
+            return peeked = JsonToken.NUMBER;
+        return peeked = JsonToken.BOOLEAN;
+    }
+
+    @Override
+    public String nextName() throws IOException {
+        expect(JsonToken.NAME);
+        String name = (String) peekedValue;
+        take();
+        pathNames[depth - 1] = name;
+        scopes[depth - 1] = OBJECT_VALUE;
+        return name;
+    }
+
+    @Override
+    void promoteNameToValue() throws IOException {
+        String name = nextName();
+        peeked = JsonToken.STRING;
+        peekedValue = name;
+        promoted = true;
+    }
+
+    @Override
+    public String nextString() throws IOException {
+        JsonToken token = peek();
+        if (token != JsonToken.STRING && token != JsonToken.NUMBER)
+            throw new IllegalStateException("Expected " + JsonToken.STRING + " but was " + token + locationString());
+        String result = peekedValue.toString();
+        consumeValue();
+        return result;
+    }
+
+    @Override
+    public boolean nextBoolean() throws IOException {
+        expect(JsonToken.BOOLEAN);
+        boolean result = (Boolean) peekedValue;
+        consumeValue();
+        return result;
+    }
+
+    @Override
+    public void nextNull() throws IOException {
+        expect(JsonToken.NULL);
+        consumeValue();
+    }
+
+    @Override
+    public double nextDouble() throws IOException {
+        double result = asDouble(peekNumber());
+        consumeValue();
+        return result;
+    }
+
+    @Override
+    public long nextLong() throws IOException {
+        long result = asLong(peekNumber());
+        consumeValue();
+        return result;
+    }
+
+    @Override
+    public int nextInt() throws IOException {
+        int result = asInt(peekNumber());
+        consumeValue();
+        return result;
+    }
+
+    @Override
+    public void skipValue() throws IOException {
+        if (promoted) {
+            consumeValue();
+            return;
+        }
+        if (depth > 0 && scopes[depth - 1] == OBJECT_NAME) {
+            // Names and ends of objects
+            switch (peek()) {
+                case NAME:
+                    nextName();
+                    pathNames[depth - 1] = "<skipped>";
+                    break;
+                case END_OBJECT:
+                    endObject();
+                    break;
+            }
+            return;
+        }
+        // Values are skipped without being constructed
+        Event event = pendingEvent();
+        if (event instanceof SequenceEndEvent) {
+            endArray();
+            return;
+        }
+        if (event instanceof DocumentEndEvent || event instanceof StreamEndEvent)
+            return;
+        take();
+        if (event instanceof CollectionStartEvent) {
+            int nested = 1;
+            while (nested > 0) {
+                Event next = nextEvent();
+                if (next instanceof CollectionStartEvent)
+                    nested++;
+                else if (next instanceof CollectionEndEvent)
+                    nested--;
+            }
+        }
+        valueConsumed();
+    }
+
+    @Override
+    public void close() {
+        pending = new StreamEndEvent(null, null);
+        peeked = null;
+        replays.clear();
+        depth = 0;
+    }
+
+    @Override
+    @NotNull List<Object> path() {
+        List<Object> path = new ArrayList<>();
+        for (int i = 0; i < depth; i++) {
+            if (scopes[i] == ARRAY)
+                path.add(pathIndices[i]);
+            else if (pathNames[i] != null)
+                path.add(pathNames[i]);
+        }
+        return path;
+    }
+
+    private void expect(@NotNull JsonToken expected) throws IOException {
+        JsonToken token = peek();
+        if (token != expected)
+            throw new IllegalStateException("Expected " + expected + " but was " + token + locationString());
+    }
+
+    private Object peekNumber() throws IOException {
+        JsonToken token = peek();
+        if (token != JsonToken.NUMBER && token != JsonToken.STRING)
+            throw new IllegalStateException("Expected " + JsonToken.NUMBER + " but was " + token + locationString());
+        return peekedValue;
+    }
+
+    private void push(int scope) {
+        if (depth == scopes.length) {
+            int newLength = depth * 2;
+            scopes = Arrays.copyOf(scopes, newLength);
+            pathNames = Arrays.copyOf(pathNames, newLength);
+            pathIndices = Arrays.copyOf(pathIndices, newLength);
+        }
+        scopes[depth] = scope;
+        pathNames[depth] = null;
+        pathIndices[depth] = 0;
+        depth++;
+    }
+
+    /**
+     * Consumes the peeked scalar
+     */
+    private void consumeValue() {
+        take();
+        if (promoted) {
+            promoted = false;
+            return;
+        }
+        valueConsumed();
+    }
+
+    /**
+     * Moves past a value of the current container
+     */
+    private void valueConsumed() {
+        if (depth == 0)
+            return;
+        if (scopes[depth - 1] == ARRAY)
+            pathIndices[depth - 1]++;
+        else
+            scopes[depth - 1] = OBJECT_NAME;
+    }
+
+    private void take() {
+        pending = null;
+        peeked = null;
+        peekedValue = null;
+    }
+
+    private @NotNull Event pendingEvent() {
+        if (pending == null)
+            pending = nextEvent();
+        return pending;
+    }
+
+    /**
+     * Returns the next event that describes content, replacing aliases
+     * with the events of their anchored node
+     */
+    private @NotNull Event nextEvent() {
+        while (true) {
+            Event event;
+            Iterator<Event> replay = replays.peekFirst();
+            if (replay != null) {
+                if (!replay.hasNext()) {
+                    replays.removeFirst();
+                    continue;
+                }
+                event = replay.next();
+            } else {
+                event = source.next();
+                record(event);
+            }
+            if (event instanceof AliasEvent) {
+                String anchor = ((AliasEvent) event).getAnchor();
+                List<Event> events = anchors.get(anchor);
+                if (events == null)
+                    throw new IllegalStateException("Found undefined alias " + anchor + locationString());
+                if (events.size() > 1 && ++aliases > MAX_ALIASES)
+                    throw new IllegalStateException("Number of aliases for non-scalar nodes exceeds the specified max=" + MAX_ALIASES);
+                replays.addFirst(events.iterator());
+                continue;
+            }
+            if (event instanceof CommentEvent || event instanceof StreamStartEvent || event instanceof DocumentStartEvent)
+                continue;
+            return event;
+        }
+    }
+
+    /**
+     * Records the given event for the anchored nodes that contain it
+     */
+    private void record(@NotNull Event event) {
+        for (Iterator<Recording> iterator = recordings.iterator(); iterator.hasNext(); ) {
+            Recording recording = iterator.next();
+            recording.events.add(event);
+            if (event instanceof CollectionStartEvent)
+                recording.nested++;
+            else if (event instanceof CollectionEndEvent && --recording.nested == 0) {
+                anchors.put(recording.anchor, recording.events);
+                iterator.remove();
+            }
+        }
+        if (event instanceof NodeEvent && !(event instanceof AliasEvent)) {
+            String anchor = ((NodeEvent) event).getAnchor();
+            if (anchor == null)
+                return;
+            Recording recording = new Recording(anchor, event);
+            if (recording.nested == 0)
+                anchors.put(anchor, recording.events);
+            else
+                recordings.add(recording);
+        }
+    }
+
+    private static @NotNull Tag tagOf(@NotNull ScalarEvent event) {
+        String tag = event.getTag();
+        if (tag == null || tag.equals("!"))
+            return RESOLVER.resolve(NodeId.scalar, event.getValue(), event.getImplicit().canOmitTagInPlainScalar());
+        return new Tag(tag);
+    }
+
+    /**
+     * Converts the given scalar to a string, number or boolean. Other
+     * scalars (like dates) are converted with {@link Gson#toJsonTree(Object)},
+     * like {@link TreeReader} does.
+     */
+    private @Nullable Object normalize(@Nullable Object value) {
+        if (value == null || value instanceof String || value instanceof Number || value instanceof Boolean)
+            return value;
+        JsonElement element = gson.toJsonTree(value);
+        if (!(element instanceof JsonPrimitive))
+            throw new Unsupported("Scalars of type " + value.getClass().getName() + " are not supported when streaming" + locationString());
+        JsonPrimitive primitive = (JsonPrimitive) element;
+        if (primitive.isBoolean())
+            return primitive.getAsBoolean();
+        if (primitive.isNumber())
+            return primitive.getAsNumber();
+        return primitive.getAsString();
+    }
+
+    /**
+     * Tests whether the given exception, or one of its causes, was thrown
+     * because the document cannot be streamed
+     *
+     * @param throwable The exception
+     * @return if the document needs to be loaded as a tree
+     */
+    static boolean isUnsupported(@Nullable Throwable throwable) {
+        for (Throwable t = throwable; t != null; t = t.getCause()) {
+            if (t instanceof Unsupported)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Thrown when the document uses YAML features that cannot be streamed
+     */
+    static final class Unsupported extends RuntimeException {
+
+        Unsupported(@NotNull String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * The events of an anchored node, while it is being read
+     */
+    private static final class Recording {
+
+        private final String anchor;
+        private final List<Event> events = new ArrayList<>();
+        private int nested;
+
+        private Recording(@NotNull String anchor, @NotNull Event start) {
+            this.anchor = anchor;
+            this.events.add(start);
+            this.nested = start instanceof CollectionStartEvent ? 1 : 0;
+        }
+    }
+
+    /**
+     * Constructs single scalars, like {@link org.yaml.snakeyaml.Yaml#load(java.io.Reader)}
+     */
+    private static final class ScalarConstructor extends SafeConstructor {
+
+        private ScalarConstructor() {
+            super(new LoaderOptions());
+        }
+
+        Object construct(@NotNull ScalarEvent event, @NotNull Tag tag) {
+            ScalarNode node = new ScalarNode(tag, event.getValue(), event.getStartMark(), event.getEndMark(), event.getScalarStyle());
+            return getConstructor(node).construct(node);
+        }
+    }
+}
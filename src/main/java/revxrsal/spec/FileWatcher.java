@@ -11,16 +11,15 @@ import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Set;
+import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.Executor;
-import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
@@ -36,18 +35,6 @@ public class FileWatcher implements AutoCloseable {
         StandardWatchEventKinds.ENTRY_DELETE,
         StandardWatchEventKinds.ENTRY_MODIFY};
 
-    private static final ThreadFactory DEFAULT_THREAD_FACTORY = new ThreadFactory() {
-        private final AtomicInteger counter = new AtomicInteger(0);
-
-        @Override
-        public Thread newThread(@NotNull Runnable r) {
-            Thread t = new Thread(r);
-            t.setDaemon(true);
-            t.setName("FileWatcher-Thread-" + counter.getAndIncrement());
-            return t;
-        }
-    };
-
     private final Executor taskExecutor;
 
     private final AtomicBoolean open = new AtomicBoolean(true);
@@ -55,6 +42,12 @@ public class FileWatcher implements AutoCloseable {
     private final Thread executor;
     private final Map<Path, Registration> registrations = new ConcurrentHashMap<>();
 
+    /**
+     * How long a file must go without events before its latest event is
+     * dispatched
+     */
+    private static final long DEBOUNCE_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
 
     private FileWatcher(ThreadFactory threadFactory, FileSystem fileSystem, Executor taskExecutor)
         throws IOException {
@@ -62,10 +55,17 @@ public class FileWatcher implements AutoCloseable {
         this.taskExecutor = taskExecutor;
 
         this.executor = threadFactory.newThread(() -> {
+            // The latest event of each file, in the order they are due
+            final Map<Pending, WatchEvent<?>> pending = new LinkedHashMap<>();
             while (open.get()) {
                 WatchKey key;
                 try {
-                    key = watchService.take();
+                    if (pending.isEmpty()) {
+                        key = watchService.take();
+                    } else {
+                        long wait = pending.keySet().iterator().next().due - System.nanoTime();
+                        key = watchService.poll(Math.max(wait, 0), TimeUnit.NANOSECONDS);
+                    }
                 } catch (InterruptedException e) {
                     open.set(false);
                     Thread.currentThread().interrupt();
@@ -74,42 +74,60 @@ public class FileWatcher implements AutoCloseable {
                     break;
                 }
 
-                Path watched = (Path) key.watchable();
-                var registration = registrations.get(watched);
-                if (registration != null) {
-                    final Set<Object> seenContexts = new HashSet<>();
-                    for (WatchEvent<?> event : key.pollEvents()) {
-                        if (!key.isValid()) {
-                            break;
-                        }
-
-                        if (!seenContexts.add(event.context())) {
-                            continue;
-                        }
-
-                        registration.handle(event);
-                        if (!registration.hasSubscribers()) {
-                            key.cancel();
-                            break;
-                        }
-                    }
-
-                    if (!key.reset()) {
-                        registrations.remove(watched);
-                    }
-                }
-
-                try {
-                    Thread.sleep(20);
-                } catch (final InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
+                if (key != null) {
+                    collect(key, pending);
                 }
+                dispatchDue(pending);
             }
         });
         executor.start();
     }
 
+    /**
+     * Adds the events of the given key to the pending events. Editors often
+     * write a file in several steps, so an event only becomes due once its file
+     * has not changed for {@link #DEBOUNCE_NANOS}.
+     */
+    private void collect(WatchKey key, Map<Pending, WatchEvent<?>> pending) {
+        Path watched = (Path) key.watchable();
+        var registration = registrations.get(watched);
+        if (registration == null) {
+            key.reset();
+            return;
+        }
+        long due = System.nanoTime() + DEBOUNCE_NANOS;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            Pending file = new Pending(registration, event.context(), due);
+            // Re-inserting moves the file to the end, so that the map stays in due order
+            pending.remove(file);
+            pending.put(file, event);
+        }
+        if (!key.reset()) {
+            registrations.remove(watched);
+        }
+    }
+
+    private void dispatchDue(Map<Pending, WatchEvent<?>> pending) {
+        long now = System.nanoTime();
+        var iterator = pending.entrySet().iterator();
+        while (iterator.hasNext()) {
+            var entry = iterator.next();
+            Pending file = entry.getKey();
+            if (file.due - now > 0) {
+                break;
+            }
+            iterator.remove();
+            Registration registration = file.registration;
+            if (!registration.getKey().isValid()) {
+                continue;
+            }
+            registration.handle(entry.getValue());
+            if (!registration.hasSubscribers()) {
+                registration.getKey().cancel();
+            }
+        }
+    }
+
     @Override
     public void close() throws Exception {
         open.set(false);
@@ -162,9 +180,45 @@ public class FileWatcher implements AutoCloseable {
         return reg;
     }
 
+    /**
+     * Creates a new file watcher. On Java 21 and later, it uses virtual threads
+     * unless they are {@link Specs#setVirtualThreadsEnabled(boolean) disabled}.
+     *
+     * @return The file watcher
+     * @throws IOException if the watch service cannot be created
+     */
     public static FileWatcher create() throws IOException {
-        return new FileWatcher(DEFAULT_THREAD_FACTORY, FileSystems.getDefault(),
-            ForkJoinPool.commonPool());
+        boolean virtual = Specs.isVirtualThreadsEnabled();
+        return new FileWatcher(WatcherThreads.watcherFactory(virtual), FileSystems.getDefault(),
+            WatcherThreads.taskExecutor(virtual));
+    }
+
+    /**
+     * A file that has an event waiting to be dispatched. Files are equal if
+     * they have the same name in the same registration, whenever they are due.
+     */
+    private static final class Pending {
+
+        private final Registration registration;
+        private final Object context;
+        private final long due;
+
+        private Pending(Registration registration, Object context, long due) {
+            this.registration = registration;
+            this.context = context;
+            this.due = due;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Pending && registration == ((Pending) o).registration
+                && Objects.equals(context, ((Pending) o).context);
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(registration) * 31 + Objects.hashCode(context);
+        }
     }
 
     private static final class Registration {
@@ -0,0 +1,144 @@
+/*
+ * This file is part of Cream, licensed under the MIT License.
+ *
+ *  Copyright (c) Revxrsal <reflxction.github@gmail.com>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+package revxrsal.spec;
+
+import lombok.SneakyThrows;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import revxrsal.spec.annotation.Reload;
+import revxrsal.spec.annotation.Save;
+
+import java.lang.invoke.MethodHandle;
+
+/**
+ * The superclass of all reference classes generated by {@link SpecGenerator}.
+ * <p>
+ * This is the generated equivalent of {@link SpecProxy}. Generated references
+ * forward every call to the current value with a plain interface call, and
+ * only delegate to this class for {@link Reload @Reload} and {@link Save @Save}
+ * methods.
+ * <p>
+ * Internal use only.
+ */
+@ApiStatus.Internal
+public abstract class GeneratedReference {
+
+    /**
+     * The current value. This is read directly by generated methods
+     */
+    protected volatile Object value;
+
+    private final Layout layout;
+    private final Runnable onReload;
+    private final Runnable onSave;
+    private SpecReference<?> reference;
+
+    protected GeneratedReference(@NotNull Layout layout, @NotNull Runnable onReload, @NotNull Runnable onSave) {
+        this.layout = layout;
+        this.onReload = onReload;
+        this.onSave = onSave;
+    }
+
+    /**
+     * Sets the value this reference forwards calls to
+     *
+     * @param value The new value
+     */
+    final void setValue(@NotNull Object value) {
+        this.value = value;
+    }
+
+    /**
+     * Returns the {@link SpecReference} that owns this reference
+     *
+     * @return The owning reference
+     */
+    final @NotNull SpecReference<?> reference() {
+        return reference;
+    }
+
+    /**
+     * Sets the {@link SpecReference} that owns this reference
+     *
+     * @param reference The owning reference
+     */
+    final void setReference(@NotNull SpecReference<?> reference) {
+        this.reference = reference;
+    }
+
+    /**
+     * Invoked by generated {@link Reload @Reload} and {@link Save @Save} methods
+     *
+     * @param index The method index
+     * @param args  The method arguments. Could be null
+     * @return The method result
+     */
+    protected final Object handle(int index, Object[] args) {
+        MethodDispatch dispatch = layout.handled[index];
+        if (dispatch.kind() == MethodDispatch.Kind.RELOAD)
+            onReload.run();
+        else if (dispatch.kind() == MethodDispatch.Kind.SAVE)
+            onSave.run();
+        if (dispatch.method().isDefault())
+            return dispatch.invokeDefault(this, args);
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(value);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return value.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        return value.hashCode();
+    }
+
+    /**
+     * Contains the information shared by all instances of a generated reference
+     * class.
+     * <p>
+     * Internal use only.
+     */
+    @ApiStatus.Internal
+    public static final class Layout {
+
+        final MethodDispatch[] handled;
+        MethodHandle constructor;
+
+        Layout(@NotNull MethodDispatch[] handled) {
+            this.handled = handled;
+        }
+
+        @SneakyThrows
+        @NotNull GeneratedReference newInstance(@NotNull Runnable onReload, @NotNull Runnable onSave) {
+            return (GeneratedReference) constructor.invokeExact(this, onReload, onSave);
+        }
+    }
+}
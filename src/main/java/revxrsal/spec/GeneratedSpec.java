@@ -0,0 +1,316 @@
+/*
+ * This file is part of Cream, licensed under the MIT License.
+ *
+ *  Copyright (c) Revxrsal <reflxction.github@gmail.com>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+package revxrsal.spec;
+
+import lombok.SneakyThrows;
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import revxrsal.spec.annotation.AsMap;
+import revxrsal.spec.annotation.HandledByProxy;
+import revxrsal.spec.annotation.Memoize;
+
+import java.lang.invoke.MethodHandle;
+import java.util.*;
+
+import static revxrsal.spec.Specs.createDefaultMap;
+
+/**
+ * The superclass of all spec classes generated by {@link SpecGenerator}.
+ * <p>
+ * Generated classes store every property in a real field, and only delegate
+ * to this class for methods that are {@link HandledByProxy handled by the proxy}.
+ * <p>
+ * Internal use only.
+ */
+@ApiStatus.Internal
+public abstract class GeneratedSpec {
+
+    private final Layout layout;
+    private PropertyMap map;
+    volatile Memoized memoized;
+
+    protected GeneratedSpec(@NotNull Layout layout) {
+        this.layout = layout;
+    }
+
+    /**
+     * Returns the layout of this spec
+     *
+     * @return The layout
+     */
+    final @NotNull Layout layout() {
+        return layout;
+    }
+
+    /**
+     * Returns a live view of the properties of this spec
+     *
+     * @return The properties map
+     */
+    final @NotNull PropertyMap map() {
+        if (map == null) {
+            map = new PropertyMap(layout.keys, layout.slots) {
+                @Override
+                protected Object getSlot(int slot) {
+                    return layout.get(GeneratedSpec.this, slot);
+                }
+
+                @Override
+                protected void setSlot(int slot, Object value) {
+                    layout.set(GeneratedSpec.this, slot, value);
+                }
+
+                @Override
+                @SneakyThrows
+                int getInt(int slot) {
+                    return (int) layout.primitiveGetters[slot].invokeExact(GeneratedSpec.this);
+                }
+
+                @Override
+                @SneakyThrows
+                void setInt(int slot, int value) {
+                    layout.primitiveSetters[slot].invokeExact(GeneratedSpec.this, value);
+                }
+
+                @Override
+                @SneakyThrows
+                long getLong(int slot) {
+                    return (long) layout.primitiveGetters[slot].invokeExact(GeneratedSpec.this);
+                }
+
+                @Override
+                @SneakyThrows
+                void setLong(int slot, long value) {
+                    layout.primitiveSetters[slot].invokeExact(GeneratedSpec.this, value);
+                }
+
+                @Override
+                @SneakyThrows
+                double getDouble(int slot) {
+                    return (double) layout.primitiveGetters[slot].invokeExact(GeneratedSpec.this);
+                }
+
+                @Override
+                @SneakyThrows
+                void setDouble(int slot, double value) {
+                    layout.primitiveSetters[slot].invokeExact(GeneratedSpec.this, value);
+                }
+
+                @Override
+                @SneakyThrows
+                boolean getBoolean(int slot) {
+                    return (boolean) layout.primitiveGetters[slot].invokeExact(GeneratedSpec.this);
+                }
+
+                @Override
+                @SneakyThrows
+                void setBoolean(int slot, boolean value) {
+                    layout.primitiveSetters[slot].invokeExact(GeneratedSpec.this, value);
+                }
+            };
+        }
+        return map;
+    }
+
+    /**
+     * Returns the memoized results of this spec
+     *
+     * @param create Whether to create them if they do not exist
+     * @return The memoized results. Null if they do not exist and create is false
+     */
+    final Memoized memoized(boolean create) {
+        Memoized memoized = this.memoized;
+        if (memoized == null && create) {
+            synchronized (this) {
+                if ((memoized = this.memoized) == null)
+                    this.memoized = memoized = new Memoized(layout.specClass);
+            }
+        }
+        return memoized;
+    }
+
+    /**
+     * Invoked by generated getters before a property is read
+     *
+     * @param slot The property slot
+     */
+    protected final void onRead(int slot) {
+        if (layout.specClass.tracksReads() && Memoized.isComputing()) memoized(true).read(slot);
+    }
+
+    /**
+     * Invoked by generated setters after a property has been written
+     *
+     * @param slot The property slot
+     */
+    protected final void onWrite(int slot) {
+        if (memoized != null) memoized.invalidate(slot);
+    }
+
+    /**
+     * Invoked by generated methods that are handled by the proxy, such as
+     * {@link Memoize @Memoize} and {@link AsMap @AsMap}.
+     *
+     * @param index The method index
+     * @param args  The method arguments. Could be null
+     * @return The method result
+     */
+    protected final Object handle(int index, Object[] args) {
+        MethodDispatch dispatch = layout.handled[index];
+        switch (dispatch.kind()) {
+            case GETTER:
+                // Properties without a slot are kept in the extras of the map
+                return map().get(dispatch.key());
+            case SETTER:
+                map().put(dispatch.key(), args[0]);
+                return null;
+            case MEMOIZE: {
+                if (!dispatch.method().isDefault())
+                    throw new IllegalArgumentException("@Memoize methods must be default!");
+                return memoized(true).get(dispatch, this, args);
+            }
+            case AS_MAP:
+                if (layout.specClass.tracksReads() && Memoized.isComputing()) memoized(true).readAll();
+                switch (Objects.requireNonNull(dispatch.asMap())) {
+                    case CLONE:
+                        return new LinkedHashMap<>(map());
+                    case IMMUTABLE_VIEW:
+                        return Collections.unmodifiableMap(map());
+                    case UNDERLYING_MAP:
+                        return map();
+                }
+                break;
+            case RELOAD:
+                throw new IllegalStateException("You cannot reload this! Try to reload the top entity.");
+            case SAVE:
+                throw new IllegalStateException("You cannot save this! Try to save the top entity.");
+            case RESET:
+                //noinspection unchecked
+                createDefaultMap((Class<Object>) layout.type, this, map());
+                if (memoized != null) memoized.clear();
+                return null;
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(layout.type.getSimpleName() + "(");
+        for (int slot = 0; slot < layout.keys.length; slot++) {
+            if (slot > 0)
+                sb.append(", ");
+            sb.append(layout.keys[slot]).append("=").append(layout.get(this, slot));
+        }
+        sb.append(")");
+        return sb.toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || o.getClass() != getClass()) return false;
+        return map().equals(((GeneratedSpec) o).map());
+    }
+
+    @Override
+    public int hashCode() {
+        return map().hashCode();
+    }
+
+    /**
+     * Contains the information shared by all instances of a generated class.
+     * <p>
+     * Internal use only.
+     */
+    @ApiStatus.Internal
+    public static final class Layout {
+
+        final Class<?> type;
+        final SpecClass specClass;
+        final String[] keys;
+        final Map<String, Integer> slots;
+        final Class<?>[] types;
+        final MethodHandle[] getters;
+        final MethodHandle[] setters;
+
+        /**
+         * Unboxed accessors of primitive slots, typed {@code (GeneratedSpec)P} and
+         * {@code (GeneratedSpec, P)void}. Null for other slots
+         */
+        final MethodHandle[] primitiveGetters;
+        final MethodHandle[] primitiveSetters;
+        final MethodDispatch[] handled;
+        MethodHandle constructor;
+
+        Layout(
+                @NotNull Class<?> type,
+                @NotNull SpecClass specClass,
+                @NotNull Class<?>[] types,
+                @NotNull MethodDispatch[] handled
+        ) {
+            this.type = type;
+            this.specClass = specClass;
+            this.keys = specClass.keys();
+            this.slots = specClass.slots();
+            this.types = types;
+            this.handled = handled;
+            this.getters = new MethodHandle[keys.length];
+            this.setters = new MethodHandle[keys.length];
+            this.primitiveGetters = new MethodHandle[keys.length];
+            this.primitiveSetters = new MethodHandle[keys.length];
+        }
+
+        @SneakyThrows
+        @NotNull GeneratedSpec newInstance() {
+            return (GeneratedSpec) constructor.invokeExact(this);
+        }
+
+        @SneakyThrows
+        Object get(@NotNull GeneratedSpec instance, int slot) {
+            return (Object) getters[slot].invokeExact(instance);
+        }
+
+        @SneakyThrows
+        void set(@NotNull GeneratedSpec instance, int slot, Object value) {
+            setters[slot].invokeExact(instance, coerce(types[slot], value));
+        }
+
+        /**
+         * Converts numbers to the primitive type of the property, as values
+         * that come from Gson or YAML may be represented by any {@link Number}.
+         */
+        private static Object coerce(Class<?> type, Object value) {
+            if (!type.isPrimitive() || !(value instanceof Number))
+                return value;
+            Number n = (Number) value;
+            if (type == int.class) return n.intValue();
+            if (type == long.class) return n.longValue();
+            if (type == double.class) return n.doubleValue();
+            if (type == float.class) return n.floatValue();
+            if (type == short.class) return n.shortValue();
+            if (type == byte.class) return n.byteValue();
+            return value;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * This file is part of Cream, licensed under the MIT License.
+ *
+ *  Copyright (c) Revxrsal <reflxction.github@gmail.com>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+package revxrsal.spec;
+
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.google.gson.stream.MalformedJsonException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.lang.reflect.Type;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@link ConfigFormat#JSON JSON} format, which uses Gson's
+ * {@link JsonReader} and {@link JsonWriter} directly.
+ * <p>
+ * Comments and headers are not written.
+ */
+final class JsonFormat implements ConfigFormat {
+
+    static final JsonFormat INSTANCE = new JsonFormat();
+
+    private JsonFormat() {
+    }
+
+    @Override
+    public @NotNull Map<String, Object> read(@NotNull CommentedConfiguration config, @NotNull Reader reader) throws IOException {
+        try (JsonReader json = config.gson.newJsonReader(new BufferedReader(reader))) {
+            if (isEmpty(json))
+                return new LinkedHashMap<>();
+            Object data = readTree(json);
+            checkConsumed(json);
+            if (!(data instanceof Map))
+                throw new JsonSyntaxException("Expected an object but was " + data);
+            //noinspection unchecked
+            return (Map<String, Object>) data;
+        }
+    }
+
+    @Override
+    public <T> T readAs(@NotNull CommentedConfiguration config, @NotNull Reader reader, @NotNull Type type) throws IOException {
+        try (JsonReader json = config.gson.newJsonReader(new BufferedReader(reader))) {
+            if (isEmpty(json))
+                return config.getAs(new LinkedHashMap<>(), type);
+            // Gson#fromJson(JsonReader, Type) would make the reader lenient,
+            // so the adapter is used directly to parse as strictly as read()
+            //noinspection unchecked
+            TypeAdapter<T> adapter = (TypeAdapter<T>) config.gson.getAdapter(TypeToken.get(type));
+            T value;
+            try {
+                value = adapter.read(json);
+            } catch (IllegalStateException | IOException e) {
+                throw new JsonSyntaxException(e);
+            }
+            checkConsumed(json);
+            return value;
+        }
+    }
+
+    @Override
+    public void write(@NotNull CommentedConfiguration config, @NotNull Writer writer) throws IOException {
+        try (JsonWriter json = config.gson.newJsonWriter(new BufferedWriter(writer))) {
+            write(config, json, config.data, Map.class);
+        }
+    }
+
+    @Override
+    public void write(@NotNull CommentedConfiguration config, @NotNull Writer writer, @NotNull Object value, @NotNull Type type) throws IOException {
+        try (JsonWriter json = config.gson.newJsonWriter(new BufferedWriter(writer))) {
+            write(config, json, value, type);
+        }
+    }
+
+    /**
+     * Writes the value with its adapter. Gson#toJson(Object, Type, JsonWriter)
+     * would make the writer lenient, and write values like NaN that cannot
+     * be read back.
+     */
+    private static void write(@NotNull CommentedConfiguration config, @NotNull JsonWriter json, @Nullable Object value, @NotNull Type type) {
+        //noinspection unchecked
+        TypeAdapter<Object> adapter = (TypeAdapter<Object>) config.gson.getAdapter(TypeToken.get(type));
+        try {
+            adapter.write(json, value);
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        }
+    }
+
+    @Override
+    public boolean isStreamingByDefault() {
+        return true;
+    }
+
+    /**
+     * Tests whether the content is empty, or only contains null
+     */
+    private static boolean isEmpty(@NotNull JsonReader json) throws IOException {
+        try {
+            return json.peek() == JsonToken.NULL;
+        } catch (EOFException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Checks that there is nothing after the value that was read, like
+     * {@link com.google.gson.Gson#fromJson(Reader, Type)} does
+     */
+    private static void checkConsumed(@NotNull JsonReader json) throws IOException {
+        try {
+            if (json.peek() != JsonToken.END_DOCUMENT)
+                throw new JsonSyntaxException("JSON document was not fully consumed.");
+        } catch (MalformedJsonException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    /**
+     * Reads the next value as maps, lists and scalars. Numbers are
+     * read as the smallest of int, long and {@link BigInteger} they fit in,
+     * or as doubles, like SnakeYAML does.
+     */
+    private static @Nullable Object readTree(@NotNull JsonReader json) throws IOException {
+        switch (json.peek()) {
+            case BEGIN_OBJECT:
+                Map<String, Object> object = new LinkedHashMap<>();
+                json.beginObject();
+                while (json.hasNext())
+                    object.put(json.nextName(), readTree(json));
+                json.endObject();
+                return object;
+            case BEGIN_ARRAY:
+                List<Object> array = new ArrayList<>();
+                json.beginArray();
+                while (json.hasNext())
+                    array.add(readTree(json));
+                json.endArray();
+                return array;
+            case STRING:
+                return json.nextString();
+            case NUMBER:
+                return number(json.nextString());
+            case BOOLEAN:
+                return json.nextBoolean();
+            case NULL:
+                json.nextNull();
+                return null;
+            default:
+                throw new JsonSyntaxException("Unexpected " + json.peek() + " at " + json.getPath());
+        }
+    }
+
+    private static @NotNull Object number(@NotNull String text) {
+        if (text.indexOf('.') < 0 && text.indexOf('e') < 0 && text.indexOf('E') < 0) {
+            BigInteger value = new BigInteger(text);
+            if (value.bitLength() < Integer.SIZE)
+                return value.intValue();
+            if (value.bitLength() < Long.SIZE)
+                return value.longValue();
+            return value;
+        }
+        return Double.parseDouble(text);
+    }
+}
@@ -23,39 +23,18 @@
  */
 package revxrsal.spec;
 
-import lombok.SneakyThrows;
 import org.jetbrains.annotations.NotNull;
-import org.jetbrains.annotations.Nullable;
 
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodHandles.Lookup;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Method;
 
 import static java.lang.invoke.MethodHandles.lookup;
 
 /**
- * A utility for generating private {@link Lookup}s. These are not supported
- * natively in Java 8, so we have to use reflection hacks to simulate them.
+ * A utility for generating private {@link Lookup}s.
  */
 final class MHLookup {
 
-    private static @Nullable Constructor<Lookup> constructor;
-    private static @Nullable Method privateLookupIn;
-
-    static {
-        try {
-            privateLookupIn = MethodHandles.class.getDeclaredMethod("privateLookupIn", Class.class, MethodHandles.Lookup.class);
-        } catch (NoSuchMethodException e) {
-            try {
-                constructor = Lookup.class.getDeclaredConstructor(Class.class);
-                constructor.setAccessible(true);
-            } catch (NoSuchMethodException ex) {
-                throw new RuntimeException(ex);
-            }
-        }
-    }
-
     private MHLookup() {
     }
 
@@ -66,14 +45,11 @@ final class MHLookup {
      * @param cl The class to access
      * @return The created {@link Lookup}
      */
-    @SneakyThrows
     public static @NotNull Lookup privateLookupIn(Class<?> cl) {
-        if (privateLookupIn != null) {
-            return (Lookup) privateLookupIn.invoke(null, cl, lookup());
-        }
-        if (constructor != null) {
-            return constructor.newInstance(cl);
+        try {
+            return MethodHandles.privateLookupIn(cl, lookup());
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Failed to create a private lookup in " + cl.getName(), e);
         }
-        throw new IllegalArgumentException("Failed to create a private lookup!");
     }
 }
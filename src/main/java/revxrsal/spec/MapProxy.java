@@ -23,37 +23,152 @@
  */
 package revxrsal.spec;
 
-import lombok.SneakyThrows;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
-import revxrsal.spec.annotation.*;
 
-import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
-import static revxrsal.spec.SpecProperty.impliesSetter;
-import static revxrsal.spec.SpecProperty.keyOf;
 import static revxrsal.spec.Specs.createDefaultMap;
 import static revxrsal.spec.Specs.isConfigSpec;
 
 /**
- * Generates proxies that are backed by {@link Map maps}.
+ * Generates proxies that store their properties in an array, indexed by
+ * the {@link SpecProperty#ordinal() ordinals} of the properties.
+ * <p>
+ * With the {@link SpecBackend#PERSISTENT persistent backend}, the properties are
+ * stored in an immutable {@link PersistentSlots} instead, which is replaced
+ * on every write. Copies of the proxy share it until either of them changes.
+ * <p>
+ * Proxies created with {@link #backedBy(Class, Map)} read and write their
+ * properties in a map that is given to them instead.
+ * <p>
+ * A live {@link Map} view over the properties is available through {@link #getInternalMap(Object)}.
+ * <p>
+ * Values are written with release semantics and read with acquire semantics,
+ * so a value set by one thread is fully visible to other threads that read it,
+ * without any locking.
  */
 final class MapProxy<T> implements InvocationHandler {
 
+    private static final VarHandle VALUES = MethodHandles.arrayElementVarHandle(Object[].class);
+    private static final VarHandle STATE;
+
+    static {
+        try {
+            STATE = MethodHandles.lookup().findVarHandle(MapProxy.class, "state", PersistentSlots.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    public static @NotNull <T> T generate(@NotNull Class<T> type) {
+        return generate(type, Specs.backend() == SpecBackend.PERSISTENT);
+    }
+
+    @SuppressWarnings("unchecked")
+    static @NotNull <T> T generate(@NotNull Class<T> type, boolean persistent) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class[]{type}, new MapProxy<>(type, persistent));
+    }
+
+    /**
+     * Creates a proxy that reads and writes its properties in the given map,
+     * by their keys. Changes to the map are visible in the proxy, and
+     * the other way around.
+     *
+     * @param type       The spec type
+     * @param properties The properties
+     * @return The proxy
+     */
     @SuppressWarnings("unchecked")
-    public static @NotNull <T> T generate(@NotNull Class<T> type, @NotNull Map<String, Object> map) {
-        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class[]{type}, new MapProxy<>(type, map));
+    static @NotNull <T> T backedBy(@NotNull Class<T> type, @NotNull Map<String, Object> properties) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class[]{type}, new MapProxy<>(type, properties));
+    }
+
+    /**
+     * Returns the map that the properties of the given spec are stored in. This
+     * is the map given to {@link #backedBy(Class, Map)} if the spec was created
+     * with it, and a live view of its properties otherwise.
+     *
+     * @param value The spec
+     * @return The properties map
+     */
+    static @NotNull Map<String, Object> getUnderlyingMap(@NotNull Object value) {
+        if (isMapProxy(value)) {
+            Map<String, Object> backing = handler(value).backing;
+            if (backing != null)
+                return backing;
+        }
+        return getInternalMap(value);
+    }
+
+    /**
+     * Tests whether the given spec stores its properties in a {@link PersistentSlots}
+     *
+     * @param value The spec
+     * @return if the spec is persistent
+     */
+    static boolean isPersistent(@NotNull Object value) {
+        return isMapProxy(value) && handler(value).state != null;
+    }
+
+    /**
+     * Creates a copy of the given {@link #isPersistent(Object) persistent} spec.
+     * The copy shares its properties with the spec, including nested specs,
+     * until either of them changes.
+     *
+     * @param value The spec
+     * @return The copy
+     */
+    static @NotNull Object copy(@NotNull Object value) {
+        MapProxy<?> handler = handler(value);
+        Object copy = generate(handler.type, true);
+        handler(copy).state = (PersistentSlots) STATE.getAcquire(handler);
+        return copy;
+    }
+
+    /**
+     * Creates a copy of the given {@link #isPersistent(Object) persistent} spec
+     * that is not affected by later changes to it, or to its nested specs
+     *
+     * @param value The spec
+     * @return The copy
+     */
+    static @NotNull Object freeze(@NotNull Object value) {
+        Object copy = copy(value);
+        MapProxy<?> handler = handler(copy);
+        PersistentSlots state = handler.state;
+        for (int slot : handler.specClass.nestedSlots()) {
+            Object nested = state.get(slot);
+            if (nested != null && isPersistent(nested))
+                state = state.with(slot, freeze(nested));
+        }
+        handler.state = state;
+        return copy;
+    }
+
+    /**
+     * Replaces all the properties of the given {@link #isPersistent(Object) persistent}
+     * spec at once
+     *
+     * @param value The spec
+     * @param state The new properties
+     */
+    static void setState(@NotNull Object value, @NotNull PersistentSlots state) {
+        STATE.setRelease(handler(value), state);
     }
 
     @SuppressWarnings({"unchecked"})
     @Contract("null -> fail")
-    static @NotNull <T> Map<String, Object> getInternalMap(T value) {
+    static @NotNull <T> PropertyMap getInternalMap(T value) {
         Objects.requireNonNull(value, "value is null!");
+        if (value instanceof GeneratedSpec) {
+            return ((GeneratedSpec) value).map();
+        }
         if (!Proxy.isProxyClass(value.getClass())) {
             for (Class<?> cInterface : value.getClass().getInterfaces()) {
                 if (isConfigSpec(cInterface))
@@ -65,137 +180,231 @@ final class MapProxy<T> implements InvocationHandler {
         if (!(handler instanceof MapProxy)) {
             throw new IllegalArgumentException("Not a config spec: " + value + " (proxy is handled by " + handler + ")");
         }
-        return ((MapProxy<T>) handler).map;
+        return ((MapProxy<T>) handler).map();
+    }
+
+    /**
+     * Tests whether the given value is a proxy that is handled by a {@link MapProxy}
+     *
+     * @param value The value to check for
+     * @return if the value is a map proxy
+     */
+    static boolean isMapProxy(@NotNull Object value) {
+        return Proxy.isProxyClass(value.getClass()) && Proxy.getInvocationHandler(value) instanceof MapProxy;
     }
 
-    private static final Method TO_STRING;
-    private static final Method EQUALS;
-    private static final Method HASH_CODE;
+    /**
+     * Returns the spec interface implemented by the given spec
+     *
+     * @param value The spec
+     * @return The spec interface
+     */
+    static @NotNull Class<?> specType(@NotNull Object value) {
+        if (value instanceof GeneratedSpec)
+            return ((GeneratedSpec) value).layout().type;
+        return handler(value).type;
+    }
+
+    /**
+     * Returns the handler of the given proxy
+     *
+     * @param value The proxy
+     * @return The proxy handler
+     */
+    static @NotNull MapProxy<?> handler(@NotNull Object value) {
+        getInternalMap(value);
+        return (MapProxy<?>) Proxy.getInvocationHandler(value);
+    }
 
     private final Class<T> type;
-    private final Map<String, Object> map;
+    private final SpecClass specClass;
+    private final Object[] values;
+
+    /**
+     * The properties, if this proxy is persistent. Null otherwise
+     */
+    private volatile PersistentSlots state;
 
-    private Map<Method, MethodHandle> defaultMethodHandles;
-    private Map<Method, Object> memoized;
+    /**
+     * The map the properties are stored in, if this proxy is backed by
+     * one. Null otherwise
+     */
+    private final Map<String, Object> backing;
 
-    public MapProxy(Class<T> type, Map<String, Object> map) {
+    private PropertyMap map;
+    volatile Memoized memoized;
+
+    public MapProxy(Class<T> type) {
+        this(type, false);
+    }
+
+    private MapProxy(Class<T> type, Map<String, Object> backing) {
         this.type = type;
-        this.map = map;
+        this.specClass = Specs.from(type);
+        this.values = null;
+        this.backing = backing;
     }
 
-    @Override
-    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-        if (method.equals(TO_STRING)) {
-            return generateToString();
-        }
-        if (method.equals(EQUALS)) {
-            Object other = args[0];
-            if (!Proxy.isProxyClass(other.getClass())) {
-                return false;
-            }
-            if (isConfigSpec(other.getClass())) {
-                MapProxy<?> otherHandler = (MapProxy<?>) Proxy.getInvocationHandler(args);
-                return map.equals(otherHandler.map);
-            }
+    private MapProxy(Class<T> type, boolean persistent) {
+        this.type = type;
+        this.specClass = Specs.from(type);
+        this.backing = null;
+        if (persistent) {
+            this.values = null;
+            this.state = PersistentSlots.EMPTY;
+        } else {
+            this.values = new Object[specClass.keys().length];
         }
-        if (method.equals(HASH_CODE)) {
-            return map.hashCode();
+    }
+
+    private Object getValue(int slot) {
+        Object[] values = this.values;
+        if (values != null)
+            return VALUES.getAcquire(values, slot);
+        if (backing != null)
+            return backing.get(specClass.keys()[slot]);
+        return ((PersistentSlots) STATE.getAcquire(this)).get(slot);
+    }
+
+    private void setValue(int slot, Object value) {
+        Object[] values = this.values;
+        if (values != null) {
+            VALUES.setRelease(values, slot, value);
+            return;
         }
-        if (method.isAnnotationPresent(IgnoreMethod.class)) {
-            return asMethodHandle(method).bindTo(proxy).invokeWithArguments(args);
+        if (backing != null) {
+            backing.put(specClass.keys()[slot], value);
+            return;
         }
-        if (method.isAnnotationPresent(Memoize.class)) {
-            if (!method.isDefault())
-                throw new IllegalArgumentException("@Memoize methods must be default!");
-            if (memoized == null) memoized = new ConcurrentHashMap<>();
-            return memoized.computeIfAbsent(method, m -> {
-                try {
-                    return asMethodHandle(m).bindTo(proxy).invokeWithArguments(args);
-                } catch (Throwable e) {
-                    sneakyThrow(e);
-                    return null;
+        PersistentSlots state;
+        do {
+            state = (PersistentSlots) STATE.getAcquire(this);
+        } while (!STATE.compareAndSet(this, state, state.with(slot, value)));
+    }
+
+    /**
+     * Returns the map that properties without a slot, such as the ones
+     * {@link SpecProperty#isHandledByProxy() handled by the proxy}, are
+     * kept in
+     *
+     * @return The map
+     */
+    private @NotNull Map<String, Object> unslotted() {
+        return backing != null ? backing : map();
+    }
+
+    /**
+     * Returns a live view of the properties of this proxy
+     *
+     * @return The properties map
+     */
+    private @NotNull PropertyMap map() {
+        if (map == null) {
+            map = new PropertyMap(specClass.keys(), specClass.slots()) {
+                @Override
+                protected Object getSlot(int slot) {
+                    return getValue(slot);
+                }
+
+                @Override
+                protected void setSlot(int slot, Object value) {
+                    setValue(slot, value);
                 }
-            });
+            };
         }
-        if (method.isAnnotationPresent(AsMap.class)) {
-            AsMap asMap = method.getAnnotation(AsMap.class);
-            switch (Objects.requireNonNull(asMap).value()) {
-                case CLONE:
-                    return new LinkedHashMap<>(map);
-                case IMMUTABLE_VIEW:
-                    return Collections.unmodifiableMap(map);
-                case UNDERLYING_MAP:
-                    return map;
+        return map;
+    }
+
+    /**
+     * Returns the memoized results of this proxy
+     *
+     * @param create Whether to create them if they do not exist
+     * @return The memoized results. Null if they do not exist and create is false
+     */
+    Memoized memoized(boolean create) {
+        Memoized memoized = this.memoized;
+        if (memoized == null && create) {
+            synchronized (this) {
+                if ((memoized = this.memoized) == null)
+                    this.memoized = memoized = new Memoized(specClass);
             }
         }
-        if (method.isAnnotationPresent(Reload.class)) {
-            throw new IllegalStateException("You cannot reload this! Try to reload the top entity.");
-        }
-        if (method.isAnnotationPresent(Save.class)) {
-            throw new IllegalStateException("You cannot save this! Try to save the top entity.");
-        }
-        if (method.isAnnotationPresent(Reset.class)) {
-            this.map.clear();
-            if (memoized != null) memoized.clear();
-            //noinspection unchecked
-            createDefaultMap(type, (T) proxy, this.map);
-            return null;
-        }
-        String key = keyOf(method);
-        if (method.getReturnType() == Void.TYPE || impliesSetter(method)) {
-            map.put(key, args[0]);
-            if (memoized != null) memoized.clear();
-            return null;
-        } else {
-            return map.get(key);
-        }
+        return memoized;
     }
 
-    @SneakyThrows
-    private MethodHandle asMethodHandle(Method m) {
-        if (defaultMethodHandles == null) defaultMethodHandles = new HashMap<>();
-        MethodHandle mh = defaultMethodHandles.get(m);
-        if (mh == null) {
-            mh = MHLookup.privateLookupIn(type).in(type).unreflectSpecial(m, type);
-            defaultMethodHandles.put(m, mh);
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        MethodDispatch dispatch = specClass.dispatch(method);
+        switch (dispatch.kind()) {
+            case GETTER: {
+                int slot = dispatch.slot();
+                if (slot < 0)
+                    return unslotted().get(dispatch.key());
+                if (specClass.tracksReads() && Memoized.isComputing()) memoized(true).read(slot);
+                return getValue(slot);
+            }
+            case SETTER: {
+                int slot = dispatch.slot();
+                if (slot < 0) {
+                    unslotted().put(dispatch.key(), args[0]);
+                    return null;
+                }
+                setValue(slot, args[0]);
+                if (memoized != null) memoized.invalidate(slot);
+                return null;
+            }
+            case IGNORED:
+                return dispatch.invokeDefault(proxy, args);
+            case MEMOIZE: {
+                if (!method.isDefault())
+                    throw new IllegalArgumentException("@Memoize methods must be default!");
+                return memoized(true).get(dispatch, proxy, args);
+            }
+            case AS_MAP:
+                if (specClass.tracksReads() && Memoized.isComputing()) memoized(true).readAll();
+                switch (Objects.requireNonNull(dispatch.asMap())) {
+                    case CLONE:
+                        return new LinkedHashMap<>(map());
+                    case IMMUTABLE_VIEW:
+                        return Collections.unmodifiableMap(map());
+                    case UNDERLYING_MAP:
+                        return backing != null ? backing : map();
+                }
+                break;
+            case RELOAD:
+                throw new IllegalStateException("You cannot reload this! Try to reload the top entity.");
+            case SAVE:
+                throw new IllegalStateException("You cannot save this! Try to save the top entity.");
+            case RESET:
+                //noinspection unchecked
+                createDefaultMap(type, (T) proxy, map());
+                if (memoized != null) memoized.clear();
+                return null;
+            case TO_STRING:
+                return generateToString();
+            case EQUALS: {
+                Object other = args[0];
+                if (other == null || !Proxy.isProxyClass(other.getClass()))
+                    return false;
+                InvocationHandler otherHandler = Proxy.getInvocationHandler(other);
+                return otherHandler instanceof MapProxy && map().equals(((MapProxy<?>) otherHandler).map());
+            }
+            case HASH_CODE:
+                return map().hashCode();
         }
-        return mh;
+        throw new IllegalArgumentException("Don't know how to handle " + method);
     }
 
     private String generateToString() {
         StringBuilder sb = new StringBuilder(type.getSimpleName() + "(");
-        Iterator<Map.Entry<String, Object>> it = map.entrySet().iterator();
-
-        while (it.hasNext()) {
-            Map.Entry<String, Object> entry = it.next();
-            sb.append(entry.getKey()).append("=").append(entry.getValue());
-            if (it.hasNext()) {
+        String[] keys = specClass.keys();
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (slot > 0)
                 sb.append(", ");
-            }
+            sb.append(keys[slot]).append("=").append(getValue(slot));
         }
 
         sb.append(")");
         return sb.toString();
     }
-
-    static {
-        try {
-            TO_STRING = Object.class.getDeclaredMethod("toString");
-            EQUALS = Object.class.getDeclaredMethod("equals", Object.class);
-            HASH_CODE = Object.class.getDeclaredMethod("hashCode");
-        } catch (NoSuchMethodException e) {
-            throw new RuntimeException(e);
-        }
-    }
-
-    private static RuntimeException sneakyThrow(Throwable t) {
-        if (t == null) throw new NullPointerException("t");
-        return sneakyThrow0(t);
-    }
-
-    @SuppressWarnings("unchecked")
-    @SneakyThrows
-    private static <T extends Throwable> T sneakyThrow0(Throwable t) throws T {
-        throw (T) t;
-    }
 }
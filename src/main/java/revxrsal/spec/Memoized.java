@@ -0,0 +1,1124 @@
+/*
+ * This file is part of Cream, licensed under the MIT License.
+ *
+ *  Copyright (c) Revxrsal <reflxction.github@gmail.com>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+package revxrsal.spec;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import revxrsal.spec.annotation.Memoize;
+
+import java.lang.ref.SoftReference;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * The {@link Memoize @Memoize} results of a single spec instance.
+ * <p>
+ * Every memoized method has its own cache. Methods without parameters cache
+ * a single result. Methods with parameters cache a result for each distinct
+ * argument tuple, bounded by {@link Memoize#maximumSize()}. Single arguments
+ * are used as keys directly. Only methods with several parameters, or with
+ * array parameters, wrap their arguments in a key.
+ * <p>
+ * While a result is computed, every property it reads (on this spec or on
+ * any other spec, such as nested ones) and every memoized result it uses is
+ * recorded. Changing a property only invalidates the results that read it,
+ * and the results that used those, and so on. When a spec is reloaded,
+ * {@link #copy(Object, Object)} keeps the results whose properties did
+ * not change, and {@link #warm(Object, Executor)} computes
+ * {@link Memoize#eager() eager} results before the reloaded spec is published.
+ * <p>
+ * Results are computed outside the cache locks, so memoized methods
+ * can call each other freely.
+ * <p>
+ * A result is registered as a reader of everything it reads, and removed
+ * from those readers once it is evicted, invalidated or replaced, so that
+ * recording reads never has to scan for results that are gone.
+ */
+final class Memoized {
+
+    /**
+     * Stands for null results, as caches use null for missing values
+     */
+    private static final Object NULL = new Object();
+
+    /**
+     * The result being computed by the current thread
+     */
+    private static final ThreadLocal<Dependent> COMPUTING = new ThreadLocal<>();
+
+    private final Map<Method, Cache> caches = new ConcurrentHashMap<>();
+
+    /**
+     * The results that read each property, indexed by slot
+     */
+    private final Set<Dependent>[] readers;
+
+    private final SpecClass specClass;
+
+    @SuppressWarnings("unchecked")
+    Memoized(@NotNull SpecClass specClass) {
+        this.specClass = specClass;
+        this.readers = new Set[specClass.keys().length];
+    }
+
+    /**
+     * Returns the memoized result of the given method, computing it if
+     * it is not cached
+     *
+     * @param dispatch The memoized method
+     * @param instance The spec instance
+     * @param args     The method arguments. Could be null
+     * @return The method result
+     */
+    Object get(@NotNull MethodDispatch dispatch, @NotNull Object instance, Object[] args) {
+        Cache cache = cache(dispatch);
+        Dependent caller = COMPUTING.get();
+        Object key = keyOf(args);
+        Object value = cache.get(key, caller);
+        if (value != null) {
+            if (cache.refreshAfter > 0) {
+                CacheEntry entry = cache.startRefresh(key);
+                if (entry != null)
+                    refresh(cache, entry, ArgumentKey.copyOf(key), dispatch, instance, args);
+            }
+            return value == NULL ? null : value;
+        }
+
+        specClass.trackReads();
+        key = ArgumentKey.copyOf(key);
+        int version = cache.version();
+        Dependent dependent = new Dependent(cache, key);
+        value = compute(dependent, dispatch, instance, args);
+        Object cached = cache.put(key, value, version, caller, dependent);
+        return cached == NULL ? null : cached;
+    }
+
+    private @NotNull Cache cache(@NotNull MethodDispatch dispatch) {
+        Cache cache = caches.get(dispatch.method());
+        if (cache == null)
+            cache = caches.computeIfAbsent(dispatch.method(), m -> Cache.create(m, Objects.requireNonNull(dispatch.memoize())));
+        return cache;
+    }
+
+    /**
+     * Invokes a memoized method, recording everything it reads in the
+     * given result
+     */
+    private static @NotNull Object compute(
+            @NotNull Dependent dependent,
+            @NotNull MethodDispatch dispatch,
+            @NotNull Object instance,
+            Object[] args
+    ) {
+        Dependent caller = COMPUTING.get();
+        COMPUTING.set(dependent);
+        try {
+            Object value = dispatch.invokeDefault(instance, args);
+            return value == null ? NULL : value;
+        } catch (Throwable t) {
+            dependent.discard();
+            throw t;
+        } finally {
+            COMPUTING.set(caller);
+        }
+    }
+
+    /**
+     * Computes a new value for the given entry in the background. Callers
+     * keep getting the old value until the new one is computed.
+     */
+    private static void refresh(
+            @NotNull Cache cache,
+            @NotNull CacheEntry entry,
+            @Nullable Object key,
+            @NotNull MethodDispatch dispatch,
+            @NotNull Object instance,
+            Object[] args
+    ) {
+        try {
+            Specs.memoizeExecutor().execute(() -> {
+                Dependent dependent = new Dependent(cache, key);
+                Object value;
+                try {
+                    value = compute(dependent, dispatch, instance, args);
+                } catch (Throwable t) {
+                    // Keep the old value, and try again later
+                    entry.refreshing = false;
+                    return;
+                }
+                cache.replace(key, entry, value, dependent);
+            });
+        } catch (RuntimeException e) {
+            // The executor rejected the task
+            entry.refreshing = false;
+        }
+    }
+
+    /**
+     * Computes the {@link Memoize#eager() eager} memoized values of the given
+     * spec and its nested specs, in parallel, and waits for them to be computed.
+     * <p>
+     * Values that fail to compute are skipped, so that they fail again when
+     * they are called.
+     *
+     * @param spec     The spec
+     * @param executor The executor to compute values in
+     */
+    static void warm(@NotNull Object spec, @NotNull Executor executor) {
+        List<Runnable> tasks = new ArrayList<>();
+        collectEager(spec, tasks, Collections.newSetFromMap(new IdentityHashMap<>()));
+        if (tasks.isEmpty())
+            return;
+        CompletableFuture<?>[] futures = new CompletableFuture[tasks.size()];
+        for (int i = 0; i < futures.length; i++)
+            futures[i] = CompletableFuture.runAsync(tasks.get(i), executor);
+        CompletableFuture.allOf(futures).handle((result, error) -> null).join();
+    }
+
+    private static void collectEager(@NotNull Object spec, @NotNull List<Runnable> tasks, @NotNull Set<Object> visited) {
+        if (!visited.add(spec))
+            return;
+        MethodDispatch[] eager = Specs.from(MapProxy.specType(spec)).eagerMemoized();
+        if (eager.length > 0) {
+            Memoized memoized = of(spec, true);
+            for (MethodDispatch dispatch : eager) {
+                if (dispatch.method().getParameterCount() == 0) {
+                    tasks.add(() -> memoized.get(dispatch, spec, null));
+                    continue;
+                }
+                for (Object key : memoized.cache(dispatch).drainStale())
+                    tasks.add(() -> memoized.get(dispatch, spec, argsOf(key)));
+            }
+        }
+        PropertyMap properties = MapProxy.getInternalMap(spec);
+        for (int slot = 0; slot < properties.slotCount(); slot++) {
+            Object value = properties.getSlot(slot);
+            if (isSpec(value))
+                collectEager(value, tasks, visited);
+        }
+    }
+
+    /**
+     * Tests whether the current thread is computing a result. Specs should
+     * only call {@link #read(int)} when this is true, so that reading a spec
+     * outside of memoized methods never creates its memoized results. Specs
+     * whose {@link SpecClass#tracksReads() class does not track reads} skip
+     * this lookup altogether.
+     *
+     * @return if reads should be recorded
+     */
+    static boolean isComputing() {
+        return COMPUTING.get() != null;
+    }
+
+    /**
+     * Records that the result being computed by the current thread reads
+     * the given property
+     *
+     * @param slot The property slot
+     */
+    void read(int slot) {
+        Dependent reader = COMPUTING.get();
+        if (reader != null)
+            register(slot, reader);
+    }
+
+    private void register(int slot, @NotNull Dependent reader) {
+        synchronized (readers) {
+            Set<Dependent> set = readers[slot];
+            if (set == null)
+                readers[slot] = set = new HashSet<>();
+            reader.addTo(set, this, slot, null);
+        }
+    }
+
+    /**
+     * Records that the result being computed by the current thread reads
+     * all the properties
+     */
+    void readAll() {
+        for (int slot = 0; slot < readers.length; slot++)
+            read(slot);
+    }
+
+    /**
+     * Invalidates the results that read the given property
+     *
+     * @param slot The property slot
+     */
+    void invalidate(int slot) {
+        Set<Dependent> set;
+        synchronized (readers) {
+            set = readers[slot];
+            readers[slot] = null;
+        }
+        invalidate(set);
+    }
+
+    /**
+     * Removes all the memoized results, and invalidates the results
+     * that read any property
+     */
+    void clear() {
+        for (Cache cache : caches.values())
+            cache.clear();
+        for (int slot = 0; slot < readers.length; slot++)
+            invalidate(slot);
+    }
+
+    /**
+     * Invalidates the given results. The set must not be reachable by
+     * new readers anymore
+     */
+    private static void invalidate(@Nullable Set<Dependent> dependents) {
+        if (dependents == null)
+            return;
+        List<Dependent> copy;
+        synchronized (dependents) {
+            copy = new ArrayList<>(dependents);
+        }
+        for (Dependent dependent : copy)
+            discard(dependent.cache.remove(dependent));
+    }
+
+    /**
+     * Forgets a result that was removed from its cache, and invalidates
+     * the results that used it
+     */
+    private static void discard(@Nullable CacheEntry entry) {
+        if (entry == null)
+            return;
+        entry.owner.discard();
+        invalidate(entry.readers);
+    }
+
+    /**
+     * Copies the memoized results of a spec to a spec that replaces it, such
+     * as a freshly reloaded one. Nested specs are matched by their property,
+     * and results are only copied if every property and every result they
+     * read is unchanged in the new spec.
+     * <p>
+     * The old spec keeps its results, so that code still reading it is not
+     * affected. Once the new spec is published, the old one should be
+     * {@link #retire(Object, Object) retired}.
+     *
+     * @param from The old spec
+     * @param to   The new spec
+     */
+    static void copy(@NotNull Object from, @NotNull Object to) {
+        Map<Object, Object> pairs = new IdentityHashMap<>();
+        match(from, to, pairs);
+        new Copy(pairs).run();
+    }
+
+    /**
+     * Matches the old spec with the new one, recursively. Specs that are
+     * shared by both are skipped, as they keep their results anyway.
+     */
+    private static void match(@NotNull Object from, @NotNull Object to, @NotNull Map<Object, Object> pairs) {
+        if (from == to || pairs.containsKey(from) || MapProxy.specType(from) != MapProxy.specType(to))
+            return;
+        pairs.put(from, to);
+        PropertyMap oldProperties = MapProxy.getInternalMap(from);
+        PropertyMap newProperties = MapProxy.getInternalMap(to);
+        for (int slot = 0; slot < oldProperties.slotCount(); slot++) {
+            Object oldValue = oldProperties.getSlot(slot);
+            Object newValue = newProperties.getSlot(slot);
+            if (isSpec(oldValue) && isSpec(newValue))
+                match(oldValue, newValue, pairs);
+        }
+    }
+
+    /**
+     * Removes the memoized results of a spec that was replaced, and of its
+     * nested specs, and invalidates the results that read them. Nested specs
+     * that are shared with the spec that replaced it are left alone.
+     *
+     * @param from The spec that was replaced
+     * @param to   The spec that replaced it. Could be null
+     */
+    static void retire(@NotNull Object from, @Nullable Object to) {
+        Set<Object> kept = Collections.newSetFromMap(new IdentityHashMap<>());
+        if (to != null)
+            collectSpecs(to, kept);
+        Set<Object> retired = Collections.newSetFromMap(new IdentityHashMap<>());
+        collectSpecs(from, retired);
+        for (Object spec : retired) {
+            Memoized memoized = kept.contains(spec) ? null : of(spec, false);
+            if (memoized != null) {
+                attach(spec, null);
+                memoized.clear();
+            }
+        }
+    }
+
+    private static void collectSpecs(@NotNull Object spec, @NotNull Set<Object> specs) {
+        if (!specs.add(spec))
+            return;
+        PropertyMap properties = MapProxy.getInternalMap(spec);
+        for (int slot = 0; slot < properties.slotCount(); slot++) {
+            Object value = properties.getSlot(slot);
+            if (isSpec(value))
+                collectSpecs(value, specs);
+        }
+    }
+
+    private static boolean isSpec(@Nullable Object value) {
+        return value instanceof GeneratedSpec || (value != null && MapProxy.isMapProxy(value));
+    }
+
+    /**
+     * Returns the memoized results of the given spec
+     *
+     * @param spec   The spec
+     * @param create Whether to create them if they do not exist
+     * @return The memoized results. Null if they do not exist and create is false
+     */
+    static Memoized of(@NotNull Object spec, boolean create) {
+        if (spec instanceof GeneratedSpec)
+            return ((GeneratedSpec) spec).memoized(create);
+        return MapProxy.handler(spec).memoized(create);
+    }
+
+    private static void attach(@NotNull Object spec, @Nullable Memoized memoized) {
+        if (spec instanceof GeneratedSpec)
+            ((GeneratedSpec) spec).memoized = memoized;
+        else
+            MapProxy.handler(spec).memoized = memoized;
+    }
+
+    private static @Nullable Object keyOf(Object[] args) {
+        if (args == null || args.length == 0)
+            return null;
+        if (args.length == 1 && (args[0] == null || !args[0].getClass().isArray()))
+            return args[0];
+        return new ArgumentKey(args);
+    }
+
+    private static Object[] argsOf(@Nullable Object key) {
+        return key instanceof ArgumentKey ? ((ArgumentKey) key).args : new Object[]{key};
+    }
+
+    /**
+     * A single computation of a result, which may read other results and
+     * properties, and which may be read by other results
+     */
+    private static final class Dependent {
+
+        private final Cache cache;
+        private final Object key;
+
+        /**
+         * Everything this read. Guarded by this
+         */
+        private @Nullable List<Source> sources;
+
+        private Dependent(@NotNull Cache cache, @Nullable Object key) {
+            this.cache = cache;
+            this.key = key;
+        }
+
+        /**
+         * Adds this to the given reader set, which is guarded by itself
+         *
+         * @param set      The reader set
+         * @param memoized The spec whose property is read, or null if a result is read
+         * @param slot     The property slot
+         * @param entry    The result that is read, or null if a property is read
+         */
+        void addTo(@NotNull Set<Dependent> set, @Nullable Memoized memoized, int slot, @Nullable CacheEntry entry) {
+            synchronized (set) {
+                if (!set.add(this))
+                    return;
+            }
+            synchronized (this) {
+                if (sources == null)
+                    sources = new ArrayList<>(4);
+                sources.add(new Source(set, memoized, slot, entry));
+            }
+        }
+
+        synchronized @NotNull List<Source> sources() {
+            return sources == null ? Collections.emptyList() : new ArrayList<>(sources);
+        }
+
+        /**
+         * Removes this from all the reader sets it was added to, once its
+         * result is no longer cached
+         */
+        void discard() {
+            List<Source> sources;
+            synchronized (this) {
+                sources = this.sources;
+                this.sources = null;
+            }
+            if (sources == null)
+                return;
+            for (Source source : sources) {
+                synchronized (source.set) {
+                    source.set.remove(this);
+                }
+            }
+        }
+    }
+
+    /**
+     * A property or a result that a result read, along with the reader set
+     * the result was added to
+     */
+    private static final class Source {
+
+        private final Set<Dependent> set;
+        private final @Nullable Memoized memoized;
+        private final int slot;
+        private final @Nullable CacheEntry entry;
+
+        Source(@NotNull Set<Dependent> set, @Nullable Memoized memoized, int slot, @Nullable CacheEntry entry) {
+            this.set = set;
+            this.memoized = memoized;
+            this.slot = slot;
+            this.entry = entry;
+        }
+    }
+
+    /**
+     * Copies the results of matched specs to the specs that replace them.
+     * A result is copied along with the results it used, and is registered
+     * as a reader of the same properties and results in the new specs.
+     */
+    private static final class Copy {
+
+        /**
+         * Marks results that cannot be copied, or are being copied
+         */
+        private static final Object INVALID = new Object();
+
+        private final Map<Object, Object> pairs;
+        private final Map<Memoized, Memoized> memoized = new IdentityHashMap<>();
+        private final Map<Memoized, BitSet> changed = new IdentityHashMap<>();
+        private final Map<Cache, Cache> caches = new IdentityHashMap<>();
+        private final Map<CacheEntry, Object> copied = new IdentityHashMap<>();
+
+        Copy(@NotNull Map<Object, Object> pairs) {
+            this.pairs = pairs;
+        }
+
+        void run() {
+            // Results are listed before properties are compared, so that results
+            // computed after a property of the old spec changed are not copied
+            Map<Cache, List<CacheEntry>> entries = new IdentityHashMap<>();
+            for (Map.Entry<Object, Object> pair : pairs.entrySet()) {
+                Memoized from = of(pair.getKey(), false);
+                if (from == null)
+                    continue;
+                Memoized to = of(pair.getValue(), true);
+                memoized.put(from, to);
+                for (Map.Entry<Method, Cache> cache : from.caches.entrySet()) {
+                    Cache oldCache = cache.getValue();
+                    Cache newCache = to.caches.computeIfAbsent(cache.getKey(), m -> Cache.create(m, oldCache.memoize));
+                    caches.put(oldCache, newCache);
+                    entries.put(oldCache, oldCache.entries(newCache));
+                }
+            }
+            for (Map.Entry<Object, Object> pair : pairs.entrySet()) {
+                Memoized from = of(pair.getKey(), false);
+                if (from != null)
+                    changed.put(from, changedSlots(pair.getKey(), pair.getValue()));
+            }
+            for (List<CacheEntry> list : entries.values()) {
+                for (CacheEntry entry : list) {
+                    if (copy(entry) == null) {
+                        Cache newCache = caches.get(entry.owner.cache);
+                        synchronized (newCache) {
+                            if (newCache.stale != null)
+                                newCache.stale.add(entry.owner.key);
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Returns the slots of properties that changed. Nested specs are
+         * compared by their own properties instead.
+         */
+        private @NotNull BitSet changedSlots(@NotNull Object from, @NotNull Object to) {
+            BitSet changed = new BitSet();
+            PropertyMap oldProperties = MapProxy.getInternalMap(from);
+            PropertyMap newProperties = MapProxy.getInternalMap(to);
+            for (int slot = 0; slot < oldProperties.slotCount(); slot++) {
+                Object oldValue = oldProperties.getSlot(slot);
+                Object newValue = newProperties.getSlot(slot);
+                if (oldValue != null && pairs.get(oldValue) == newValue)
+                    continue;
+                if (!Objects.equals(oldValue, newValue))
+                    changed.set(slot);
+            }
+            return changed;
+        }
+
+        /**
+         * Copies the given result, and returns the copy, or null if it
+         * cannot be copied
+         */
+        private @Nullable CacheEntry copy(@NotNull CacheEntry entry) {
+            Object done = copied.get(entry);
+            if (done != null)
+                return done == INVALID ? null : (CacheEntry) done;
+            copied.put(entry, INVALID);
+            Cache oldCache = entry.owner.cache;
+            Object value = oldCache.valueOf(entry);
+            // A result that returns a nested spec would return the old one
+            if (value == null || pairs.containsKey(value))
+                return null;
+            Cache newCache = caches.get(oldCache);
+            Dependent owner = new Dependent(newCache, entry.owner.key);
+            for (Source source : entry.owner.sources()) {
+                if (!register(source, owner)) {
+                    owner.discard();
+                    return null;
+                }
+            }
+            CacheEntry copy = new CacheEntry(entry.value, owner, entry.created);
+            copy.hits = entry.hits;
+            CacheEntry evicted;
+            synchronized (newCache) {
+                evicted = newCache.add(owner.key, copy);
+            }
+            discard(evicted);
+            copied.put(entry, copy);
+            return copy;
+        }
+
+        /**
+         * Registers the copied result as a reader of what the original
+         * result read, if it is unchanged
+         */
+        private boolean register(@NotNull Source source, @NotNull Dependent owner) {
+            if (source.memoized != null) {
+                Memoized target = memoized.get(source.memoized);
+                if (target == null) {
+                    // A spec that is not replaced
+                    source.memoized.register(source.slot, owner);
+                    return true;
+                }
+                if (changed.get(source.memoized).get(source.slot))
+                    return false;
+                target.register(source.slot, owner);
+                return true;
+            }
+            CacheEntry entry = Objects.requireNonNull(source.entry);
+            Cache cache = entry.owner.cache;
+            if (caches.containsKey(cache)) {
+                entry = copy(entry);
+                if (entry == null)
+                    return false;
+                cache = entry.owner.cache;
+            }
+            synchronized (cache) {
+                // Results of specs that are not replaced must still be cached
+                if (cache.entry(entry.owner.key) != entry || cache.valueOf(entry) == null)
+                    return false;
+                Cache.addReader(entry, owner);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * A cached value, along with the results that used it
+     */
+    private static final class CacheEntry {
+
+        private final Object value;
+        private final Dependent owner;
+        private final long created;
+        private @Nullable Set<Dependent> readers;
+        private int hits;
+        private volatile boolean refreshing;
+
+        CacheEntry(Object value, @NotNull Dependent owner) {
+            this(value, owner, System.nanoTime());
+        }
+
+        CacheEntry(Object value, @NotNull Dependent owner, long created) {
+            this.value = value;
+            this.owner = owner;
+            this.created = created;
+        }
+    }
+
+    /**
+     * Caches the results of a single method
+     */
+    private static abstract class Cache {
+
+        final Memoize memoize;
+        final int maximumSize;
+        final long refreshAfter;
+        private final long expireAfter;
+        private final boolean softValues;
+
+        /**
+         * The keys of invalidated results, which are computed again by
+         * {@link #warm(Object, Executor)}. Null if the method is not eager
+         * or has no parameters.
+         */
+        private final @Nullable Set<Object> stale;
+
+        /**
+         * Incremented whenever a result is removed, so that results which
+         * were being computed at the time are not cached
+         */
+        private int version;
+
+        Cache(@NotNull Method method, @NotNull Memoize memoize) {
+            this.memoize = memoize;
+            this.maximumSize = memoize.maximumSize();
+            this.refreshAfter = memoize.timeUnit().toNanos(memoize.refreshAfter());
+            this.expireAfter = memoize.timeUnit().toNanos(memoize.expireAfter());
+            this.softValues = memoize.softValues();
+            this.stale = memoize.eager() && method.getParameterCount() > 0 ? new LinkedHashSet<>() : null;
+        }
+
+        static @NotNull Cache create(@NotNull Method method, @NotNull Memoize memoize) {
+            if (method.getParameterCount() == 0)
+                return new Single(method, memoize);
+            if (memoize.eviction() == Memoize.Eviction.LFU)
+                return new LeastFrequentlyUsed(method, memoize);
+            return new LeastRecentlyUsed(method, memoize);
+        }
+
+        /**
+         * Returns the entry of the given key, or null
+         */
+        abstract @Nullable CacheEntry entry(@Nullable Object key);
+
+        /**
+         * Adds an entry for the given key, evicting another entry if needed
+         *
+         * @return The evicted entry, or null
+         */
+        abstract @Nullable CacheEntry add(@Nullable Object key, @NotNull CacheEntry entry);
+
+        /**
+         * Removes the entry of the given key
+         */
+        abstract @Nullable CacheEntry removeEntry(@Nullable Object key);
+
+        abstract void clearEntries();
+
+        final synchronized int version() {
+            return version;
+        }
+
+        /**
+         * Returns the cached value of the given key, or null. The reader
+         * is invalidated along with the value.
+         */
+        synchronized @Nullable Object get(@Nullable Object key, @Nullable Dependent reader) {
+            CacheEntry entry = entry(key);
+            Object value = valueOf(entry);
+            if (value != null) {
+                entry.hits++;
+                if (reader != null)
+                    addReader(entry, reader);
+            }
+            return value;
+        }
+
+        /**
+         * Caches the given value if the key has no value and no value was
+         * removed since the given version, and returns the cached value
+         */
+        final @NotNull Object put(
+                @Nullable Object key,
+                @NotNull Object value,
+                int version,
+                @Nullable Dependent reader,
+                @NotNull Dependent owner
+        ) {
+            CacheEntry evicted = null, replaced = null;
+            boolean cached = false;
+            synchronized (this) {
+                CacheEntry entry = entry(key);
+                Object current = valueOf(entry);
+                if (current != null) {
+                    value = current;
+                } else if (version == this.version) {
+                    replaced = entry;
+                    entry = new CacheEntry(wrap(value), owner);
+                    evicted = add(key, entry);
+                    cached = true;
+                } else {
+                    entry = null;
+                }
+                if (entry != null && reader != null)
+                    addReader(entry, reader);
+            }
+            if (!cached)
+                owner.discard();
+            // The results that used the evicted, expired or collected value
+            // would not be invalidated along with it anymore
+            discard(evicted);
+            discard(replaced);
+            return value;
+        }
+
+        /**
+         * Removes the value that was computed by the given result, and returns
+         * its entry. Values of the same key that are being computed are not
+         * cached either.
+         */
+        final synchronized @Nullable CacheEntry remove(@NotNull Dependent owner) {
+            version++;
+            CacheEntry entry = entry(owner.key);
+            if (entry == null || entry.owner != owner)
+                return null;
+            removeEntry(owner.key);
+            if (stale != null && (maximumSize <= 0 || stale.size() < maximumSize))
+                stale.add(owner.key);
+            return entry;
+        }
+
+        /**
+         * Returns and forgets the keys of the results that were invalidated
+         */
+        final synchronized @NotNull List<Object> drainStale() {
+            if (stale == null || stale.isEmpty())
+                return Collections.emptyList();
+            List<Object> keys = new ArrayList<>(stale);
+            stale.clear();
+            return keys;
+        }
+
+        /**
+         * Returns the entry of the given key if it should be refreshed, and
+         * marks it as refreshing. Returns null otherwise.
+         */
+        final synchronized @Nullable CacheEntry startRefresh(@Nullable Object key) {
+            CacheEntry entry = entry(key);
+            if (entry == null || entry.refreshing || System.nanoTime() - entry.created < refreshAfter)
+                return null;
+            entry.refreshing = true;
+            return entry;
+        }
+
+        /**
+         * Replaces the given entry with a refreshed value, if it was not
+         * removed in the meantime. The results that used the old value
+         * are invalidated if the value changed.
+         */
+        final void replace(@Nullable Object key, @NotNull CacheEntry old, @NotNull Object value, @NotNull Dependent owner) {
+            boolean replaced;
+            synchronized (this) {
+                replaced = entry(key) == old;
+                if (replaced) {
+                    CacheEntry entry = new CacheEntry(wrap(value), owner);
+                    entry.hits = old.hits;
+                    add(key, entry);
+                    if (Objects.equals(unwrap(old.value), value)) {
+                        entry.readers = old.readers;
+                        old.readers = null;
+                    }
+                }
+            }
+            if (replaced)
+                discard(old);
+            else
+                owner.discard();
+        }
+
+        final void clear() {
+            List<CacheEntry> removed;
+            synchronized (this) {
+                version++;
+                removed = new ArrayList<>();
+                forEach(removed::add);
+                clearEntries();
+            }
+            for (CacheEntry entry : removed)
+                discard(entry);
+        }
+
+        abstract void forEach(@NotNull Consumer<CacheEntry> action);
+
+        /**
+         * Returns the current entries, and copies the invalidated keys to
+         * the given cache
+         */
+        final synchronized @NotNull List<CacheEntry> entries(@NotNull Cache to) {
+            List<CacheEntry> entries = new ArrayList<>();
+            forEach(entries::add);
+            if (stale != null && to.stale != null) {
+                synchronized (to) {
+                    to.stale.addAll(stale);
+                }
+            }
+            return entries;
+        }
+
+        static void addReader(@NotNull CacheEntry entry, @NotNull Dependent reader) {
+            if (entry.readers == null)
+                entry.readers = new HashSet<>();
+            reader.addTo(entry.readers, null, 0, entry);
+        }
+
+        final Object wrap(@NotNull Object value) {
+            return softValues ? new SoftReference<>(value) : value;
+        }
+
+        final @Nullable Object unwrap(@Nullable Object value) {
+            return softValues && value != null ? ((SoftReference<?>) value).get() : value;
+        }
+
+        /**
+         * Returns the value of the given entry, or null if there is no entry,
+         * the entry expired, or its value was garbage collected
+         */
+        final @Nullable Object valueOf(@Nullable CacheEntry entry) {
+            if (entry == null || (expireAfter > 0 && System.nanoTime() - entry.created >= expireAfter))
+                return null;
+            return unwrap(entry.value);
+        }
+    }
+
+    /**
+     * Caches the result of a method that does not have parameters
+     */
+    private static final class Single extends Cache {
+
+        private volatile CacheEntry entry;
+
+        Single(@NotNull Method method, @NotNull Memoize memoize) {
+            super(method, memoize);
+        }
+
+        @Override
+        @Nullable Object get(@Nullable Object key, @Nullable Dependent reader) {
+            if (reader != null)
+                return super.get(key, reader);
+            return valueOf(entry);
+        }
+
+        @Override
+        @Nullable CacheEntry entry(@Nullable Object key) {
+            return entry;
+        }
+
+        @Override
+        @Nullable CacheEntry add(@Nullable Object key, @NotNull CacheEntry entry) {
+            this.entry = entry;
+            return null;
+        }
+
+        @Override
+        @Nullable CacheEntry removeEntry(@Nullable Object key) {
+            CacheEntry entry = this.entry;
+            this.entry = null;
+            return entry;
+        }
+
+        @Override
+        void clearEntries() {
+            entry = null;
+        }
+
+        @Override
+        void forEach(@NotNull Consumer<CacheEntry> action) {
+            if (entry != null)
+                action.accept(entry);
+        }
+    }
+
+    /**
+     * Caches results by their arguments, and evicts the least recently
+     * used result
+     */
+    private static final class LeastRecentlyUsed extends Cache {
+
+        private final Map<Object, CacheEntry> entries;
+        private @Nullable CacheEntry evicted;
+
+        LeastRecentlyUsed(@NotNull Method method, @NotNull Memoize memoize) {
+            super(method, memoize);
+            this.entries = new LinkedHashMap<Object, CacheEntry>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Object, CacheEntry> eldest) {
+                    if (maximumSize <= 0 || size() <= maximumSize)
+                        return false;
+                    evicted = eldest.getValue();
+                    return true;
+                }
+            };
+        }
+
+        @Override
+        @Nullable CacheEntry entry(@Nullable Object key) {
+            return entries.get(key);
+        }
+
+        @Override
+        @Nullable CacheEntry add(@Nullable Object key, @NotNull CacheEntry entry) {
+            entries.put(key, entry);
+            CacheEntry evicted = this.evicted;
+            this.evicted = null;
+            return evicted;
+        }
+
+        @Override
+        @Nullable CacheEntry removeEntry(@Nullable Object key) {
+            return entries.remove(key);
+        }
+
+        @Override
+        void clearEntries() {
+            entries.clear();
+        }
+
+        @Override
+        void forEach(@NotNull Consumer<CacheEntry> action) {
+            entries.values().forEach(action);
+        }
+    }
+
+    /**
+     * Caches results by their arguments, and evicts the least frequently
+     * used result. Finding the result to evict scans all the results, which
+     * is fine for the bounds that memoized methods usually have.
+     */
+    private static final class LeastFrequentlyUsed extends Cache {
+
+        private final Map<Object, CacheEntry> entries = new LinkedHashMap<>();
+
+        LeastFrequentlyUsed(@NotNull Method method, @NotNull Memoize memoize) {
+            super(method, memoize);
+        }
+
+        @Override
+        @Nullable CacheEntry entry(@Nullable Object key) {
+            return entries.get(key);
+        }
+
+        @Override
+        @Nullable CacheEntry add(@Nullable Object key, @NotNull CacheEntry entry) {
+            CacheEntry evicted = null;
+            if (maximumSize > 0 && entries.size() >= maximumSize && !entries.containsKey(key))
+                evicted = evict();
+            entries.put(key, entry);
+            return evicted;
+        }
+
+        private @Nullable CacheEntry evict() {
+            Object leastUsed = null;
+            int leastHits = Integer.MAX_VALUE;
+            for (Map.Entry<Object, CacheEntry> entry : entries.entrySet()) {
+                if (entry.getValue().hits < leastHits) {
+                    leastUsed = entry.getKey();
+                    leastHits = entry.getValue().hits;
+                }
+            }
+            return entries.remove(leastUsed);
+        }
+
+        @Override
+        @Nullable CacheEntry removeEntry(@Nullable Object key) {
+            return entries.remove(key);
+        }
+
+        @Override
+        void clearEntries() {
+            entries.clear();
+        }
+
+        @Override
+        void forEach(@NotNull Consumer<CacheEntry> action) {
+            entries.values().forEach(action);
+        }
+    }
+
+    /**
+     * A key made of several arguments, or of array arguments.
+     * <p>
+     * Keys that are only used for lookups wrap the arguments of the caller.
+     * Keys that are stored are {@link #copyOf(Object) copied}, so that callers
+     * changing their arrays afterwards do not change the key.
+     */
+    private static final class ArgumentKey {
+
+        private final Object[] args;
+        private final int hashCode;
+
+        ArgumentKey(@NotNull Object[] args) {
+            this(args, Arrays.deepHashCode(args));
+        }
+
+        private ArgumentKey(@NotNull Object[] args, int hashCode) {
+            this.args = args;
+            this.hashCode = hashCode;
+        }
+
+        /**
+         * Returns a copy of the given key that does not share any array
+         * with the caller
+         */
+        static @Nullable Object copyOf(@Nullable Object key) {
+            if (!(key instanceof ArgumentKey))
+                return key;
+            ArgumentKey argumentKey = (ArgumentKey) key;
+            return new ArgumentKey((Object[]) copyArray(argumentKey.args), argumentKey.hashCode);
+        }
+
+        private static @Nullable Object copyArray(@Nullable Object value) {
+            if (value == null || !value.getClass().isArray())
+                return value;
+            if (value instanceof Object[]) {
+                Object[] copy = ((Object[]) value).clone();
+                for (int i = 0; i < copy.length; i++)
+                    copy[i] = copyArray(copy[i]);
+                return copy;
+            }
+            int length = Array.getLength(value);
+            Object copy = Array.newInstance(value.getClass().getComponentType(), length);
+            System.arraycopy(value, 0, copy, 0, length);
+            return copy;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ArgumentKey && hashCode == ((ArgumentKey) o).hashCode
+                    && Arrays.deepEquals(args, ((ArgumentKey) o).args);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * This file is part of Cream, licensed under the MIT License.
+ *
+ *  Copyright (c) Revxrsal <reflxction.github@gmail.com>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+package revxrsal.spec;
+
+import lombok.SneakyThrows;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import revxrsal.spec.annotation.*;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+import static java.lang.invoke.MethodType.methodType;
+import static revxrsal.spec.SpecProperty.impliesSetter;
+import static revxrsal.spec.SpecProperty.keyOf;
+
+/**
+ * Describes how a method of a {@link ConfigSpec} should be handled. Every method
+ * is classified once per {@link SpecClass}, so that proxies do not need to
+ * look up annotations or compute keys on each call.
+ */
+final class MethodDispatch {
+
+    static final Method TO_STRING;
+    static final Method EQUALS;
+    static final Method HASH_CODE;
+
+    /**
+     * The kinds of methods in a spec
+     */
+    enum Kind {
+        GETTER,
+        SETTER,
+        MEMOIZE,
+        AS_MAP,
+        RESET,
+        RELOAD,
+        SAVE,
+        IGNORED,
+        TO_STRING,
+        EQUALS,
+        HASH_CODE
+    }
+
+    private final @NotNull Kind kind;
+    private final @NotNull Method method;
+    private final @Nullable String key;
+    private final int slot;
+    private final @Nullable AsMap.Behavior asMap;
+    private final @Nullable Memoize memoize;
+    private final @Nullable MethodHandle invoker;
+    private volatile @Nullable MethodHandle forwarder;
+
+    private MethodDispatch(
+            @NotNull Kind kind,
+            @NotNull Method method,
+            @Nullable String key,
+            @Nullable AsMap.Behavior asMap,
+            @Nullable MethodHandle invoker
+    ) {
+        this(kind, method, key, -1, asMap, null, invoker);
+    }
+
+    private MethodDispatch(
+            @NotNull Kind kind,
+            @NotNull Method method,
+            @Nullable String key,
+            int slot,
+            @Nullable AsMap.Behavior asMap,
+            @Nullable Memoize memoize,
+            @Nullable MethodHandle invoker
+    ) {
+        this.kind = kind;
+        this.method = method;
+        this.key = key;
+        this.slot = slot;
+        this.asMap = asMap;
+        this.memoize = memoize;
+        this.invoker = invoker;
+    }
+
+    /**
+     * Returns the kind of this method
+     *
+     * @return The method kind
+     */
+    public @NotNull Kind kind() {
+        return kind;
+    }
+
+    /**
+     * Returns the method being dispatched
+     *
+     * @return The method
+     */
+    public @NotNull Method method() {
+        return method;
+    }
+
+    /**
+     * Returns the key of the property accessed by this method, if this is
+     * a getter or a setter.
+     *
+     * @return The property key
+     */
+    public @Nullable String key() {
+        return key;
+    }
+
+    /**
+     * Returns the {@link SpecProperty#ordinal() ordinal} of the property accessed
+     * by this method, if this is a getter or a setter.
+     *
+     * @return The property ordinal, or -1
+     */
+    public int slot() {
+        return slot;
+    }
+
+    /**
+     * Returns the behavior of this method if it is an {@link AsMap @AsMap} method
+     *
+     * @return The {@link AsMap} behavior
+     */
+    public @Nullable AsMap.Behavior asMap() {
+        return asMap;
+    }
+
+    /**
+     * Returns the {@link Memoize @Memoize} annotation of this method if it is
+     * a memoized method
+     *
+     * @return The {@link Memoize} annotation
+     */
+    public @Nullable Memoize memoize() {
+        return memoize;
+    }
+
+    /**
+     * Invokes the default implementation of this method on the given spec
+     *
+     * @param instance The spec instance
+     * @param args     The method arguments. Could be null
+     * @return The method result
+     */
+    @SneakyThrows
+    public Object invokeDefault(@NotNull Object instance, Object[] args) {
+        if (invoker == null)
+            throw new IllegalArgumentException("Method " + method + " does not have a default implementation");
+        return (Object) invoker.invokeExact(instance, args);
+    }
+
+    /**
+     * Invokes this method on the given instance as a regular virtual call.
+     * <p>
+     * This is used for forwarding calls to specs that are not backed
+     * by a {@link MapProxy}, without going through reflection.
+     *
+     * @param instance The spec instance
+     * @param args     The method arguments. Could be null
+     * @return The method result
+     */
+    @SneakyThrows
+    public Object forward(@NotNull Object instance, Object[] args) {
+        MethodHandle forwarder = this.forwarder;
+        if (forwarder == null) {
+            Lookup lookup = MHLookup.privateLookupIn(method.getDeclaringClass());
+            this.forwarder = forwarder = spread(lookup.unreflect(method), method.getParameterCount());
+        }
+        return (Object) forwarder.invokeExact(instance, args);
+    }
+
+    /**
+     * Classifies all the methods of the given spec
+     *
+     * @param type  The spec interface
+     * @param slots The ordinals of the spec properties
+     * @return The methods and how to dispatch them
+     */
+    static @NotNull Map<Method, MethodDispatch> dispatchTable(@NotNull Class<?> type, @NotNull Map<String, Integer> slots) {
+        Map<Method, MethodDispatch> table = new HashMap<>();
+        table.put(TO_STRING, new MethodDispatch(Kind.TO_STRING, TO_STRING, null, null, null));
+        table.put(EQUALS, new MethodDispatch(Kind.EQUALS, EQUALS, null, null, null));
+        table.put(HASH_CODE, new MethodDispatch(Kind.HASH_CODE, HASH_CODE, null, null, null));
+        Lookup lookup = null;
+        for (Method method : type.getMethods()) {
+            if (Modifier.isStatic(method.getModifiers()))
+                continue;
+            MethodHandle invoker = null;
+            if (method.isDefault()) {
+                if (lookup == null)
+                    lookup = MHLookup.privateLookupIn(type).in(type);
+                invoker = invoker(lookup, type, method);
+            }
+            table.put(method, classify(method, invoker, slots));
+        }
+        return Collections.unmodifiableMap(table);
+    }
+
+    private static @NotNull MethodDispatch classify(
+            @NotNull Method method,
+            @Nullable MethodHandle invoker,
+            @NotNull Map<String, Integer> slots
+    ) {
+        if (method.isAnnotationPresent(IgnoreMethod.class))
+            return new MethodDispatch(Kind.IGNORED, method, null, null, invoker);
+        Memoize memoize = method.getAnnotation(Memoize.class);
+        if (memoize != null)
+            return new MethodDispatch(Kind.MEMOIZE, method, null, -1, null, memoize, invoker);
+        AsMap asMap = method.getAnnotation(AsMap.class);
+        if (asMap != null)
+            return new MethodDispatch(Kind.AS_MAP, method, null, asMap.value(), null);
+        if (method.isAnnotationPresent(Reload.class))
+            return new MethodDispatch(Kind.RELOAD, method, null, null, invoker);
+        if (method.isAnnotationPresent(Save.class))
+            return new MethodDispatch(Kind.SAVE, method, null, null, invoker);
+        if (method.isAnnotationPresent(Reset.class))
+            return new MethodDispatch(Kind.RESET, method, null, null, null);
+        String key = keyOf(method);
+        int slot = slots.getOrDefault(key, -1);
+        if (method.getReturnType() == Void.TYPE || impliesSetter(method))
+            return new MethodDispatch(Kind.SETTER, method, key, slot, null, null, null);
+        return new MethodDispatch(Kind.GETTER, method, key, slot, null, null, invoker);
+    }
+
+    /**
+     * Creates a handle that invokes the default implementation of the given
+     * method, with the type {@code (Object, Object[])Object}.
+     */
+    @SneakyThrows
+    private static @NotNull MethodHandle invoker(@NotNull Lookup lookup, @NotNull Class<?> type, @NotNull Method method) {
+        return spread(lookup.unreflectSpecial(method, type), method.getParameterCount());
+    }
+
+    private static @NotNull MethodHandle spread(@NotNull MethodHandle handle, int parameters) {
+        return handle.asSpreader(Object[].class, parameters)
+                .asType(methodType(Object.class, Object.class, Object[].class));
+    }
+
+    @Override
+    public String toString() {
+        return "MethodDispatch(kind=" + kind + ", method=" + method.getName() + ")";
+    }
+
+    static {
+        try {
+            TO_STRING = Object.class.getDeclaredMethod("toString");
+            EQUALS = Object.class.getDeclaredMethod("equals", Object.class);
+            HASH_CODE = Object.class.getDeclaredMethod("hashCode");
+        } catch (NoSuchMethodException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * This file is part of Cream, licensed under the MIT License.
+ *
+ *  Copyright (c) Revxrsal <reflxction.github@gmail.com>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+package revxrsal.spec;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * An immutable array of property values, indexed by slot, used by the
+ * {@link SpecBackend#PERSISTENT persistent backend}.
+ * <p>
+ * Updating a slot copies the array, so a write costs O(n) in the number of
+ * properties. In exchange, reads are a single array access, and copying a
+ * spec only shares the array, which is never modified.
+ */
+final class PersistentSlots {
+
+    /**
+     * The empty array. All slots are null
+     */
+    static final PersistentSlots EMPTY = new PersistentSlots(new Object[0]);
+
+    /**
+     * The values. Slots after the end of the array are null
+     */
+    private final Object[] values;
+
+    private PersistentSlots(@NotNull Object[] values) {
+        this.values = values;
+    }
+
+    /**
+     * Returns the value in the given slot
+     *
+     * @param slot The slot
+     * @return The value, or null if the slot was never set
+     */
+    @Nullable Object get(int slot) {
+        Object[] values = this.values;
+        return slot < values.length ? values[slot] : null;
+    }
+
+    /**
+     * Returns a copy with the given slot set to the given value. This
+     * instance is left unchanged.
+     *
+     * @param slot  The slot
+     * @param value The new value
+     * @return The new instance
+     */
+    @NotNull PersistentSlots with(int slot, @Nullable Object value) {
+        if (get(slot) == value)
+            return this;
+        Object[] values = Arrays.copyOf(this.values, Math.max(this.values.length, slot + 1));
+        values[slot] = value;
+        return new PersistentSlots(values);
+    }
+}
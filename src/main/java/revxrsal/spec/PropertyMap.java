@@ -0,0 +1,269 @@
+/*
+ * This file is part of Cream, licensed under the MIT License.
+ *
+ *  Copyright (c) Revxrsal <reflxction.github@gmail.com>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+package revxrsal.spec;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A live {@link Map} view over the properties of a spec, in which every
+ * property is bound to a fixed slot.
+ * <p>
+ * Removing a property sets it to null. Keys that are not properties of the
+ * spec can be put and removed like in any other map. They are kept next to
+ * the properties, and the spec only reads them for properties that have no
+ * slot, such as the ones handled by the proxy.
+ */
+abstract class PropertyMap extends AbstractMap<String, Object> {
+
+    private final String[] keys;
+    private final Map<String, Integer> slots;
+
+    /**
+     * The values of keys that are not properties. Null until one is put
+     */
+    private Map<String, Object> extras;
+
+    PropertyMap(@NotNull String[] keys, @NotNull Map<String, Integer> slots) {
+        this.keys = keys;
+        this.slots = slots;
+    }
+
+    /**
+     * Returns the value in the given slot
+     *
+     * @param slot The slot
+     * @return The value
+     */
+    protected abstract Object getSlot(int slot);
+
+    /**
+     * Sets the value in the given slot
+     *
+     * @param slot  The slot
+     * @param value The new value
+     */
+    protected abstract void setSlot(int slot, Object value);
+
+    /*
+     * Primitive accessors. These must only be used on slots whose property has
+     * the same type. Numbers are converted, as boxed slots may hold another
+     * Number type, for example when set through the map. Implementations that
+     * store primitives unboxed override these to avoid allocating.
+     */
+
+    int getInt(int slot) {
+        return ((Number) getSlot(slot)).intValue();
+    }
+
+    void setInt(int slot, int value) {
+        setSlot(slot, value);
+    }
+
+    long getLong(int slot) {
+        return ((Number) getSlot(slot)).longValue();
+    }
+
+    void setLong(int slot, long value) {
+        setSlot(slot, value);
+    }
+
+    double getDouble(int slot) {
+        return ((Number) getSlot(slot)).doubleValue();
+    }
+
+    void setDouble(int slot, double value) {
+        setSlot(slot, value);
+    }
+
+    boolean getBoolean(int slot) {
+        return (Boolean) getSlot(slot);
+    }
+
+    void setBoolean(int slot, boolean value) {
+        setSlot(slot, value);
+    }
+
+    /**
+     * Returns the number of properties, which are in slots
+     * {@code 0} to {@code slotCount() - 1}
+     *
+     * @return The number of slots
+     */
+    final int slotCount() {
+        return keys.length;
+    }
+
+    /**
+     * Returns the values of keys that are not properties
+     *
+     * @return The extra values. Could be empty
+     */
+    final @NotNull Map<String, Object> extras() {
+        return extras == null ? Collections.emptyMap() : extras;
+    }
+
+    @Override
+    public int size() {
+        return extras == null ? keys.length : keys.length + extras.size();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return slots.containsKey(key) || (extras != null && extras.containsKey(key));
+    }
+
+    @Override
+    public Object get(Object key) {
+        Integer slot = slots.get(key);
+        if (slot != null)
+            return getSlot(slot);
+        return extras == null ? null : extras.get(key);
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        Integer slot = slots.get(key);
+        if (slot == null) {
+            if (extras == null)
+                extras = new LinkedHashMap<>();
+            return extras.put(key, value);
+        }
+        Object old = getSlot(slot);
+        setSlot(slot, value);
+        return old;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        Integer slot = slots.get(key);
+        if (slot == null)
+            return extras == null ? null : extras.remove(key);
+        Object old = getSlot(slot);
+        setSlot(slot, null);
+        return old;
+    }
+
+    @Override
+    public @NotNull Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<Entry<String, Object>>() {
+            @Override
+            public @NotNull Iterator<Entry<String, Object>> iterator() {
+                return new Iterator<Entry<String, Object>>() {
+                    private int slot;
+                    private Iterator<Entry<String, Object>> remaining;
+                    private int last = -1;
+
+                    @Override
+                    public boolean hasNext() {
+                        if (slot < keys.length)
+                            return true;
+                        if (remaining == null)
+                            remaining = extras == null ? Collections.emptyIterator() : extras.entrySet().iterator();
+                        return remaining.hasNext();
+                    }
+
+                    @Override
+                    public Entry<String, Object> next() {
+                        if (!hasNext())
+                            throw new NoSuchElementException();
+                        if (slot < keys.length)
+                            return new SlotEntry(last = slot++);
+                        last = keys.length;
+                        return remaining.next();
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (last < 0)
+                            throw new IllegalStateException();
+                        if (last < keys.length)
+                            setSlot(last, null);
+                        else
+                            remaining.remove();
+                        last = -1;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return PropertyMap.this.size();
+            }
+        };
+    }
+
+    private final class SlotEntry implements Entry<String, Object> {
+
+        private final int slot;
+
+        private SlotEntry(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        public String getKey() {
+            return keys[slot];
+        }
+
+        @Override
+        public Object getValue() {
+            return getSlot(slot);
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            Object old = getSlot(slot);
+            setSlot(slot, value);
+            return old;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Entry))
+                return false;
+            Entry<?, ?> e = (Entry<?, ?>) o;
+            return getKey().equals(e.getKey()) && Objects.equals(getValue(), e.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return getKey().hashCode() ^ Objects.hashCode(getValue());
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + "=" + getValue();
+        }
+    }
+}
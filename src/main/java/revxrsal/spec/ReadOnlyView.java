@@ -0,0 +1,286 @@
+/*
+ * This file is part of Cream, licensed under the MIT License.
+ *
+ *  Copyright (c) Revxrsal <reflxction.github@gmail.com>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+package revxrsal.spec;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.*;
+
+import static revxrsal.spec.Specs.isConfigSpec;
+
+/**
+ * A read-only view over a spec, which is used for {@link SpecReference#snapshot() snapshots}.
+ * <p>
+ * Nothing is copied. Nested specs, lists, sets and maps returned by the view
+ * are wrapped in read-only views as they are accessed. Setters and
+ * {@link revxrsal.spec.annotation.Reset @Reset} methods throw an
+ * {@link UnsupportedOperationException}. Arrays are returned as they are.
+ */
+final class ReadOnlyView implements InvocationHandler {
+
+    private final Object value;
+    private final SpecClass specClass;
+    private final @Nullable InvocationHandler mapProxy;
+
+    /**
+     * The views of nested specs, by slot, so that reading a nested spec
+     * repeatedly does not create new views
+     */
+    private final Object[] nested;
+    private final Object[] nestedViews;
+
+    private ReadOnlyView(@NotNull Class<?> type, @NotNull Object value) {
+        this.value = value;
+        this.specClass = Specs.from(type);
+        this.mapProxy = MapProxy.isMapProxy(value) ? Proxy.getInvocationHandler(value) : null;
+        this.nested = new Object[specClass.keys().length];
+        this.nestedViews = new Object[specClass.keys().length];
+    }
+
+    /**
+     * Creates a read-only view over the given spec
+     *
+     * @param type  The spec interface
+     * @param value The spec
+     * @param <T>   The spec type
+     * @return The read-only view
+     */
+    @SuppressWarnings("unchecked")
+    static @NotNull <T> T of(@NotNull Class<T> type, @NotNull T value) {
+        if (isView(value))
+            return value;
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class[]{type}, new ReadOnlyView(type, value));
+    }
+
+    private static boolean isView(@NotNull Object value) {
+        return Proxy.isProxyClass(value.getClass()) && Proxy.getInvocationHandler(value) instanceof ReadOnlyView;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        MethodDispatch dispatch = specClass.dispatch(method);
+        switch (dispatch.kind()) {
+            case GETTER: {
+                Object result = forward(method, args);
+                int slot = dispatch.slot();
+                if (slot >= 0 && result != null && isConfigSpec(method.getReturnType()))
+                    return nestedView(slot, method.getReturnType(), result);
+                return readOnly(result);
+            }
+            case MEMOIZE:
+            case AS_MAP:
+                return readOnly(forward(method, args));
+            case IGNORED:
+                // Run the default method against this view, so that it cannot
+                // modify the spec either
+                return dispatch.invokeDefault(proxy, args);
+            case SETTER:
+            case RESET:
+                throw new UnsupportedOperationException("Cannot modify a read-only snapshot (tried to call " + method.getName() + ")");
+            case RELOAD:
+                throw new IllegalStateException("You cannot reload a snapshot! Reload the SpecReference instead.");
+            case SAVE:
+                throw new IllegalStateException("You cannot save a snapshot! Save the SpecReference instead.");
+            case EQUALS: {
+                Object other = args[0];
+                if (other != null && isView(other))
+                    other = ((ReadOnlyView) Proxy.getInvocationHandler(other)).value;
+                return value.equals(other);
+            }
+            case TO_STRING:
+            case HASH_CODE:
+                return forward(method, args);
+        }
+        throw new IllegalArgumentException("Don't know how to handle " + method);
+    }
+
+    private Object forward(@NotNull Method method, Object[] args) throws Throwable {
+        if (mapProxy != null)
+            return mapProxy.invoke(value, method, args);
+        return specClass.dispatch(method).forward(value, args);
+    }
+
+    @SuppressWarnings("unchecked")
+    private @NotNull Object nestedView(int slot, @NotNull Class<?> type, @NotNull Object spec) {
+        synchronized (nestedViews) {
+            if (nested[slot] != spec) {
+                nestedViews[slot] = of((Class<Object>) type, spec);
+                nested[slot] = spec;
+            }
+            return nestedViews[slot];
+        }
+    }
+
+    /**
+     * Wraps the given value in a read-only view, if it is a spec,
+     * a list, a set, a map or a collection.
+     */
+    @SuppressWarnings("unchecked")
+    static Object readOnly(@Nullable Object value) {
+        if (value == null)
+            return null;
+        if (value instanceof GeneratedSpec || MapProxy.isMapProxy(value))
+            return of((Class<Object>) MapProxy.specType(value), value);
+        if (value instanceof List)
+            return new ListView((List<?>) value);
+        if (value instanceof Set)
+            return new SetView((Set<?>) value);
+        if (value instanceof Map)
+            return new MapView((Map<?, ?>) value);
+        if (value instanceof Collection)
+            return new CollectionView((Collection<?>) value);
+        return value;
+    }
+
+    private static @NotNull Iterator<Object> readOnly(@NotNull Iterator<?> iterator) {
+        return new Iterator<Object>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public Object next() {
+                return readOnly(iterator.next());
+            }
+        };
+    }
+
+    private static final class ListView extends AbstractList<Object> implements RandomAccess {
+
+        private final List<?> list;
+
+        ListView(@NotNull List<?> list) {
+            this.list = list;
+        }
+
+        @Override
+        public Object get(int index) {
+            return readOnly(list.get(index));
+        }
+
+        @Override
+        public int size() {
+            return list.size();
+        }
+    }
+
+    private static final class SetView extends AbstractSet<Object> {
+
+        private final Set<?> set;
+
+        SetView(@NotNull Set<?> set) {
+            this.set = set;
+        }
+
+        @Override
+        public @NotNull Iterator<Object> iterator() {
+            return readOnly(set.iterator());
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return set.contains(o);
+        }
+
+        @Override
+        public int size() {
+            return set.size();
+        }
+    }
+
+    private static final class CollectionView extends AbstractCollection<Object> {
+
+        private final Collection<?> collection;
+
+        CollectionView(@NotNull Collection<?> collection) {
+            this.collection = collection;
+        }
+
+        @Override
+        public @NotNull Iterator<Object> iterator() {
+            return readOnly(collection.iterator());
+        }
+
+        @Override
+        public int size() {
+            return collection.size();
+        }
+    }
+
+    private static final class MapView extends AbstractMap<Object, Object> {
+
+        private final Map<?, ?> map;
+
+        MapView(@NotNull Map<?, ?> map) {
+            this.map = map;
+        }
+
+        @Override
+        public Object get(Object key) {
+            return readOnly(map.get(key));
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return map.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public @NotNull Set<Entry<Object, Object>> entrySet() {
+            return new AbstractSet<Entry<Object, Object>>() {
+                @Override
+                public @NotNull Iterator<Entry<Object, Object>> iterator() {
+                    Iterator<? extends Entry<?, ?>> iterator = map.entrySet().iterator();
+                    return new Iterator<Entry<Object, Object>>() {
+                        @Override
+                        public boolean hasNext() {
+                            return iterator.hasNext();
+                        }
+
+                        @Override
+                        public Entry<Object, Object> next() {
+                            Entry<?, ?> entry = iterator.next();
+                            return new SimpleImmutableEntry<>(entry.getKey(), readOnly(entry.getValue()));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return map.size();
+                }
+            };
+        }
+    }
+}
@@ -25,27 +25,35 @@ package revxrsal.spec;
 
 import static revxrsal.spec.MHLookup.privateLookupIn;
 import static revxrsal.spec.SpecProperty.fieldName;
-import static revxrsal.spec.Specs.createDefault;
 import static revxrsal.spec.Specs.isConfigSpec;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonSerializer;
+import com.google.gson.JsonSyntaxException;
 import com.google.gson.TypeAdapter;
 import com.google.gson.TypeAdapterFactory;
 import com.google.gson.internal.ConstructorConstructor;
+import com.google.gson.internal.ObjectConstructor;
 import com.google.gson.internal.bind.TreeTypeAdapter;
 import com.google.gson.reflect.TypeToken;
 import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import com.google.gson.stream.JsonWriter;
 import java.io.IOException;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.function.Consumer;
 import lombok.SneakyThrows;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -73,6 +81,15 @@ public final class SpecAdapterFactory implements TypeAdapterFactory {
     @SneakyThrows
     public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
         Class<?> rawType = type.getRawType();
+        if (Map.class.isAssignableFrom(rawType)) {
+            return treeMapAdapter(gson, type);
+        }
+        if (!rawType.isInterface()) {
+            // Gson looks up adapters of the runtime type of values, such as
+            // the elements of a List<Spec>
+            Class<?> spec = specInterfaceOf(rawType);
+            return spec == null ? null : (TypeAdapter<T>) gson.getAdapter(spec);
+        }
         if (!isConfigSpec(rawType)) {
             return null;
         }
@@ -82,39 +99,17 @@ public final class SpecAdapterFactory implements TypeAdapterFactory {
             if (value.isHandledByProxy()) {
                 continue;
             }
-            Method getter = value.getter();
-            TypeToken<?> fieldType = TypeToken.get(getter.getGenericReturnType());
-
-            TypeAdapter<?> adapter = null;
-            UseTypeAdapter annotation = getter.getAnnotation(UseTypeAdapter.class);
-            if (CTR_CTR != null) {
-                ConstructorConstructor constructorConstructor = (ConstructorConstructor) CTR_CTR.invoke(
-                    gson);
-                if (annotation != null) {
-                    adapter = getTypeAdapter(constructorConstructor, gson, fieldType, annotation);
-                }
-            }
-            if (adapter == null) {
-                adapter = gson.getAdapter(fieldType);
-            }
-
-            adapter = new TrackingTypeAdapter<>(adapter);
-
-            BoundField field = new BoundField(value.key(), adapter);
-            fieldsMap.put(fieldName(value), field);
+            fieldsMap.put(fieldName(value), bind(gson, value));
         }
 
         return new TrackingTypeAdapter<>(new TypeAdapter<T>() {
             @Override
             public void write(JsonWriter out, T value) throws IOException {
                 out.beginObject();
-                Map<String, Object> map = MapProxy.getInternalMap(value);
+                PropertyMap map = MapProxy.getInternalMap(value);
                 for (Entry<String, BoundField> entry : fieldsMap.entrySet()) {
                     out.name(entry.getKey());
-                    Object fieldValue = map.get(entry.getValue().key);
-                    impl.properties().get(entry.getValue().key).getWriteHook()
-                        .forEach(hook -> hook.accept(fieldValue));
-                    entry.getValue().adapter().write(out, fieldValue);
+                    entry.getValue().write(out, map);
                 }
                 out.endObject();
             }
@@ -123,40 +118,300 @@ public final class SpecAdapterFactory implements TypeAdapterFactory {
             @Override
             public T read(JsonReader in) {
                 in.beginObject();
-                T proxy = (T) createDefault(rawType);
-                Map<String, Object> map = MapProxy.getInternalMap(proxy);
+                Decoding<T> decoding = new Decoding<>((Class<T>) rawType);
                 while (in.hasNext()) {
                     String name = in.nextName();
                     BoundField field = fieldsMap.get(name);
                     if (field == null) {
                         in.skipValue();
                     } else {
-                        Object readValue = field.adapter.read(in);
-                        impl.properties().get(field.key).getReadHook()
-                            .forEach(hook -> hook.accept(readValue));
-                        map.put(field.key, readValue);
+                        decoding.read(field, in);
                     }
                 }
                 in.endObject();
-                return proxy;
+                return decoding.finish();
             }
         });
     }
 
-    private static class BoundField {
+    /**
+     * Returns an adapter for maps that can read from a {@link DataReader}.
+     * <p>
+     * Gson's own map adapter cannot read map keys from readers other than its
+     * own, so this adapter decodes maps in object form when reading configuration
+     * data, and delegates to Gson's adapter for everything else.
+     */
+    @SneakyThrows
+    private <T> @Nullable TypeAdapter<T> treeMapAdapter(Gson gson, TypeToken<T> type) {
+        TypeAdapter<T> delegate = gson.getDelegateAdapter(this, type);
+        if (CTR_CTR == null || !isBuiltIn(delegate)) {
+            return null;
+        }
+        Type[] keyAndValue = mapKeyAndValueTypes(type);
+        ObjectConstructor<T> constructor = ((ConstructorConstructor) CTR_CTR.invoke(gson)).get(type);
+        TypeAdapter<Object> keyAdapter = keyAndValue == null ? null : (TypeAdapter<Object>) gson.getAdapter(TypeToken.get(keyAndValue[0]));
+        TypeAdapter<Object> valueAdapter = keyAndValue == null ? null : (TypeAdapter<Object>) gson.getAdapter(TypeToken.get(keyAndValue[1]));
+        TypeAdapter<JsonElement> elementAdapter = gson.getAdapter(JsonElement.class);
+        return new TypeAdapter<T>() {
+            @Override
+            public void write(JsonWriter out, T value) throws IOException {
+                delegate.write(out, value);
+            }
 
-        private final @NotNull String key;
+            @Override
+            public T read(JsonReader in) throws IOException {
+                if (!(in instanceof DataReader) || in.peek() != JsonToken.BEGIN_OBJECT) {
+                    return delegate.read(in);
+                }
+                if (keyAndValue == null) {
+                    return delegate.fromJsonTree(elementAdapter.read(in));
+                }
+                DataReader reader = (DataReader) in;
+                Map<Object, Object> map = (Map<Object, Object>) constructor.construct();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    reader.promoteNameToValue();
+                    Object key = keyAdapter.read(reader);
+                    Object value = valueAdapter.read(reader);
+                    if (map.put(key, value) != null) {
+                        throw new JsonSyntaxException("duplicate key: " + key);
+                    }
+                }
+                reader.endObject();
+                return (T) map;
+            }
+        };
+    }
+
+    /**
+     * Returns the spec interface implemented by the given class, if it
+     * is a proxy or a generated implementation of a spec
+     */
+    private static @Nullable Class<?> specInterfaceOf(@NotNull Class<?> type) {
+        if (!Proxy.isProxyClass(type) && !GeneratedSpec.class.isAssignableFrom(type)) {
+            return null;
+        }
+        for (Class<?> implemented : type.getInterfaces()) {
+            if (isConfigSpec(implemented)) {
+                return implemented;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the key and value types of the given map type, or null if they
+     * cannot be determined without resolving its supertypes
+     */
+    private static Type @Nullable [] mapKeyAndValueTypes(@NotNull TypeToken<?> type) {
+        Class<?> rawType = type.getRawType();
+        if (Properties.class.isAssignableFrom(rawType)) {
+            return new Type[]{String.class, String.class};
+        }
+        // The type parameters of maps in java.util are always <K, V>
+        if (!rawType.getName().startsWith("java.util.") || rawType.getTypeParameters().length != 2) {
+            return null;
+        }
+        if (type.getType() instanceof ParameterizedType) {
+            return ((ParameterizedType) type.getType()).getActualTypeArguments();
+        }
+        return new Type[]{Object.class, Object.class};
+    }
+
+    /**
+     * Creates the field that reads and writes the given property
+     *
+     * @param gson     The Gson instance
+     * @param property The property
+     * @return The bound field
+     */
+    @SneakyThrows
+    static @NotNull BoundField bind(@NotNull Gson gson, @NotNull SpecProperty property) {
+        Method getter = property.getter();
+        TypeToken<?> fieldType = TypeToken.get(getter.getGenericReturnType());
+
+        TypeAdapter<?> adapter = null;
+        UseTypeAdapter annotation = getter.getAnnotation(UseTypeAdapter.class);
+        if (CTR_CTR != null && annotation != null) {
+            ConstructorConstructor constructorConstructor = (ConstructorConstructor) CTR_CTR.invoke(
+                gson);
+            adapter = getTypeAdapter(constructorConstructor, gson, fieldType, annotation);
+        }
+        if (adapter == null) {
+            adapter = gson.getAdapter(fieldType);
+        }
+
+        // Primitives that use Gson's own adapters can be read and written without boxing
+        Class<?> primitive = isBuiltIn(adapter) ? unboxedType(property.type()) : null;
+
+        return new BoundField(property, new TrackingTypeAdapter<>(adapter), primitive);
+    }
+
+    /**
+     * Tests whether the given adapter is one of Gson's built-in adapters, rather
+     * than one registered by the user.
+     */
+    private static boolean isBuiltIn(@NotNull TypeAdapter<?> adapter) {
+        return adapter.getClass().getName().startsWith("com.google.gson.");
+    }
+
+    /**
+     * Returns the type if it is a primitive that {@link PropertyMap} can access
+     * without boxing, otherwise null.
+     */
+    private static @Nullable Class<?> unboxedType(@NotNull Class<?> type) {
+        if (type == int.class || type == long.class || type == double.class || type == boolean.class) {
+            return type;
+        }
+        return null;
+    }
+
+    /**
+     * A spec that is being decoded. Properties are read into a blank spec, and
+     * only the properties that were not read get their default values, once the
+     * whole object has been read.
+     *
+     * @param <T> The spec type
+     */
+    static final class Decoding<T> {
+
+        private final Class<T> type;
+        private final T instance;
+        private final PropertyMap map;
+        private final boolean[] present;
+
+        Decoding(@NotNull Class<T> type) {
+            this.type = type;
+            this.instance = (T) Specs.newInstance(type);
+            this.map = MapProxy.getInternalMap(instance);
+            this.present = new boolean[map.slotCount()];
+        }
+
+        /**
+         * Reads the given property
+         *
+         * @param field The property
+         * @param in    The reader
+         */
+        void read(@NotNull BoundField field, @NotNull JsonReader in) throws IOException {
+            field.read(in, map);
+            present[field.slot] = true;
+        }
+
+        /**
+         * Fills the properties that were not read with their default values
+         *
+         * @return The decoded spec
+         */
+        @NotNull T finish() {
+            Specs.from(type).defaults().fill(instance, map, present);
+            return instance;
+        }
+    }
+
+    /**
+     * Reads and writes a single property of a spec
+     */
+    static final class BoundField {
+
+        private final @NotNull SpecProperty property;
         private final @NotNull TypeAdapter<?> adapter;
 
+        /**
+         * The primitive type of the property, if it can be read and written
+         * without boxing. Could be null
+         */
+        private final @Nullable Class<?> primitive;
+        private final int slot;
+
         @SneakyThrows
-        public BoundField(@NotNull String key, @NotNull TypeAdapter<?> adapter) {
-            this.key = key;
+        public BoundField(@NotNull SpecProperty property, @NotNull TypeAdapter<?> adapter,
+            @Nullable Class<?> primitive) {
+            this.property = property;
             this.adapter = adapter;
+            this.primitive = primitive;
+            this.slot = property.ordinal();
         }
 
         public @NotNull <T> TypeAdapter<T> adapter() {
             return (TypeAdapter<T>) adapter;
         }
+
+        /**
+         * Writes the value of this property
+         *
+         * @param out The writer
+         * @param map The properties of the spec
+         */
+        void write(@NotNull JsonWriter out, @NotNull PropertyMap map) throws IOException {
+            if (primitive != null && property.getWriteHook().isEmpty()) {
+                writePrimitive(out, map);
+                return;
+            }
+            Object fieldValue = map.getSlot(slot);
+            for (Consumer<Object> hook : property.getWriteHook()) {
+                hook.accept(fieldValue);
+            }
+            adapter().write(out, fieldValue);
+        }
+
+        /**
+         * Reads the value of this property into the given map
+         *
+         * @param in  The reader
+         * @param map The properties of the spec
+         */
+        void read(@NotNull JsonReader in, @NotNull PropertyMap map) throws IOException {
+            if (primitive != null && property.getReadHook().isEmpty() && readPrimitive(in, map)) {
+                return;
+            }
+            Object readValue = adapter.read(in);
+            for (Consumer<Object> hook : property.getReadHook()) {
+                hook.accept(readValue);
+            }
+            map.setSlot(slot, readValue);
+        }
+
+        private void writePrimitive(@NotNull JsonWriter out, @NotNull PropertyMap map)
+            throws IOException {
+            if (primitive == int.class) {
+                out.value(map.getInt(slot));
+            } else if (primitive == long.class) {
+                out.value(map.getLong(slot));
+            } else if (primitive == double.class) {
+                out.value(map.getDouble(slot));
+            } else {
+                out.value(map.getBoolean(slot));
+            }
+        }
+
+        /**
+         * Reads the primitive value directly into the map. Returns false without
+         * consuming anything if the next token needs the regular adapter, such as
+         * nulls or booleans written as strings.
+         */
+        private boolean readPrimitive(@NotNull JsonReader in, @NotNull PropertyMap map)
+            throws IOException {
+            JsonToken token = in.peek();
+            if (primitive == boolean.class) {
+                if (token != JsonToken.BOOLEAN) {
+                    return false;
+                }
+                map.setBoolean(slot, in.nextBoolean());
+                return true;
+            }
+            if (token != JsonToken.NUMBER) {
+                return false;
+            }
+            if (primitive == int.class) {
+                map.setInt(slot, in.nextInt());
+            } else if (primitive == long.class) {
+                map.setLong(slot, in.nextLong());
+            } else {
+                map.setDouble(slot, in.nextDouble());
+            }
+            return true;
+        }
     }
 
     static TypeAdapter<?> getTypeAdapter(ConstructorConstructor constructorConstructor, Gson gson,
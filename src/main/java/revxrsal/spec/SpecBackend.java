@@ -0,0 +1,42 @@
+package revxrsal.spec;
+
+import revxrsal.spec.annotation.ConfigSpec;
+
+/**
+ * The strategies used for implementing {@link ConfigSpec} interfaces at runtime.
+ * <p>
+ * Set with {@link Specs#setBackend(SpecBackend)}.
+ */
+public enum SpecBackend {
+
+    /**
+     * Implements specs with {@link java.lang.reflect.Proxy dynamic proxies}.
+     * This is the default behavior.
+     */
+    PROXY,
+
+    /**
+     * Generates a concrete class for every spec interface, in which each property
+     * is a real field. Getters and setters become plain field accesses, which
+     * the JIT can inline.
+     * <p>
+     * Generated classes are defined in the same package as the spec interface.
+     */
+    GENERATED,
+
+    /**
+     * Implements specs with {@link java.lang.reflect.Proxy dynamic proxies}, like
+     * {@link #PROXY}, but stores their properties in an immutable array that is
+     * copied and replaced on every write. This is a copy-on-write slot array:
+     * writing a property costs O(n) in the number of properties.
+     * <p>
+     * This makes copying a spec cheap: the copy shares the array until either
+     * of them changes. {@link SpecReference#snapshot() Snapshots} use this to
+     * stay unaffected by later setter calls, {@link SpecReference#batch(java.util.function.Consumer, boolean) batches}
+     * to build the new value, and new instances to share their default values.
+     * <p>
+     * Collection properties are not affected, and are stored as they are.
+     */
+    PERSISTENT
+
+}
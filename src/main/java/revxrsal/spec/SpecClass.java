@@ -29,6 +29,10 @@ import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.Unmodifiable;
 import revxrsal.spec.annotation.ConfigSpec;
 
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.WildcardType;
 import java.util.*;
 
 import static revxrsal.spec.SpecProperty.headerOf;
@@ -44,6 +48,24 @@ public final class SpecClass {
     private final @Unmodifiable Map<String, SpecProperty> properties;
     private @Nullable Map<String, String> comments;
     private final @NotNull List<String> headers;
+    private final @NotNull String[] keys;
+    private final @Unmodifiable Map<String, Integer> slots;
+    private final @Unmodifiable Map<Method, MethodDispatch> dispatchTable;
+    private final @NotNull MethodDispatch[] eagerMemoized;
+    private final @NotNull MethodDispatch[] reloadMethods;
+    private final int @NotNull [] nestedSlots;
+    private volatile Map<Method, MethodDispatch> identityDispatch = new IdentityHashMap<>();
+    private final int identityLimit;
+    private volatile @Nullable GeneratedSpec.Layout layout;
+    private volatile @Nullable GeneratedReference.Layout referenceLayout;
+    private volatile @Nullable SpecDefaults defaults;
+
+    /**
+     * Whether getters record their reads in the memoized result being
+     * computed. Written before {@link #readsTracked}
+     */
+    private boolean tracksReads;
+    private volatile boolean readsTracked;
 
     SpecClass(
             @NotNull Class<?> type,
@@ -53,6 +75,163 @@ public final class SpecClass {
         this.type = type;
         this.properties = properties;
         this.headers = headers;
+        List<String> keys = new ArrayList<>();
+        Map<String, Integer> slots = new HashMap<>();
+        List<Integer> nestedSlots = new ArrayList<>();
+        for (SpecProperty property : properties.values()) {
+            if (property.isHandledByProxy())
+                continue;
+            if (Specs.isConfigSpec(property.type()))
+                nestedSlots.add(keys.size());
+            property.ordinal(keys.size());
+            slots.put(property.key(), keys.size());
+            keys.add(property.key());
+        }
+        this.keys = keys.toArray(new String[0]);
+        this.nestedSlots = nestedSlots.stream().mapToInt(Integer::intValue).toArray();
+        this.slots = Collections.unmodifiableMap(slots);
+        this.dispatchTable = MethodDispatch.dispatchTable(type, this.slots);
+        List<MethodDispatch> eagerMemoized = new ArrayList<>();
+        List<MethodDispatch> reloadMethods = new ArrayList<>();
+        for (MethodDispatch dispatch : dispatchTable.values()) {
+            if (dispatch.memoize() != null && dispatch.memoize().eager())
+                eagerMemoized.add(dispatch);
+            Method method = dispatch.method();
+            if (dispatch.kind() == MethodDispatch.Kind.RELOAD && method.isDefault() && method.getParameterCount() == 0)
+                reloadMethods.add(dispatch);
+        }
+        this.eagerMemoized = eagerMemoized.toArray(new MethodDispatch[0]);
+        this.reloadMethods = reloadMethods.toArray(new MethodDispatch[0]);
+        this.identityLimit = 2 * dispatchTable.size();
+    }
+
+    /**
+     * Returns the default {@link revxrsal.spec.annotation.Reload @Reload} methods
+     * of this spec that take no parameters. These are invoked after every reload.
+     * The returned array must not be modified.
+     *
+     * @return The reload methods
+     */
+    @NotNull MethodDispatch[] reloadMethods() {
+        return reloadMethods;
+    }
+
+    /**
+     * Returns the {@link revxrsal.spec.annotation.Memoize#eager() eager} memoized
+     * methods of this spec. The returned array must not be modified.
+     *
+     * @return The eager memoized methods
+     */
+    @NotNull MethodDispatch[] eagerMemoized() {
+        return eagerMemoized;
+    }
+
+    /**
+     * Returns the ordinals of the properties whose type is a spec. The returned
+     * array must not be modified.
+     *
+     * @return The ordinals of nested specs
+     */
+    int @NotNull [] nestedSlots() {
+        return nestedSlots;
+    }
+
+    /**
+     * Returns the keys of the stored properties, indexed by their
+     * {@link SpecProperty#ordinal() ordinals}. The returned array must not be modified.
+     *
+     * @return The property keys
+     */
+    @NotNull String[] keys() {
+        return keys;
+    }
+
+    /**
+     * Returns the ordinals of the stored properties, by their keys
+     *
+     * @return The property ordinals
+     */
+    @NotNull @Unmodifiable Map<String, Integer> slots() {
+        return slots;
+    }
+
+    /**
+     * Returns how the given method of this spec should be dispatched.
+     * <p>
+     * Proxies pass the same {@link Method} instances on every call, so lookups
+     * go through an identity map first, which is filled lazily from the
+     * dispatch table. Callers that pass their own copies, such as the ones
+     * returned by {@link Class#getMethods()}, would grow it forever, so it
+     * stops growing once it holds about two sets of methods, and later misses
+     * are served by the dispatch table alone.
+     *
+     * @param method The method
+     * @return The method dispatch
+     */
+    @NotNull MethodDispatch dispatch(@NotNull Method method) {
+        MethodDispatch dispatch = identityDispatch.get(method);
+        if (dispatch != null)
+            return dispatch;
+        dispatch = dispatchTable.get(method);
+        if (dispatch == null)
+            throw new IllegalArgumentException("Method " + method + " does not belong to " + type.getName());
+        if (this.identityDispatch.size() >= identityLimit)
+            return dispatch;
+        Map<Method, MethodDispatch> identityDispatch = new IdentityHashMap<>(this.identityDispatch);
+        identityDispatch.put(method, dispatch);
+        this.identityDispatch = identityDispatch;
+        return dispatch;
+    }
+
+    /**
+     * Tests whether getters of this spec should record their reads in the
+     * memoized result being computed by the current thread. This is false
+     * until a memoized method of this spec, or of a spec that contains it,
+     * is computed.
+     *
+     * @return if reads should be recorded
+     */
+    boolean tracksReads() {
+        return tracksReads;
+    }
+
+    /**
+     * Makes getters of this spec, and of the specs in its properties, record
+     * their reads in memoized results. This must be called before a memoized
+     * method of this spec is computed.
+     */
+    void trackReads() {
+        if (!readsTracked)
+            trackReads(new HashSet<>());
+    }
+
+    private void trackReads(@NotNull Set<SpecClass> visited) {
+        if (!visited.add(this))
+            return;
+        tracksReads = true;
+        for (SpecProperty property : properties.values()) {
+            if (!property.isHandledByProxy())
+                trackReads(property.getter().getGenericReturnType(), visited);
+        }
+        readsTracked = true;
+    }
+
+    private static void trackReads(@NotNull java.lang.reflect.Type type, @NotNull Set<SpecClass> visited) {
+        if (type instanceof ParameterizedType) {
+            for (java.lang.reflect.Type argument : ((ParameterizedType) type).getActualTypeArguments())
+                trackReads(argument, visited);
+        } else if (type instanceof GenericArrayType) {
+            trackReads(((GenericArrayType) type).getGenericComponentType(), visited);
+        } else if (type instanceof WildcardType) {
+            for (java.lang.reflect.Type bound : ((WildcardType) type).getUpperBounds())
+                trackReads(bound, visited);
+        } else if (type instanceof Class<?>) {
+            Class<?> c = (Class<?>) type;
+            if (c.isArray())
+                trackReads(c.getComponentType(), visited);
+            else if (Specs.isConfigSpec(c))
+                Specs.from(c).trackReads(visited);
+        }
     }
 
     private @NotNull Map<String, String> computeComments() {
@@ -126,8 +305,15 @@ public final class SpecClass {
             throw new IllegalArgumentException("Class is not an interface: " + type.getName());
         if (!type.isAnnotationPresent(ConfigSpec.class))
             throw new IllegalArgumentException("Interface does not have @ConfigSpec on it!");
-        List<String> headers = headerOf(type);
-        Map<String, SpecProperty> properties = propertiesOf(type);
+        List<String> headers;
+        Map<String, SpecProperty> properties;
+        SpecMetadata metadata = SpecMetadata.find(type);
+        if (metadata != null && (properties = propertiesOf(type, metadata)) != null) {
+            headers = metadata.headers();
+        } else {
+            headers = headerOf(type);
+            properties = propertiesOf(type);
+        }
 
         for (SpecProperty property : properties.values()) {
             for (PostProcessor postProcessor : postProcessors) {
@@ -143,6 +329,59 @@ public final class SpecClass {
         return new SpecClass(type, properties, headers);
     }
 
+    /**
+     * Returns the layout of the generated implementation of this spec,
+     * generating it if necessary.
+     *
+     * @return The generated class layout
+     */
+    @NotNull GeneratedSpec.Layout layout() {
+        GeneratedSpec.Layout layout = this.layout;
+        if (layout == null) {
+            synchronized (this) {
+                layout = this.layout;
+                if (layout == null)
+                    this.layout = layout = SpecGenerator.generate(type, this);
+            }
+        }
+        return layout;
+    }
+
+    /**
+     * Returns the layout of the generated reference class of this spec,
+     * generating it if necessary.
+     *
+     * @return The generated reference layout
+     */
+    @NotNull GeneratedReference.Layout referenceLayout() {
+        GeneratedReference.Layout layout = this.referenceLayout;
+        if (layout == null) {
+            synchronized (this) {
+                layout = this.referenceLayout;
+                if (layout == null)
+                    this.referenceLayout = layout = SpecGenerator.generateReference(type, this);
+            }
+        }
+        return layout;
+    }
+
+    /**
+     * Returns the default values of this spec, computing them if necessary.
+     *
+     * @return The default values
+     */
+    @NotNull SpecDefaults defaults() {
+        SpecDefaults defaults = this.defaults;
+        if (defaults == null) {
+            synchronized (this) {
+                defaults = this.defaults;
+                if (defaults == null)
+                    this.defaults = defaults = SpecDefaults.compute(type, this);
+            }
+        }
+        return defaults;
+    }
+
     public @NotNull Map<String, String> comments() {
         if (comments == null)
             comments = computeComments();
@@ -0,0 +1,340 @@
+/*
+ * This file is part of Cream, licensed under the MIT License.
+ *
+ *  Copyright (c) Revxrsal <reflxction.github@gmail.com>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+package revxrsal.spec;
+
+import lombok.SneakyThrows;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+
+import static java.lang.invoke.MethodType.methodType;
+import static revxrsal.spec.Specs.isConfigSpec;
+
+/**
+ * The default values of a spec, computed once per {@link SpecClass}.
+ * <p>
+ * The defaults are computed by filling a template instance. New instances copy
+ * the template: immutable values are shared, and mutable collections, arrays and
+ * nested specs are deep-copied. Nested specs without a default value are created
+ * from their own defaults. Default methods that return anything else are invoked
+ * again for every instance, through a cached method handle.
+ * <p>
+ * This means that default methods which return immutable values or collections
+ * are only evaluated once.
+ */
+final class SpecDefaults {
+
+    /**
+     * Immutable types whose instances can be shared between specs
+     */
+    private static final Set<Class<?>> IMMUTABLE = new HashSet<>(Arrays.asList(
+            String.class, Boolean.class, Character.class, Byte.class, Short.class,
+            Integer.class, Long.class, Float.class, Double.class,
+            BigInteger.class, BigDecimal.class, UUID.class, Class.class
+    ));
+
+    private static final byte SHARE = 0;
+    private static final byte COPY = 1;
+    private static final byte INVOKE = 2;
+    private static final byte CREATE = 3;
+
+    private final Object[] template;
+    private final byte[] strategies;
+    private final MethodHandle[] defaultMethods;
+    private final Class<?>[] types;
+
+    /**
+     * The shared values, for specs that are {@link MapProxy#isPersistent(Object) persistent}.
+     * Computed lazily
+     */
+    private volatile PersistentSlots shared;
+
+    private SpecDefaults(Object[] template, byte[] strategies, MethodHandle[] defaultMethods, Class<?>[] types) {
+        this.template = template;
+        this.strategies = strategies;
+        this.defaultMethods = defaultMethods;
+        this.types = types;
+    }
+
+    /**
+     * Fills the given spec with the default values
+     *
+     * @param instance   The spec
+     * @param properties The spec properties
+     */
+    void fill(@NotNull Object instance, @NotNull PropertyMap properties) {
+        fill(instance, properties, null);
+    }
+
+    /**
+     * Fills the properties of the given spec that are not present
+     * with the default values
+     *
+     * @param instance   The spec
+     * @param properties The spec properties
+     * @param present    The slots that already have a value. Could be null
+     */
+    @SneakyThrows
+    void fill(@NotNull Object instance, @NotNull PropertyMap properties, boolean @Nullable [] present) {
+        boolean shareAll = present == null && MapProxy.isPersistent(instance);
+        if (shareAll)
+            MapProxy.setState(instance, shared());
+        for (int slot = 0; slot < template.length; slot++) {
+            if (present != null && present[slot])
+                continue;
+            switch (strategies[slot]) {
+                case SHARE:
+                    if (!shareAll)
+                        properties.setSlot(slot, template[slot]);
+                    break;
+                case COPY:
+                    properties.setSlot(slot, copy(template[slot]));
+                    break;
+                case INVOKE:
+                    properties.setSlot(slot, (Object) defaultMethods[slot].invokeExact(instance));
+                    break;
+                case CREATE:
+                    properties.setSlot(slot, Specs.createDefault(types[slot]));
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Returns the values that are shared by all instances, so that persistent
+     * specs can start with all of them at once
+     */
+    private @NotNull PersistentSlots shared() {
+        PersistentSlots shared = this.shared;
+        if (shared == null) {
+            shared = PersistentSlots.EMPTY;
+            for (int slot = 0; slot < template.length; slot++) {
+                if (strategies[slot] == SHARE)
+                    shared = shared.with(slot, template[slot]);
+            }
+            this.shared = shared;
+        }
+        return shared;
+    }
+
+    /**
+     * Computes the defaults of the given spec
+     *
+     * @param type      The spec interface
+     * @param specClass The spec information
+     * @return The defaults
+     */
+    @SneakyThrows
+    static @NotNull SpecDefaults compute(@NotNull Class<?> type, @NotNull SpecClass specClass) {
+        int size = specClass.keys().length;
+        Object[] template = new Object[size];
+        byte[] strategies = new byte[size];
+        MethodHandle[] defaultMethods = new MethodHandle[size];
+        Class<?>[] types = new Class<?>[size];
+
+        Object instance = Specs.newInstance(type);
+        PropertyMap properties = MapProxy.getInternalMap(instance);
+        Lookup lookup = null;
+        for (SpecProperty property : specClass.properties().values()) {
+            if (property.isHandledByProxy())
+                continue;
+            int slot = property.ordinal();
+            types[slot] = property.type();
+            Object value;
+            if (property.hasDefault()) {
+                if (lookup == null)
+                    lookup = MHLookup.privateLookupIn(type).in(type);
+                defaultMethods[slot] = lookup.unreflectSpecial(property.getter(), type)
+                        .asType(methodType(Object.class, Object.class));
+                value = (Object) defaultMethods[slot].invokeExact(instance);
+            } else {
+                value = emptyValue(property.type());
+            }
+            properties.setSlot(slot, value);
+            template[slot] = value;
+            if (!property.hasDefault() && isConfigSpec(property.type()))
+                strategies[slot] = CREATE;
+            else if (isImmutable(value))
+                strategies[slot] = SHARE;
+            else if (isCopyable(value))
+                strategies[slot] = COPY;
+            else
+                strategies[slot] = property.hasDefault() ? INVOKE : SHARE;
+        }
+        return new SpecDefaults(template, strategies, defaultMethods, types);
+    }
+
+    /**
+     * Returns the value of a property that does not have a default value.
+     * <p>
+     * Nested specs are created with their default values. Lists, maps, sets,
+     * arrays, and primitive types are empty. Everything else is null.
+     */
+    private static @Nullable Object emptyValue(@NotNull Class<?> type) {
+        if (isConfigSpec(type))
+            return Specs.createDefault(type);
+        if (type == List.class || type == Iterable.class || type == Collection.class)
+            return new ArrayList<>();
+        if (type == Set.class)
+            return new LinkedHashSet<>();
+        if (type == Map.class)
+            return new LinkedHashMap<>();
+        if (type.isArray())
+            return Array.newInstance(type.getComponentType(), 0);
+        if (type == boolean.class)
+            return false;
+        if (type == byte.class)
+            return (byte) 0;
+        if (type == char.class)
+            return '\u0000';
+        if (type == short.class)
+            return (short) 0;
+        if (type == int.class)
+            return 0;
+        if (type == long.class)
+            return 0L;
+        if (type == float.class)
+            return 0.0f;
+        if (type == double.class)
+            return 0.0d;
+        return null;
+    }
+
+    private static boolean isImmutable(@Nullable Object value) {
+        if (value == null || value instanceof Enum || IMMUTABLE.contains(value.getClass()))
+            return true;
+        if (value.getClass().isArray())
+            return Array.getLength(value) == 0;
+        if (value.getClass().getName().startsWith("java.util.ImmutableCollections$")) {
+            if (value instanceof Map)
+                return allImmutable(((Map<?, ?>) value).keySet()) && allImmutable(((Map<?, ?>) value).values());
+            return allImmutable((Collection<?>) value);
+        }
+        return false;
+    }
+
+    private static boolean allImmutable(@NotNull Collection<?> values) {
+        for (Object value : values) {
+            if (!isImmutable(value))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Tests whether {@link #copy(Object)} can create an independent copy
+     * of the given value
+     */
+    private static boolean isCopyable(@Nullable Object value) {
+        if (isImmutable(value))
+            return true;
+        if (isSpec(value))
+            return allCopyable(MapProxy.getInternalMap(value).values());
+        Class<?> type = value.getClass();
+        if (type == ArrayList.class || type == LinkedList.class || type == HashSet.class || type == LinkedHashSet.class)
+            return allCopyable((Collection<?>) value);
+        if (type == HashMap.class || type == LinkedHashMap.class) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            return allImmutable(map.keySet()) && allCopyable(map.values());
+        }
+        if (type.isArray()) {
+            if (type.getComponentType().isPrimitive())
+                return true;
+            for (Object element : (Object[]) value) {
+                if (!isCopyable(element))
+                    return false;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean allCopyable(@NotNull Collection<?> values) {
+        for (Object value : values) {
+            if (!isCopyable(value))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean isSpec(@NotNull Object value) {
+        return value instanceof GeneratedSpec || MapProxy.isMapProxy(value);
+    }
+
+    /**
+     * Deep-copies a value that is {@link #isCopyable(Object) copyable}
+     */
+    private static Object copy(@Nullable Object value) {
+        if (isImmutable(value))
+            return value;
+        if (isSpec(value))
+            return copySpec(value);
+        Class<?> type = value.getClass();
+        if (type.isArray()) {
+            if (type.getComponentType().isPrimitive()) {
+                int length = Array.getLength(value);
+                Object copy = Array.newInstance(type.getComponentType(), length);
+                System.arraycopy(value, 0, copy, 0, length);
+                return copy;
+            }
+            Object[] copy = ((Object[]) value).clone();
+            for (int i = 0; i < copy.length; i++)
+                copy[i] = copy(copy[i]);
+            return copy;
+        }
+        if (value instanceof Map) {
+            Map<Object, Object> copy = type == HashMap.class ? new HashMap<>() : new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet())
+                copy.put(entry.getKey(), copy(entry.getValue()));
+            return copy;
+        }
+        Collection<Object> copy;
+        if (type == ArrayList.class)
+            copy = new ArrayList<>(((Collection<?>) value).size());
+        else if (type == LinkedList.class)
+            copy = new LinkedList<>();
+        else if (type == HashSet.class)
+            copy = new HashSet<>();
+        else
+            copy = new LinkedHashSet<>();
+        for (Object element : (Collection<?>) value)
+            copy.add(copy(element));
+        return copy;
+    }
+
+    private static @NotNull Object copySpec(@NotNull Object spec) {
+        PropertyMap source = MapProxy.getInternalMap(spec);
+        Object copy = Specs.newInstance(MapProxy.specType(spec));
+        PropertyMap target = MapProxy.getInternalMap(copy);
+        for (int slot = 0; slot < source.slotCount(); slot++)
+            target.setSlot(slot, copy(source.getSlot(slot)));
+        return copy;
+    }
+}
@@ -0,0 +1,502 @@
+/*
+ * This file is part of Cream, licensed under the MIT License.
+ *
+ *  Copyright (c) Revxrsal <reflxction.github@gmail.com>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+package revxrsal.spec;
+
+import lombok.SneakyThrows;
+import org.jetbrains.annotations.NotNull;
+import revxrsal.spec.GeneratedSpec.Layout;
+import revxrsal.spec.annotation.IgnoreMethod;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+import static java.lang.invoke.MethodType.methodType;
+
+/**
+ * Generates concrete classes that implement {@link revxrsal.spec.annotation.ConfigSpec}
+ * interfaces, in which every property is stored in a real field.
+ * <p>
+ * Generated classes look roughly like this:
+ * <pre>{@code
+ * public final class ServerConfig$$Spec extends GeneratedSpec implements ServerConfig {
+ *
+ *     int f0;
+ *     String f1;
+ *
+ *     public ServerConfig$$Spec(Layout layout) {
+ *         super(layout);
+ *     }
+ *
+ *     public int maxPlayers() {
+ *         onRead(0);
+ *         return this.f0;
+ *     }
+ *
+ *     public void setMaxPlayers(int value) {
+ *         this.f0 = value;
+ *         onWrite(0);
+ *     }
+ *
+ *     public Map<String, Object> asMap() {
+ *         return (Map<String, Object>) handle(0, null);
+ *     }
+ * }
+ * }</pre>
+ * Fields are plain, so that getters are plain field reads. Values are shared
+ * between threads by publishing the whole spec, like {@link SpecReference} does
+ * with its volatile value. A setter called on a spec that other threads are
+ * reading is not guaranteed to become visible to them.
+ * <p>
+ * The generated code contains no branches, so it does not need stack map frames.
+ */
+final class SpecGenerator {
+
+    private static final String SUFFIX = "$$Spec";
+    private static final String SUPER = internalName(GeneratedSpec.class);
+    private static final String LAYOUT = descriptor(Layout.class);
+
+    private static final String REFERENCE_SUFFIX = "$$Reference";
+    private static final String REFERENCE_SUPER = internalName(GeneratedReference.class);
+    private static final String REFERENCE_CONSTRUCTOR = "(" + descriptor(GeneratedReference.Layout.class)
+            + "Ljava/lang/Runnable;Ljava/lang/Runnable;)V";
+
+    private SpecGenerator() {
+    }
+
+    /**
+     * Generates and defines the implementation class of the given spec
+     *
+     * @param type      The spec interface
+     * @param specClass The spec information
+     * @return The layout of the generated class
+     */
+    @SneakyThrows
+    static @NotNull Layout generate(@NotNull Class<?> type, @NotNull SpecClass specClass) {
+        Class<?>[] types = new Class<?>[specClass.keys().length];
+        Map<Method, Integer> getters = new HashMap<>();
+        Map<Method, Integer> setters = new HashMap<>();
+        for (SpecProperty property : specClass.properties().values()) {
+            if (property.isHandledByProxy())
+                continue;
+            int slot = property.ordinal();
+            types[slot] = property.type();
+            getters.put(property.getter(), slot);
+            if (property.setter() != null)
+                setters.put(property.setter(), slot);
+        }
+
+        List<MethodDispatch> handled = new ArrayList<>();
+        Set<String> signatures = new HashSet<>();
+        String name = type.getName() + SUFFIX;
+        ClassFile cf = new ClassFile(internalName(name), SUPER, internalName(type));
+        for (int slot = 0; slot < types.length; slot++)
+            cf.field("f" + slot, descriptor(types[slot]));
+
+        Code init = cf.method("<init>", "(" + LAYOUT + ")V", 2, 2);
+        init.op(ALOAD_0).op(ALOAD_1).op(INVOKESPECIAL).u2(cf.methodRef(SUPER, "<init>", "(" + LAYOUT + ")V")).op(RETURN);
+
+        for (Method method : type.getMethods()) {
+            if (Modifier.isStatic(method.getModifiers()) || method.isAnnotationPresent(IgnoreMethod.class))
+                continue;
+            if (!signatures.add(method.getName() + descriptor(method)))
+                continue;
+            Integer slot;
+            if ((slot = getters.get(method)) != null) {
+                Code code = cf.method(method.getName(), descriptor(method), 2, 1);
+                code.op(ALOAD_0).push(cf, slot).op(INVOKEVIRTUAL).u2(cf.methodRef(SUPER, "onRead", "(I)V"));
+                code.op(ALOAD_0).op(GETFIELD).u2(cf.fieldRef(cf.name, "f" + slot, descriptor(types[slot])));
+                code.op(returnOp(types[slot]));
+            } else if ((slot = setters.get(method)) != null) {
+                Class<?> paramType = method.getParameterTypes()[0];
+                Code code = cf.method(method.getName(), descriptor(method), 1 + size(paramType), 1 + size(paramType));
+                code.op(ALOAD_0).load(paramType, 1);
+                code.op(PUTFIELD).u2(cf.fieldRef(cf.name, "f" + slot, descriptor(types[slot])));
+                code.op(ALOAD_0).push(cf, slot).op(INVOKEVIRTUAL).u2(cf.methodRef(SUPER, "onWrite", "(I)V"));
+                code.op(RETURN);
+            } else {
+                int index = handled.size();
+                handled.add(specClass.dispatch(method));
+                generateHandled(cf, SUPER, method, index);
+            }
+        }
+
+        Lookup lookup = ClassDefiner.define(MHLookup.privateLookupIn(type), cf.toByteArray());
+        Class<?> generated = lookup.lookupClass();
+        Layout layout = new Layout(type, specClass, types, handled.toArray(new MethodDispatch[0]));
+        for (int slot = 0; slot < types.length; slot++) {
+            MethodHandle getter = lookup.findGetter(generated, "f" + slot, types[slot]);
+            MethodHandle setter = lookup.findSetter(generated, "f" + slot, types[slot]);
+            layout.getters[slot] = getter.asType(methodType(Object.class, GeneratedSpec.class));
+            layout.setters[slot] = setter.asType(methodType(void.class, GeneratedSpec.class, Object.class));
+            if (types[slot].isPrimitive()) {
+                layout.primitiveGetters[slot] = getter.asType(methodType(types[slot], GeneratedSpec.class));
+                layout.primitiveSetters[slot] = setter.asType(methodType(void.class, GeneratedSpec.class, types[slot]));
+            }
+        }
+        layout.constructor = lookup.findConstructor(generated, methodType(void.class, Layout.class))
+                .asType(methodType(GeneratedSpec.class, Layout.class));
+        return layout;
+    }
+
+    /**
+     * Generates and defines the reference class of the given spec. This forwards
+     * every method to the current value, except {@link revxrsal.spec.annotation.Reload @Reload}
+     * and {@link revxrsal.spec.annotation.Save @Save} methods.
+     *
+     * @param type      The spec interface
+     * @param specClass The spec information
+     * @return The layout of the generated class
+     */
+    @SneakyThrows
+    static @NotNull GeneratedReference.Layout generateReference(@NotNull Class<?> type, @NotNull SpecClass specClass) {
+        String name = type.getName() + REFERENCE_SUFFIX;
+        String typeName = internalName(type);
+        ClassFile cf = new ClassFile(internalName(name), REFERENCE_SUPER, typeName);
+
+        Code init = cf.method("<init>", REFERENCE_CONSTRUCTOR, 4, 4);
+        init.op(ALOAD_0).op(ALOAD_1).op(ALOAD).op(2).op(ALOAD).op(3);
+        init.op(INVOKESPECIAL).u2(cf.methodRef(REFERENCE_SUPER, "<init>", REFERENCE_CONSTRUCTOR)).op(RETURN);
+
+        List<MethodDispatch> handled = new ArrayList<>();
+        Set<String> signatures = new HashSet<>();
+        for (Method method : type.getMethods()) {
+            if (Modifier.isStatic(method.getModifiers()))
+                continue;
+            if (!signatures.add(method.getName() + descriptor(method)))
+                continue;
+            MethodDispatch dispatch = specClass.dispatch(method);
+            if (dispatch.kind() == MethodDispatch.Kind.RELOAD || dispatch.kind() == MethodDispatch.Kind.SAVE) {
+                int index = handled.size();
+                handled.add(dispatch);
+                generateHandled(cf, REFERENCE_SUPER, method, index);
+                continue;
+            }
+            Class<?>[] parameters = method.getParameterTypes();
+            int locals = 1;
+            for (Class<?> parameter : parameters)
+                locals += size(parameter);
+            Code code = cf.method(method.getName(), descriptor(method), Math.max(locals, size(method.getReturnType())), locals);
+            code.op(ALOAD_0).op(GETFIELD).u2(cf.fieldRef(REFERENCE_SUPER, "value", "Ljava/lang/Object;"));
+            code.op(CHECKCAST).u2(cf.classRef(typeName));
+            int local = 1;
+            for (Class<?> parameter : parameters) {
+                code.load(parameter, local);
+                local += size(parameter);
+            }
+            code.op(INVOKEINTERFACE).u2(cf.interfaceMethodRef(typeName, method.getName(), descriptor(method)))
+                    .op(locals).op(0);
+            code.op(returnOp(method.getReturnType()));
+        }
+
+        Lookup lookup = ClassDefiner.define(MHLookup.privateLookupIn(type), cf.toByteArray());
+        Class<?> generated = lookup.lookupClass();
+        GeneratedReference.Layout layout = new GeneratedReference.Layout(handled.toArray(new MethodDispatch[0]));
+        layout.constructor = lookup.findConstructor(generated,
+                        methodType(void.class, GeneratedReference.Layout.class, Runnable.class, Runnable.class))
+                .asType(methodType(GeneratedReference.class, GeneratedReference.Layout.class, Runnable.class, Runnable.class));
+        return layout;
+    }
+
+    /**
+     * Generates a method that delegates to {@link GeneratedSpec#handle(int, Object[])},
+     * packing all the arguments in an array.
+     */
+    private static void generateHandled(ClassFile cf, String superName, Method method, int index) {
+        Class<?>[] parameters = method.getParameterTypes();
+        int locals = 1;
+        for (Class<?> parameter : parameters)
+            locals += size(parameter);
+        Code code = cf.method(method.getName(), descriptor(method), 8, locals);
+        code.op(ALOAD_0).push(cf, index);
+        if (parameters.length == 0) {
+            code.op(ACONST_NULL);
+        } else {
+            code.push(cf, parameters.length).op(ANEWARRAY).u2(cf.classRef("java/lang/Object"));
+            int local = 1;
+            for (int i = 0; i < parameters.length; i++) {
+                Class<?> parameter = parameters[i];
+                code.op(DUP).push(cf, i).load(parameter, local);
+                if (parameter.isPrimitive()) {
+                    String wrapper = internalName(wrapper(parameter));
+                    code.op(INVOKESTATIC).u2(cf.methodRef(wrapper, "valueOf", "(" + descriptor(parameter) + ")L" + wrapper + ";"));
+                }
+                code.op(AASTORE);
+                local += size(parameter);
+            }
+        }
+        code.op(INVOKEVIRTUAL).u2(cf.methodRef(superName, "handle", "(I[Ljava/lang/Object;)Ljava/lang/Object;"));
+        Class<?> returnType = method.getReturnType();
+        if (returnType == void.class) {
+            code.op(POP);
+        } else if (returnType.isPrimitive()) {
+            String wrapper = internalName(wrapper(returnType));
+            code.op(CHECKCAST).u2(cf.classRef(wrapper));
+            code.op(INVOKEVIRTUAL).u2(cf.methodRef(wrapper, returnType.getName() + "Value", "()" + descriptor(returnType)));
+        } else if (returnType != Object.class) {
+            code.op(CHECKCAST).u2(cf.classRef(returnType.isArray() ? descriptor(returnType) : internalName(returnType)));
+        }
+        code.op(returnOp(returnType));
+    }
+
+    private static final int ACONST_NULL = 0x01, BIPUSH = 0x10, SIPUSH = 0x11, LDC_W = 0x13,
+            ILOAD = 0x15, LLOAD = 0x16, FLOAD = 0x17, DLOAD = 0x18, ALOAD = 0x19,
+            ALOAD_0 = 0x2a, ALOAD_1 = 0x2b, AASTORE = 0x53, POP = 0x57, DUP = 0x59,
+            IRETURN = 0xac, LRETURN = 0xad, FRETURN = 0xae, DRETURN = 0xaf, ARETURN = 0xb0, RETURN = 0xb1,
+            GETFIELD = 0xb4, PUTFIELD = 0xb5, INVOKEVIRTUAL = 0xb6, INVOKESPECIAL = 0xb7, INVOKESTATIC = 0xb8,
+            INVOKEINTERFACE = 0xb9, ANEWARRAY = 0xbd, CHECKCAST = 0xc0;
+
+    private static int returnOp(Class<?> type) {
+        if (type == void.class) return RETURN;
+        if (type == long.class) return LRETURN;
+        if (type == float.class) return FRETURN;
+        if (type == double.class) return DRETURN;
+        if (type.isPrimitive()) return IRETURN;
+        return ARETURN;
+    }
+
+    private static int size(Class<?> type) {
+        return type == long.class || type == double.class ? 2 : 1;
+    }
+
+    private static Class<?> wrapper(Class<?> primitive) {
+        return methodType(primitive).wrap().returnType();
+    }
+
+    private static String internalName(Class<?> type) {
+        return internalName(type.getName());
+    }
+
+    private static String internalName(String name) {
+        return name.replace('.', '/');
+    }
+
+    private static String descriptor(Method method) {
+        return methodType(method.getReturnType(), method.getParameterTypes()).toMethodDescriptorString();
+    }
+
+    private static String descriptor(Class<?> type) {
+        return methodType(type).toMethodDescriptorString().substring(2);
+    }
+
+    /**
+     * A minimal class file writer, with just enough to generate spec classes.
+     */
+    private static final class ClassFile {
+
+        private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+        private final DataOutputStream pool = new DataOutputStream(poolBytes);
+        private final Map<String, Integer> constants = new HashMap<>();
+        private int poolSize = 1;
+
+        private final String name;
+        private final int thisClass, superClass, interfaceClass;
+        private final List<byte[]> fields = new ArrayList<>();
+        private final List<Code> methods = new ArrayList<>();
+
+        ClassFile(String name, String superName, String interfaceName) {
+            this.name = name;
+            this.thisClass = classRef(name);
+            this.superClass = classRef(superName);
+            this.interfaceClass = classRef(interfaceName);
+        }
+
+        void field(String name, String descriptor) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            write(() -> {
+                out.writeShort(0); // package-private
+                out.writeShort(utf8(name));
+                out.writeShort(utf8(descriptor));
+                out.writeShort(0);
+            });
+            fields.add(bytes.toByteArray());
+        }
+
+        Code method(String name, String descriptor, int maxStack, int maxLocals) {
+            Code code = new Code(utf8(name), utf8(descriptor), maxStack, maxLocals);
+            methods.add(code);
+            return code;
+        }
+
+        int utf8(String value) {
+            return constant("U" + value, () -> {
+                pool.writeByte(1);
+                pool.writeUTF(value);
+            });
+        }
+
+        int integer(int value) {
+            return constant("I" + value, () -> {
+                pool.writeByte(3);
+                pool.writeInt(value);
+            });
+        }
+
+        int classRef(String internalName) {
+            int name = utf8(internalName);
+            return constant("C" + internalName, () -> {
+                pool.writeByte(7);
+                pool.writeShort(name);
+            });
+        }
+
+        int fieldRef(String owner, String name, String descriptor) {
+            return memberRef(9, owner, name, descriptor);
+        }
+
+        int methodRef(String owner, String name, String descriptor) {
+            return memberRef(10, owner, name, descriptor);
+        }
+
+        int interfaceMethodRef(String owner, String name, String descriptor) {
+            return memberRef(11, owner, name, descriptor);
+        }
+
+        private int memberRef(int tag, String owner, String name, String descriptor) {
+            int ownerIndex = classRef(owner);
+            int nameIndex = utf8(name), descriptorIndex = utf8(descriptor);
+            int nameAndType = constant("N" + name + ' ' + descriptor, () -> {
+                pool.writeByte(12);
+                pool.writeShort(nameIndex);
+                pool.writeShort(descriptorIndex);
+            });
+            return constant(tag + owner + '.' + name + descriptor, () -> {
+                pool.writeByte(tag);
+                pool.writeShort(ownerIndex);
+                pool.writeShort(nameAndType);
+            });
+        }
+
+        private int constant(String key, IOAction writer) {
+            Integer index = constants.get(key);
+            if (index == null) {
+                write(writer);
+                index = poolSize++;
+                constants.put(key, index);
+            }
+            return index;
+        }
+
+        byte[] toByteArray() {
+            int codeName = utf8("Code");
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            write(() -> {
+                out.writeInt(0xCAFEBABE);
+                out.writeShort(0);
+                out.writeShort(52); // Java 8
+                out.writeShort(poolSize);
+                poolBytes.writeTo(out);
+                out.writeShort(Modifier.PUBLIC | Modifier.FINAL | 0x0020 /* ACC_SUPER */);
+                out.writeShort(thisClass);
+                out.writeShort(superClass);
+                out.writeShort(1);
+                out.writeShort(interfaceClass);
+                out.writeShort(fields.size());
+                for (byte[] field : fields)
+                    out.write(field);
+                out.writeShort(methods.size());
+                for (Code method : methods) {
+                    byte[] code = method.bytes.toByteArray();
+                    out.writeShort(Modifier.PUBLIC);
+                    out.writeShort(method.name);
+                    out.writeShort(method.descriptor);
+                    out.writeShort(1);
+                    out.writeShort(codeName);
+                    out.writeInt(12 + code.length);
+                    out.writeShort(method.maxStack);
+                    out.writeShort(method.maxLocals);
+                    out.writeInt(code.length);
+                    out.write(code);
+                    out.writeShort(0); // exception table
+                    out.writeShort(0); // attributes
+                }
+                out.writeShort(0);
+            });
+            return bytes.toByteArray();
+        }
+    }
+
+    /**
+     * The bytecode of a single method
+     */
+    private static final class Code {
+
+        private final int name, descriptor, maxStack, maxLocals;
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        Code(int name, int descriptor, int maxStack, int maxLocals) {
+            this.name = name;
+            this.descriptor = descriptor;
+            this.maxStack = maxStack;
+            this.maxLocals = maxLocals;
+        }
+
+        Code op(int opcode) {
+            bytes.write(opcode);
+            return this;
+        }
+
+        Code u2(int value) {
+            bytes.write(value >>> 8);
+            bytes.write(value);
+            return this;
+        }
+
+        Code push(ClassFile cf, int value) {
+            if (value >= -1 && value <= 5)
+                return op(0x03 + value); // iconst_<n>
+            if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE)
+                return op(BIPUSH).op(value & 0xFF);
+            if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE)
+                return op(SIPUSH).u2(value);
+            return op(LDC_W).u2(cf.integer(value));
+        }
+
+        Code load(Class<?> type, int local) {
+            int opcode;
+            if (type == long.class) opcode = LLOAD;
+            else if (type == float.class) opcode = FLOAD;
+            else if (type == double.class) opcode = DLOAD;
+            else if (type.isPrimitive()) opcode = ILOAD;
+            else opcode = ALOAD;
+            return op(opcode).op(local);
+        }
+    }
+
+    private interface IOAction {
+        void run() throws IOException;
+    }
+
+    @SneakyThrows
+    private static void write(IOAction action) {
+        action.run();
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * This file is part of Cream, licensed under the MIT License.
+ *
+ *  Copyright (c) Revxrsal <reflxction.github@gmail.com>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+package revxrsal.spec;
+
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.Unmodifiable;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * The superclass of metadata classes generated by the spec annotation processor.
+ * <p>
+ * A metadata class contains everything that {@link SpecProperty#propertiesOf(Class)}
+ * would otherwise compute with reflection, in the order the properties should
+ * be written. Generated metadata classes are listed in {@link #INDEX}, and
+ * are named after their spec with {@link #SUFFIX} appended.
+ * <p>
+ * Internal use only.
+ */
+@ApiStatus.Internal
+public abstract class SpecMetadata {
+
+    /**
+     * The resource that lists the binary names of all specs that have
+     * generated metadata, one per line
+     */
+    public static final String INDEX = "META-INF/spec/metadata.index";
+
+    /**
+     * The suffix appended to the binary name of a spec to get the name of
+     * its metadata class
+     */
+    public static final String SUFFIX = "$$SpecMetadata";
+
+    /**
+     * The indexed specs of every class loader
+     */
+    private static final Map<ClassLoader, Set<String>> INDEXES = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final @Unmodifiable List<String> headers;
+    private final @Unmodifiable List<Property> properties;
+
+    protected SpecMetadata(@NotNull String[] headers, @NotNull Property[] properties) {
+        this.headers = Collections.unmodifiableList(Arrays.asList(headers));
+        this.properties = Collections.unmodifiableList(Arrays.asList(properties));
+    }
+
+    /**
+     * Returns the header of the spec, split into lines
+     *
+     * @return The header lines
+     */
+    public @NotNull @Unmodifiable List<String> headers() {
+        return headers;
+    }
+
+    /**
+     * Returns the properties of the spec, in order
+     *
+     * @return The properties
+     */
+    public @NotNull @Unmodifiable List<Property> properties() {
+        return properties;
+    }
+
+    /**
+     * Returns the generated metadata of the given spec, or null if the
+     * spec was not indexed by the annotation processor.
+     *
+     * @param type The spec interface
+     * @return The metadata, or null
+     */
+    static @Nullable SpecMetadata find(@NotNull Class<?> type) {
+        ClassLoader loader = type.getClassLoader();
+        if (loader == null || !indexOf(loader).contains(type.getName()))
+            return null;
+        try {
+            Class<?> metadata = Class.forName(type.getName() + SUFFIX, true, loader);
+            return (SpecMetadata) metadata.getConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // The index is stale. Fall back to reflection
+            return null;
+        }
+    }
+
+    private static @NotNull Set<String> indexOf(@NotNull ClassLoader loader) {
+        Set<String> index = INDEXES.get(loader);
+        if (index == null) {
+            index = readIndex(loader);
+            INDEXES.put(loader, index);
+        }
+        return index;
+    }
+
+    private static @NotNull Set<String> readIndex(@NotNull ClassLoader loader) {
+        Set<String> index = new HashSet<>();
+        try {
+            Enumeration<URL> resources = loader.getResources(INDEX);
+            while (resources.hasMoreElements()) {
+                URL url = resources.nextElement();
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(url.openStream(), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        line = line.trim();
+                        if (!line.isEmpty() && !line.startsWith("#"))
+                            index.add(line);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + INDEX, e);
+        }
+        return index.isEmpty() ? Collections.emptySet() : index;
+    }
+
+    /**
+     * Describes a single property of a spec.
+     * <p>
+     * Internal use only.
+     */
+    @ApiStatus.Internal
+    public static final class Property {
+
+        private final @NotNull String key;
+        private final @NotNull String fieldName;
+        private final @NotNull Class<?> type;
+        private final @NotNull String getter;
+        private final @NotNull Class<?>[] getterParameters;
+        private final @Nullable String setter;
+        private final @Unmodifiable List<String> comments;
+        private final boolean handledByProxy;
+
+        public Property(
+                @NotNull String key,
+                @NotNull String fieldName,
+                @NotNull Class<?> type,
+                @NotNull String getter,
+                @NotNull Class<?>[] getterParameters,
+                @Nullable String setter,
+                @NotNull String[] comments,
+                boolean handledByProxy
+        ) {
+            this.key = key;
+            this.fieldName = fieldName;
+            this.type = type;
+            this.getter = getter;
+            this.getterParameters = getterParameters;
+            this.setter = setter;
+            this.comments = Collections.unmodifiableList(Arrays.asList(comments));
+            this.handledByProxy = handledByProxy;
+        }
+
+        /**
+         * Returns the key of the property
+         *
+         * @return The key
+         */
+        public @NotNull String key() {
+            return key;
+        }
+
+        /**
+         * Returns the name of the property in the config file
+         *
+         * @return The field name
+         */
+        public @NotNull String fieldName() {
+            return fieldName;
+        }
+
+        /**
+         * Returns the (erased) type of the property
+         *
+         * @return The property type
+         */
+        public @NotNull Class<?> type() {
+            return type;
+        }
+
+        /**
+         * Returns the name of the getter method
+         *
+         * @return The getter name
+         */
+        public @NotNull String getter() {
+            return getter;
+        }
+
+        /**
+         * Returns the parameter types of the getter method. This is only
+         * non-empty for methods that are handled by the proxy.
+         *
+         * @return The getter parameters
+         */
+        public @NotNull Class<?>[] getterParameters() {
+            return getterParameters.clone();
+        }
+
+        /**
+         * Returns the name of the setter method, which takes a single parameter
+         * of {@link #type()}. Could be null
+         *
+         * @return The setter name
+         */
+        public @Nullable String setter() {
+            return setter;
+        }
+
+        /**
+         * Returns the comments of the property, split into lines
+         *
+         * @return The comments
+         */
+        public @NotNull @Unmodifiable List<String> comments() {
+            return comments;
+        }
+
+        /**
+         * Tests whether the property is handled by the proxy, and does not
+         * represent an actual property
+         *
+         * @return if the property is handled by the proxy
+         */
+        public boolean isHandledByProxy() {
+            return handledByProxy;
+        }
+    }
+}
@@ -28,7 +28,6 @@ import static revxrsal.spec.CommentedConfiguration.NEW_LINE;
 
 import com.google.gson.annotations.SerializedName;
 import java.lang.annotation.Annotation;
-import java.lang.reflect.AnnotatedElement;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
@@ -70,6 +69,12 @@ public final class SpecProperty {
      */
     private boolean keyRemap = true;
 
+    /**
+     * The name of the property in the config file. Computed lazily, see
+     * {@link #fieldName(SpecProperty)}
+     */
+    private @Nullable String fieldName;
+
     /**
      * The property type
      */
@@ -99,6 +104,12 @@ public final class SpecProperty {
     @Getter
     private boolean isHandledByProxy;
 
+    /**
+     * The index of this property in the storage of spec instances, assigned
+     * by {@link SpecClass}. This is -1 for properties that are handled by the proxy.
+     */
+    private int ordinal = -1;
+
     /**
      * Hooks that work on value read of this property. Could be used to implement data validators.
      */
@@ -123,6 +134,27 @@ public final class SpecProperty {
         return key;
     }
 
+    /**
+     * Returns the index of this property in the storage of spec instances. Ordinals
+     * are dense and follow the order of {@link SpecClass#properties()}, skipping
+     * properties that are {@link #isHandledByProxy() handled by the proxy}, in which
+     * case this returns -1.
+     *
+     * @return The property ordinal
+     */
+    public int ordinal() {
+        return ordinal;
+    }
+
+    /**
+     * Sets the ordinal of this property
+     *
+     * @param ordinal The new ordinal
+     */
+    void ordinal(int ordinal) {
+        this.ordinal = ordinal;
+    }
+
     /**
      * Returns the getter method of this property
      *
@@ -298,10 +330,53 @@ public final class SpecProperty {
     }
 
     static String fieldName(SpecProperty p) {
-        return p.keyRemap ? NameMapper.camelToKebab(p.key()) : p.key();
+        String fieldName = p.fieldName;
+        if (fieldName == null) {
+            fieldName = p.keyRemap ? NameMapper.camelToKebab(p.key()) : p.key();
+            p.fieldName = fieldName;
+        }
+        return fieldName;
+    }
+
+    /**
+     * Creates the properties of the given spec from the metadata generated
+     * by the annotation processor. This only looks up the methods of the
+     * properties, as everything else has been validated at compile time.
+     *
+     * @param interfaceType The spec interface
+     * @param metadata      The generated metadata
+     * @return The properties, or null if the metadata does not match the interface
+     */
+    static @Nullable @Unmodifiable Map<String, SpecProperty> propertiesOf(
+        @NotNull Class<?> interfaceType, @NotNull SpecMetadata metadata) {
+        Map<String, SpecProperty> properties = new LinkedHashMap<>();
+        for (SpecMetadata.Property p : metadata.properties()) {
+            SpecProperty property = new SpecProperty(p.key());
+            property.fieldName = p.fieldName();
+            property.type = p.type();
+            property.comments = p.comments();
+            property.isHandledByProxy = p.isHandledByProxy();
+            try {
+                property.getter = interfaceType.getMethod(p.getter(), p.getterParameters());
+                if (p.setter() != null) {
+                    property.setter = interfaceType.getMethod(p.setter(), p.type());
+                }
+            } catch (NoSuchMethodException e) {
+                return null;
+            }
+            properties.put(p.key(), property);
+        }
+        return Collections.unmodifiableMap(properties);
     }
 
-    private static <T extends AnnotatedElement> void sortByAnnotation(T[] methods) {
+    /**
+     * Sorts methods by their {@link Order}, unannotated methods first. The sort
+     * is stable, so methods with the same order keep the order of
+     * {@link Class#getMethods()}, which lists the methods of an interface as they
+     * are declared on common JVMs. The annotation processor lists methods in
+     * declaration order and sorts them the same way.
+     */
+    private static void sortByAnnotation(Method[] methods) {
         Arrays.sort(methods, (o1, o2) -> {
             Order order1 = o1.getAnnotation(Order.class);
             Order order2 = o2.getAnnotation(Order.class);
@@ -24,63 +24,84 @@
 package revxrsal.spec;
 
 import lombok.Getter;
-import lombok.RequiredArgsConstructor;
-import revxrsal.spec.annotation.Reload;
-import revxrsal.spec.annotation.Save;
+import org.jetbrains.annotations.NotNull;
 
-import java.lang.invoke.MethodHandle;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
-import java.util.function.Supplier;
 
+/**
+ * The handler of reference proxies. This handles {@link revxrsal.spec.annotation.Reload @Reload}
+ * and {@link revxrsal.spec.annotation.Save @Save} methods, and forwards everything else
+ * to the current value.
+ * <p>
+ * When the current value is backed by a {@link MapProxy}, calls are passed to its
+ * handler directly, so that reading a property only goes through a single proxy.
+ */
 @Getter
-@RequiredArgsConstructor
 final class SpecProxy<T> implements InvocationHandler {
 
-    public static <T> T proxy(Class<T> type, Supplier<T> supplier, Runnable onReload, Runnable onSave) {
+    public static <T> T proxy(Class<T> type, SpecProxy<T> handler) {
         //noinspection unchecked
         return (T) Proxy.newProxyInstance(
                 type.getClassLoader(),
                 new Class<?>[]{type},
-                new SpecProxy<>(type, supplier, onReload, onSave)
+                handler
         );
     }
 
     private final Class<?> type;
-    private final Supplier<T> supplier;
-    private final Runnable onReload;
-    private final Runnable onSave;
+    private final SpecClass specClass;
+    private final SpecReference<T> reference;
+
+    /**
+     * The current value, along with the handler that calls are forwarded to
+     */
+    private volatile Target target;
 
-    private MethodHandle reloadDef, saveDef;
+    SpecProxy(@NotNull Class<T> type, @NotNull SpecReference<T> reference) {
+        this.type = type;
+        this.specClass = Specs.from(type);
+        this.reference = reference;
+    }
+
+    /**
+     * Sets the value this proxy forwards calls to
+     *
+     * @param value The new value
+     */
+    void setValue(@NotNull T value) {
+        InvocationHandler handler = null;
+        if (Proxy.isProxyClass(value.getClass()))
+            handler = Proxy.getInvocationHandler(value);
+        if (!(handler instanceof MapProxy))
+            handler = (instance, method, args) -> specClass.dispatch(method).forward(instance, args);
+        this.target = new Target(value, handler);
+    }
 
     @Override
     public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-        if (method.isAnnotationPresent(Reload.class)) {
-            onReload.run();
-            if (method.isDefault()) {
-                if (reloadDef == null) {
-                    reloadDef = MHLookup.privateLookupIn(type)
-                            .in(type)
-                            .unreflectSpecial(method, type);
-                }
-                return reloadDef.bindTo(proxy).invokeWithArguments(args);
-            }
-            return null;
+        MethodDispatch dispatch = specClass.dispatch(method);
+        switch (dispatch.kind()) {
+            case RELOAD:
+                reference.reload();
+                return method.isDefault() ? dispatch.invokeDefault(proxy, args) : null;
+            case SAVE:
+                reference.save();
+                return method.isDefault() ? dispatch.invokeDefault(proxy, args) : null;
         }
-        if (method.isAnnotationPresent(Save.class)) {
-            onSave.run();
-            if (method.isDefault()) {
-                if (saveDef == null) {
-                    saveDef = MHLookup.privateLookupIn(type)
-                            .in(type)
-                            .unreflectSpecial(method, type);
-                }
-                return saveDef.bindTo(proxy).invokeWithArguments(args);
-            }
-            return null;
+        Target target = this.target;
+        return target.handler.invoke(target.value, method, args);
+    }
+
+    private static final class Target {
+
+        private final Object value;
+        private final InvocationHandler handler;
+
+        private Target(Object value, InvocationHandler handler) {
+            this.value = value;
+            this.handler = handler;
         }
-        T instance = supplier.get();
-        return method.invoke(instance, args);
     }
 }
@@ -23,24 +23,65 @@
  */
 package revxrsal.spec;
 
+import lombok.SneakyThrows;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import revxrsal.spec.annotation.ConfigSpec;
 import revxrsal.spec.annotation.Reload;
 import revxrsal.spec.annotation.Save;
 
 import java.lang.reflect.Proxy;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 
 /**
  * A utility object wrapper that creates a {@link Proxy} for {@link ConfigSpec}
  * classes and handles the invocation of {@link Save} and {@link Reload} methods.
  * <p>
+ * With the {@link SpecBackend#GENERATED generated backend}, a generated class is used
+ * instead of a {@link Proxy}, which forwards calls to the value with plain
+ * interface calls.
+ * <p>
  * Using this allows the user to store instances of the {@link ConfigSpec} interfaces
  * while at the same time making sure they always have the latest value
  * if it gets reloaded.
  * <p>
  * It also allows specs to include methods like {@link Reload} and {@link Save},
  * which we intercept in the proxy.
+ * <p>
+ * Reading through {@link #get()} never blocks. Every call reads the current
+ * value once, through a volatile reference, and then runs entirely against it.
+ * <p>
+ * {@link #reload()} and {@link #set(Object)} build the new value completely
+ * before publishing it with a single volatile write. Readers see either the old
+ * value or the new one, never a partially built one. Reloads and saves are
+ * serialized with each other, as they share the underlying {@link CommentedConfiguration}.
+ * <p>
+ * Concurrent calls are coalesced. A reload that arrives while another one
+ * is in progress is queued, and every reload queued behind it is served by
+ * a single trailing reload, which reads the file once the previous one is
+ * done reading it. Only reloads that publish on the same executor are
+ * coalesced, so that a {@link #reload()} never waits for a
+ * {@link #reloadAsync(Executor) background reload} to be published on
+ * another thread. A value that was read before another one that is already
+ * published is dropped instead of being published. A {@link #save()} that
+ * arrives while another one is in progress is queued the same way, and
+ * writes the value that is current once it starts.
+ * <p>
+ * Setters on a spec do not lock. With the {@link SpecBackend#PROXY proxy} and
+ * {@link SpecBackend#PERSISTENT persistent} backends, each property is written with
+ * release semantics, so other threads see the new value, fully constructed, the next
+ * time they read it. With the {@link SpecBackend#GENERATED generated} backend,
+ * properties are plain fields, and only the values published by the reference
+ * are guaranteed to be visible to other threads.
+ * <p>
+ * Code that reads several properties and needs them to agree with each other
+ * should read them from a {@link #snapshot()}, which is not affected by reloads.
  *
  * @param <T> The property type
  */
@@ -59,7 +100,44 @@ public final class SpecReference<T> {
     /**
      * The underlying value. This can get changed at any time
      */
-    private T value;
+    private volatile T value;
+
+    /**
+     * Serializes reloads and saves, which share {@link #config}
+     */
+    private final Object ioLock = new Object();
+
+    /**
+     * Guards {@link #queuedReload}, {@link #queuedReloadExecutor}, {@link #saving}
+     * and {@link #queuedSave}
+     */
+    private final Object flights = new Object();
+
+    /**
+     * The reload that has not started reading yet. Null if there is none
+     */
+    private CompletableFuture<T> queuedReload;
+
+    /**
+     * The executor that {@link #queuedReload} publishes on
+     */
+    private Executor queuedReloadExecutor;
+
+    /**
+     * The number of values that were read, and the number of the
+     * last published one. Guarded by {@link #ioLock}
+     */
+    private long readCount, publishedCount;
+
+    /**
+     * The save in progress. Null if there is none
+     */
+    private CompletableFuture<Void> saving;
+
+    /**
+     * The save that will run once {@link #saving} is done. Null if there is none
+     */
+    private CompletableFuture<Void> queuedSave;
 
     /**
      * The proxy (reference) that redirects calls to this object or the underlying
@@ -67,10 +145,25 @@ public final class SpecReference<T> {
      */
     private final T proxy;
 
+    /**
+     * Updates the value that {@link #proxy} forwards calls to
+     */
+    private final Consumer<T> target;
+
     public SpecReference(@NotNull Class<T> type, @NotNull CommentedConfiguration config) {
         this.type = type;
         this.config = config;
-        this.proxy = SpecProxy.proxy(type, this::value, this::reload, this::save);
+        if (Specs.backend() == SpecBackend.GENERATED) {
+            GeneratedReference reference = Specs.from(type).referenceLayout().newInstance(this::reload, this::save);
+            //noinspection unchecked
+            this.proxy = (T) reference;
+            reference.setReference(this);
+            this.target = reference::setValue;
+        } else {
+            SpecProxy<T> handler = new SpecProxy<>(type, this);
+            this.proxy = SpecProxy.proxy(type, handler);
+            this.target = handler::setValue;
+        }
     }
 
     /**
@@ -84,41 +177,313 @@ public final class SpecReference<T> {
     }
 
     /**
-     * Returns the actual value that is being wrapped. This value
-     * cannot be reloaded or saved, as these are handled by {@link #proxy}.
+     * Returns the top-level proxy. This proxy allows reloading and saving.
      *
-     * @return The underlying value
+     * @return The top-level wrapper proxy.
      */
-    private @NotNull T value() {
-        return value;
+    public @NotNull T get() {
+        return proxy;
     }
 
     /**
-     * Returns the top-level proxy. This proxy allows reloading and saving.
+     * Returns a read-only snapshot of the current value, including all of its
+     * nested specs.
+     * <p>
+     * Unlike {@link #get()}, the snapshot does not follow {@link #reload() reloads}
+     * or {@link #set(Object)}. Every read from it, including reads of nested specs,
+     * lists and maps, comes from the value that was current when it was taken.
+     * Holding on to a snapshot keeps that value alive, and nothing else does.
+     * <p>
+     * Nothing is copied, so taking a snapshot is cheap. This also means that
+     * setters called on the current value through {@link #get()}, before it is
+     * replaced, are visible in the snapshot, unless the value was created with the
+     * {@link SpecBackend#PERSISTENT persistent backend}. Persistent values are
+     * copied in constant time per nested spec instead, and the snapshot is
+     * not affected by any later change. The snapshot itself cannot be
+     * modified: its setters and {@link revxrsal.spec.annotation.Reset @Reset}
+     * methods throw an {@link UnsupportedOperationException}.
      *
-     * @return The top-level wrapper proxy.
+     * @return The snapshot
+     * @throws IllegalStateException if the reference has not been loaded yet
      */
-    public @NotNull T get() {
-        return proxy;
+    public @NotNull T snapshot() {
+        T value = this.value;
+        if (value == null)
+            throw new IllegalStateException("The reference has not been loaded yet!");
+        if (MapProxy.isPersistent(value))
+            //noinspection unchecked
+            value = (T) MapProxy.freeze(value);
+        return ReadOnlyView.of(type, value);
     }
 
     /**
      * Reloads the content of the object.
+     * <p>
+     * The new content is parsed and decoded completely before anything is
+     * replaced. If that fails, for example because a {@link revxrsal.spec.validation.PropertyValidator validator}
+     * rejects a value, the exception is thrown and both the current value and
+     * the data of the {@link CommentedConfiguration} are left as they were.
+     * <p>
+     * {@link revxrsal.spec.annotation.Memoize#eager() Eager} memoized values
+     * are computed before the new content becomes visible.
+     * <p>
+     * If another reload is already in progress, this waits for it to finish
+     * reading and then reloads again, so that changes made in the meantime
+     * are loaded. Reloads requested while waiting are served by that same reload.
      */
     public void reload() {
-        config.load();
-        SpecClass from = Specs.from(type);
-        config.setComments(from.comments());
-        config.setHeaders(from.headers());
-        this.value = config.getAs(type);
+        await(reload(DIRECT, DIRECT, false));
+    }
+
+    /**
+     * Reloads the content of the object in the background.
+     * <p>
+     * The new content is parsed, decoded and validated on {@link Specs#reloadExecutor()},
+     * along with {@link revxrsal.spec.annotation.Memoize#eager() eager} memoized values.
+     * Only then is it published on the given executor, followed by the default
+     * {@link Reload @Reload} methods of the spec. This allows applying the new
+     * content on a specific thread, without parsing on it.
+     * <p>
+     * If loading fails, the current value is kept, and the returned future
+     * completes with the exception.
+     * <p>
+     * If another reload is already in progress, this reloads again once it
+     * is done reading. Reloads requested in the meantime with the same executor
+     * share the result of that trailing reload.
+     *
+     * @param applyExecutor The executor that publishes the new content
+     * @return A future that completes with the new value once it is published
+     */
+    public @NotNull CompletableFuture<T> reloadAsync(@NotNull Executor applyExecutor) {
+        Objects.requireNonNull(applyExecutor, "applyExecutor cannot be null!");
+        return reload(Specs.reloadExecutor(), applyExecutor, true);
+    }
+
+    private @NotNull CompletableFuture<T> reload(
+            @NotNull Executor stageExecutor,
+            @NotNull Executor applyExecutor,
+            boolean runReloadMethods
+    ) {
+        CompletableFuture<T> flight;
+        synchronized (flights) {
+            // Joining a reload that publishes on another executor could wait
+            // on the very thread that is calling this
+            if (queuedReload != null && queuedReloadExecutor == applyExecutor)
+                return queuedReload;
+            queuedReload = flight = new CompletableFuture<>();
+            queuedReloadExecutor = applyExecutor;
+        }
+        CompletableFuture.supplyAsync(() -> stage(flight), stageExecutor)
+                .thenApplyAsync(staged -> apply(staged, runReloadMethods), applyExecutor)
+                .whenComplete((value, failure) -> {
+                    dequeue(flight);
+                    if (failure == null)
+                        flight.complete(value);
+                    else
+                        flight.completeExceptionally(failure instanceof CompletionException ? failure.getCause() : failure);
+                });
+        return flight;
+    }
+
+    /**
+     * Stops sharing the given reload with new callers
+     */
+    private void dequeue(@NotNull CompletableFuture<T> flight) {
+        synchronized (flights) {
+            if (queuedReload == flight)
+                queuedReload = null;
+        }
+    }
+
+    /**
+     * Parses and decodes the new content, without publishing it
+     */
+    private @NotNull Staged<T> stage(@NotNull CompletableFuture<T> flight) {
+        Staged<T> staged;
+        BinaryCache cache;
+        T cached;
+        long count;
+        synchronized (ioLock) {
+            // Reloads requested from now on may miss what is read here
+            dequeue(flight);
+            count = ++readCount;
+            cache = Specs.isBinaryCacheEnabled() ? BinaryCache.of(config.socket, type, config.gson) : null;
+            cached = cache == null ? null : cache.read();
+            if (cached != null) {
+                staged = new Staged<>(null, cached);
+            } else if (config.isStreaming()) {
+                staged = new Staged<>(null, config.readAs(type));
+            } else {
+                Map<String, Object> data = config.read();
+                staged = new Staged<>(data, config.getAs(data, type));
+            }
+            staged.count = count;
+        }
+        // The value is not published yet, so it cannot change while it is written
+        if (cache != null && cached == null)
+            cache.write(staged.value);
+        T old = this.value;
+        if (old != null)
+            Memoized.copy(old, staged.value);
+        Memoized.warm(staged.value, Specs.memoizeExecutor());
+        return staged;
+    }
+
+    /**
+     * Publishes the staged content, unless content that was read after
+     * it is already published
+     */
+    private @NotNull T apply(@NotNull Staged<T> staged, boolean runReloadMethods) {
+        T old;
+        synchronized (ioLock) {
+            if (staged.count < publishedCount) {
+                Memoized.retire(staged.value, this.value);
+                return this.value;
+            }
+            publishedCount = staged.count;
+            config.setData(staged.data != null ? staged.data : new LinkedHashMap<>());
+            SpecClass from = Specs.from(type);
+            config.setComments(from.comments());
+            config.setHeaders(from.headers());
+            old = this.value;
+            publish(staged.value);
+        }
+        if (old != null)
+            Memoized.retire(old, staged.value);
+        if (runReloadMethods) {
+            for (MethodDispatch dispatch : Specs.from(type).reloadMethods())
+                dispatch.invokeDefault(proxy, null);
+        }
+        return staged.value;
     }
 
     /**
-     * Saves the current object to the config
+     * Saves the current object to the config.
+     * <p>
+     * If another save is already in progress, this waits for it to finish
+     * and then saves again, so that changes made in the meantime are saved.
+     * Saves requested while waiting are served by that same save.
      */
     public void save() {
-        config.setTo(this.value, this.type);
-        config.save();
+        CompletableFuture<Void> previous = null;
+        CompletableFuture<Void> flight;
+        boolean queued;
+        synchronized (flights) {
+            queued = queuedSave != null;
+            if (queued) {
+                flight = queuedSave;
+            } else {
+                previous = saving;
+                flight = new CompletableFuture<>();
+                if (previous == null)
+                    saving = flight;
+                else
+                    queuedSave = flight;
+            }
+        }
+        if (queued) {
+            await(flight);
+            return;
+        }
+        if (previous != null) {
+            // Only wait for it to finish. Its failure is reported to its callers
+            previous.handle((v, t) -> null).join();
+            synchronized (flights) {
+                queuedSave = null;
+                saving = flight;
+            }
+        }
+        Throwable failure = null;
+        try {
+            synchronized (ioLock) {
+                config.save(this.value, this.type);
+            }
+        } catch (Throwable t) {
+            failure = t;
+        }
+        synchronized (flights) {
+            saving = null;
+        }
+        complete(flight, failure);
+    }
+
+    /**
+     * Runs tasks on the calling thread
+     */
+    private static final Executor DIRECT = Runnable::run;
+
+    /**
+     * Saves the current object to the config in the background, on
+     * {@link Specs#reloadExecutor()}. See {@link #save()}
+     *
+     * @return A future that completes once the config is saved
+     */
+    public @NotNull CompletableFuture<Void> saveAsync() {
+        return CompletableFuture.runAsync(this::save, Specs.reloadExecutor());
+    }
+
+    /**
+     * Completes the given flight, and rethrows the failure if there is one
+     */
+    @SneakyThrows
+    private static void complete(@NotNull CompletableFuture<Void> flight, Throwable failure) {
+        if (failure == null) {
+            flight.complete(null);
+            return;
+        }
+        flight.completeExceptionally(failure);
+        throw failure;
+    }
+
+    /**
+     * Waits for the given flight, and rethrows its failure if there is one
+     */
+    @SneakyThrows
+    private static void await(@NotNull CompletableFuture<?> flight) {
+        try {
+            flight.join();
+        } catch (CompletionException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Applies several changes to the current value at once.
+     * <p>
+     * The changes are made against a staging proxy of the value, where
+     * setters only record the new value. Once they are done, the write hooks
+     * of every changed property are run, once per property, and if none of
+     * them fails, a new value with the changes applied is published with a
+     * single write. Readers never see some of the changes without the others.
+     * Memoized results are carried over to the new value, except the ones that
+     * read a changed property.
+     * <p>
+     * If the changes or the write hooks throw an exception, nothing is applied.
+     * Batches are serialized with {@link #reload()} and {@link #save()}, but not
+     * with setters called directly on {@link #get()}, which may be lost if they
+     * race with a batch.
+     *
+     * @param changes The changes to apply
+     * @param save    Whether to save the config after applying the changes
+     */
+    public void batch(@NotNull Consumer<? super T> changes, boolean save) {
+        Objects.requireNonNull(changes, "changes cannot be null!");
+        synchronized (ioLock) {
+            T old = this.value;
+            if (old == null)
+                throw new IllegalStateException("The reference has not been loaded yet!");
+            Batch batch = Batch.stage(type, old, changes);
+            if (batch.hasChanges()) {
+                //noinspection unchecked
+                T value = (T) batch.applyToCopy();
+                Memoized.copy(old, value);
+                Memoized.warm(value, Specs.memoizeExecutor());
+                publish(value);
+                Memoized.retire(old, value);
+            }
+        }
+        if (save)
+            save();
     }
 
     /**
@@ -128,7 +493,30 @@ public final class SpecReference<T> {
      */
     public void set(@NotNull T value) {
         Objects.requireNonNull(value, "value cannot be null!");
+        publish(value);
+    }
+
+    private void publish(@NotNull T value) {
         this.value = value;
+        target.accept(value);
     }
 
+    /**
+     * New content that has been parsed and decoded, but not published yet
+     */
+    private static final class Staged<T> {
+
+        private final @Nullable Map<String, Object> data;
+        private final T value;
+
+        /**
+         * The number of the read that produced this
+         */
+        private long count;
+
+        private Staged(@Nullable Map<String, Object> data, @NotNull T value) {
+            this.data = data;
+            this.value = value;
+        }
+    }
 }
@@ -25,30 +25,160 @@ package revxrsal.spec;
 
 import java.io.File;
 import java.io.IOException;
-import java.lang.invoke.MethodHandle;
-import java.lang.reflect.Array;
-import java.lang.reflect.Method;
-import java.lang.reflect.Proxy;
 import java.nio.file.Path;
 import java.nio.file.StandardWatchEventKinds;
 import java.nio.file.WatchEvent.Kind;
 import java.nio.file.WatchKey;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.LinkedHashMap;
-import java.util.LinkedHashSet;
-import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 import lombok.SneakyThrows;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import revxrsal.spec.annotation.ConfigSpec;
 
 public final class Specs {
 
     private static final Map<Class<?>, SpecClass> IMPLEMENTATIONS = new ConcurrentHashMap<>();
 
+    private static volatile @NotNull SpecBackend backend = SpecBackend.PROXY;
+
+    private static volatile @NotNull Executor memoizeExecutor = ForkJoinPool.commonPool();
+
+    /**
+     * The executor set with {@link #setReloadExecutor(Executor)}. Null to use
+     * the default one
+     */
+    private static volatile @Nullable Executor reloadExecutor;
+
+    private static volatile boolean binaryCacheEnabled = false;
+
+    private static volatile boolean virtualThreadsEnabled = true;
+
+    /**
+     * Sets the backend used for implementing spec interfaces. This only affects
+     * specs that are created afterwards.
+     *
+     * @param backend The new backend
+     * @see SpecBackend
+     */
+    public static void setBackend(@NotNull SpecBackend backend) {
+        Specs.backend = Objects.requireNonNull(backend, "backend cannot be null!");
+    }
+
+    /**
+     * Returns the backend used for implementing spec interfaces
+     *
+     * @return The current backend
+     */
+    public static @NotNull SpecBackend backend() {
+        return backend;
+    }
+
+    /**
+     * Sets the executor used for computing {@link revxrsal.spec.annotation.Memoize#eager() eager}
+     * memoized values and {@link revxrsal.spec.annotation.Memoize#refreshAfter() refreshing}
+     * memoized values
+     *
+     * @param executor The new executor
+     */
+    public static void setMemoizeExecutor(@NotNull Executor executor) {
+        Specs.memoizeExecutor = Objects.requireNonNull(executor, "executor cannot be null!");
+    }
+
+    /**
+     * Returns the executor used for computing memoized values in the background.
+     * This is {@link ForkJoinPool#commonPool()} by default.
+     *
+     * @return The executor
+     */
+    public static @NotNull Executor memoizeExecutor() {
+        return memoizeExecutor;
+    }
+
+    /**
+     * Sets the executor used for parsing and decoding configs in
+     * {@link SpecReference#reloadAsync(Executor)}, and for saving them in
+     * {@link SpecReference#saveAsync()}
+     *
+     * @param executor The new executor
+     */
+    public static void setReloadExecutor(@NotNull Executor executor) {
+        Specs.reloadExecutor = Objects.requireNonNull(executor, "executor cannot be null!");
+    }
+
+    /**
+     * Returns the executor used for reloading and saving configs in the background.
+     * <p>
+     * On Java 21 and later, this runs every task in its own virtual thread by
+     * default, so that many configs can block on I/O at once without
+     * occupying the common pool, unless {@link #setVirtualThreadsEnabled(boolean) disabled}.
+     * Otherwise, this is {@link ForkJoinPool#commonPool()}.
+     *
+     * @return The executor
+     */
+    public static @NotNull Executor reloadExecutor() {
+        Executor executor = reloadExecutor;
+        return executor != null ? executor : WatcherThreads.taskExecutor(virtualThreadsEnabled);
+    }
+
+    /**
+     * Sets whether virtual threads are used on Java 21 and later, by the
+     * default {@link #reloadExecutor() reload executor} and by
+     * {@link FileWatcher#create() file watchers}. This has no effect on
+     * older versions.
+     * <p>
+     * Only file watchers that are created afterwards are affected. An executor
+     * set with {@link #setReloadExecutor(Executor)} is used either way.
+     *
+     * @param enabled Whether to use virtual threads
+     */
+    public static void setVirtualThreadsEnabled(boolean enabled) {
+        Specs.virtualThreadsEnabled = enabled;
+    }
+
+    /**
+     * Tests whether virtual threads are used on Java 21 and later. This is
+     * enabled by default.
+     *
+     * @return if virtual threads are used
+     * @see #setVirtualThreadsEnabled(boolean)
+     */
+    public static boolean isVirtualThreadsEnabled() {
+        return virtualThreadsEnabled;
+    }
+
+    /**
+     * Sets whether specs that are loaded from files are cached in a binary
+     * form next to their file.
+     * <p>
+     * When enabled, every successful reload writes the decoded spec to a file
+     * with {@code .cache} appended to the config file name. Later loads read the
+     * cache instead of parsing the file, as long as the file and the spec have
+     * not changed since. Specs loaded from the cache are decoded without
+     * keeping the parsed data, like {@link CommentedConfiguration#setStreaming(boolean) streaming}
+     * loads.
+     *
+     * @param enabled Whether to cache specs
+     */
+    public static void setBinaryCacheEnabled(boolean enabled) {
+        Specs.binaryCacheEnabled = enabled;
+    }
+
+    /**
+     * Tests whether specs that are loaded from files are cached in a binary
+     * form. This is disabled by default.
+     *
+     * @return if the binary cache is enabled
+     * @see #setBinaryCacheEnabled(boolean)
+     */
+    public static boolean isBinaryCacheEnabled() {
+        return binaryCacheEnabled;
+    }
+
     /**
      * Tests whether the given class is a spec interface or not
      *
@@ -134,16 +264,48 @@ public final class Specs {
      */
     public static @NotNull <T> T setupHotReloading(@NotNull Class<T> type,
         @NotNull Path path, @NotNull FileWatcher fileWatcher) throws IOException {
-        var config = fromFile(type, path);
-        SpecProxy<T> proxy = (SpecProxy<T>) Proxy.getInvocationHandler(config);
-        fileWatcher.listenToFile(path, watchEvent -> {
-            proxy.getOnReload().run();
-        });
+        var ref = reference(type, CommentedConfiguration.from(DataSocket.fromPath(path)));
+        ref.reload();
+        fileWatcher.listenToFile(path, watchEvent -> ref.reload());
 
-        return config;
+        return ref.get();
     }
 
 
+    /**
+     * Generates a config spec from the specified file and subscribes it to
+     * updates of config file.
+     * <p>
+     * Updates are reloaded with {@link SpecReference#reloadAsync(Executor)}: the
+     * file is parsed and decoded in the background, and the new content, along
+     * with the {@link revxrsal.spec.annotation.Reload @Reload} methods of the
+     * spec, is applied on the given executor. If the file cannot be parsed or
+     * fails validation, the current content is kept and the error is passed
+     * to {@code onFailure}.
+     *
+     * @param type The interface type
+     * @param path The config file
+     * @param fileWatcher FileWatcher that will reload config
+     * @param applyExecutor The executor that applies the new content
+     * @param onFailure Invoked with the error when an update fails to load
+     * @return The newly created config spec.
+     * @param <T> The type
+     * @throws IOException if fileWatcher fails to subscribe to file updates
+     */
+    public static @NotNull <T> T setupHotReloading(@NotNull Class<T> type,
+        @NotNull Path path, @NotNull FileWatcher fileWatcher, @NotNull Executor applyExecutor,
+        @NotNull Consumer<Throwable> onFailure) throws IOException {
+        var ref = reference(type, CommentedConfiguration.from(DataSocket.fromPath(path)));
+        ref.reload();
+        fileWatcher.listenToFile(path, watchEvent -> ref.reloadAsync(applyExecutor)
+            .whenComplete((value, error) -> {
+                if (error != null)
+                    onFailure.accept(error);
+            }));
+
+        return ref.get();
+    }
+
     /**
      * Generates a config spec from the specified file and subscribes it to
      * updates of config file.
@@ -185,6 +347,10 @@ public final class Specs {
      * <p>
      * Lists, maps, sets, arrays, and primitive types will be initialized to empty values.
      * Everything else will be null.
+     * <p>
+     * Default values are computed once per spec type and copied into every new instance.
+     * Default methods that return immutable values or collections are therefore only
+     * invoked once.
      *
      * @param interfaceType The spec interface
      * @param <T> The spec type
@@ -195,15 +361,21 @@ public final class Specs {
         if (!isConfigSpec(interfaceType)) {
             throw new IllegalArgumentException(interfaceType + " must be a spec class!");
         }
-        Map<String, Object> properties = new LinkedHashMap<>();
-        T proxy = MapProxy.generate(interfaceType, properties);
-        createDefaultMap(interfaceType, proxy, properties);
-        return proxy;
+        //noinspection unchecked
+        T instance = (T) newInstance(interfaceType);
+        createDefaultMap(interfaceType, instance, MapProxy.getInternalMap(instance));
+        return instance;
     }
 
     /**
      * Creates a spec with the given values from the map. Note that this method does not respect
      * default values, so it is the user's responsibility to guarantee those.
+     * <p>
+     * The spec is backed by the given map: it reads and writes its properties in it, so
+     * later changes to the map are reflected in the spec, and {@link #getInternalMap(Object)}
+     * returns the map itself. Such specs are always {@link SpecBackend#PROXY proxies},
+     * whatever the {@link #backend() backend} is, and changes made directly to the map
+     * do not invalidate {@link revxrsal.spec.annotation.Memoize memoized} values.
      *
      * @param interfaceType The spec interface
      * @param <T> The spec type
@@ -214,70 +386,91 @@ public final class Specs {
         @NotNull Class<T> interfaceType,
         @NotNull Map<String, Object> properties
     ) {
-        return MapProxy.generate(interfaceType, properties);
+        return MapProxy.backedBy(interfaceType, properties);
     }
 
     /**
      * Returns the internal map of the given spec. Modifying this map will immediately modify the
      * spec, so be careful with it!
+     * <p>
+     * Removing a property from the map sets it to null. Keys that are not properties
+     * of the spec can be put and removed, but the spec does not read them.
      *
      * @return The internal map
      */
     public static @NotNull Map<String, Object> getInternalMap(@NotNull Object configSpec) {
-        return MapProxy.getInternalMap(configSpec);
+        return MapProxy.getUnderlyingMap(configSpec);
     }
 
-    @SneakyThrows
+    /**
+     * Applies several changes to the given spec at once. See {@link #batch(Object, Consumer, boolean)}
+     *
+     * @param spec    The spec
+     * @param changes The changes to apply
+     * @param <T>     The spec type
+     */
+    public static <T> void batch(@NotNull T spec, @NotNull Consumer<? super T> changes) {
+        batch(spec, changes, false);
+    }
+
+    /**
+     * Applies several changes to the given spec at once.
+     * <p>
+     * The changes are made against a staging proxy, where setters only record
+     * the new value. Once they are done, the write hooks of every changed
+     * property are run, once per property, and if none of them fails, the
+     * changes are applied. Memoized results that read a changed property
+     * are invalidated after all the changes have been applied.
+     * <p>
+     * If the spec was created with {@link #fromFile(Class, Path)} or is a
+     * {@link SpecReference#get() reference}, the changes are applied to a copy,
+     * which is then published at once. See {@link SpecReference#batch(Consumer, boolean)}.
+     * Otherwise, they are applied to the spec directly, one property at a time.
+     * This is not atomic: other threads reading the spec meanwhile may see some
+     * of the changes without the others.
+     * <p>
+     * If the changes or the write hooks throw an exception, nothing is applied.
+     *
+     * @param spec    The spec
+     * @param changes The changes to apply
+     * @param save    Whether to save the config after applying the changes.
+     *                This requires the spec to be a reference
+     * @param <T>     The spec type
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static <T> void batch(@NotNull T spec, @NotNull Consumer<? super T> changes, boolean save) {
+        Objects.requireNonNull(spec, "spec cannot be null!");
+        Objects.requireNonNull(changes, "changes cannot be null!");
+        SpecReference reference = Batch.referenceOf(spec);
+        if (reference != null) {
+            reference.batch(changes, save);
+            return;
+        }
+        if (save)
+            throw new IllegalArgumentException("Only specs that are loaded from a config can be saved");
+        Class<T> type = (Class<T>) MapProxy.specType(spec);
+        Batch.stage(type, spec, changes).applyInPlace();
+    }
+
+    /**
+     * Fills the given spec with its default values. See {@link SpecDefaults}
+     */
     static <T> void createDefaultMap(@NotNull Class<T> interfaceType, T proxy,
-        @NotNull Map<String, Object> properties) {
-        SpecClass specClass = from(interfaceType);
-        for (SpecProperty value : specClass.properties().values()) {
-            if (value.isHandledByProxy()) {
-                continue;
-            }
-            if (value.hasDefault()) {
-                Method getter = value.getter();
-                MethodHandle getterHandle = MHLookup.privateLookupIn(interfaceType)
-                    .in(interfaceType)
-                    .unreflectSpecial(getter, interfaceType);
-                properties.put(value.key(), getterHandle.invoke(proxy));
-            } else {
-                Class<?> type = value.type();
-                if (isConfigSpec(type)) {
-                    Object v = createDefault(type);
-                    properties.put(value.key(), v);
-                } else if (type == List.class
-                    || type == Iterable.class
-                    || type == Collection.class
-                ) {
-                    properties.put(value.key(), new ArrayList<>());
-                } else if (type == Set.class) {
-                    properties.put(value.key(), new LinkedHashSet<>());
-                } else if (type == Map.class) {
-                    properties.put(value.key(), new LinkedHashMap<>());
-                } else if (type.isArray()) {
-                    Object array = Array.newInstance(type.getComponentType(), 0);
-                    properties.put(value.key(), array);
-                } else if (type == boolean.class) {
-                    properties.put(value.key(), false);
-                } else if (type == byte.class) {
-                    properties.put(value.key(), (byte) 0);
-                } else if (type == char.class) {
-                    properties.put(value.key(), '\u0000');
-                } else if (type == short.class) {
-                    properties.put(value.key(), (short) 0);
-                } else if (type == int.class) {
-                    properties.put(value.key(), 0);
-                } else if (type == long.class) {
-                    properties.put(value.key(), 0L);
-                } else if (type == float.class) {
-                    properties.put(value.key(), 0.0f);
-                } else if (type == double.class) {
-                    properties.put(value.key(), 0.0d);
-                } else {
-                    properties.put(value.key(), null);
-                }
-            }
+        @NotNull PropertyMap properties) {
+        from(interfaceType).defaults().fill(proxy, properties);
+    }
+
+    /**
+     * Creates a spec that has all of its properties unset, with the
+     * current backend
+     *
+     * @param interfaceType The spec interface
+     * @return The new instance
+     */
+    static @NotNull Object newInstance(@NotNull Class<?> interfaceType) {
+        if (backend == SpecBackend.GENERATED) {
+            return from(interfaceType).layout().newInstance();
         }
+        return MapProxy.generate(interfaceType);
     }
 }
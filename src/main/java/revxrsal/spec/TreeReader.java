@@ -0,0 +1,354 @@
+/*
+ * This file is part of Cream, licensed under the MIT License.
+ *
+ *  Copyright (c) Revxrsal <reflxction.github@gmail.com>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+package revxrsal.spec;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonToken;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * A {@link DataReader} that reads a tree of maps, lists and scalars, such as
+ * the one produced by SnakeYAML, instead of JSON text.
+ * <p>
+ * This lets Gson decode configurations directly from their loaded data,
+ * without writing it to a JSON string and parsing it again.
+ * <p>
+ * Scalars that are not strings, numbers or booleans (like dates) are converted
+ * with {@link Gson#toJsonTree(Object)}, so they are read the same way as
+ * they would be from JSON. Keys of maps are converted to strings.
+ */
+final class TreeReader extends DataReader {
+
+    private static final Object CLOSED = new Object();
+
+    private final Gson gson;
+
+    /**
+     * The values being read. Containers are followed by the iterator
+     * over their elements or entries.
+     */
+    private Object[] stack = new Object[32];
+    private int stackSize = 0;
+
+    /*
+     * The path of the reader. Names and indices are stored at the index
+     * of the iterator of their container.
+     */
+    private String[] pathNames = new String[32];
+    private int[] pathIndices = new int[32];
+
+    TreeReader(@NotNull Gson gson, @Nullable Object tree) {
+        this.gson = gson;
+        push(normalize(tree));
+    }
+
+    @Override
+    public void beginArray() throws IOException {
+        expect(JsonToken.BEGIN_ARRAY);
+        push(elements(peekStack()));
+        pathIndices[stackSize - 1] = 0;
+    }
+
+    @Override
+    public void endArray() throws IOException {
+        expect(JsonToken.END_ARRAY);
+        popStack(); // the iterator
+        popStack(); // the array
+        incrementIndex();
+    }
+
+    @Override
+    public void beginObject() throws IOException {
+        expect(JsonToken.BEGIN_OBJECT);
+        push(entries(peekStack()));
+    }
+
+    @Override
+    public void endObject() throws IOException {
+        expect(JsonToken.END_OBJECT);
+        pathNames[stackSize - 1] = null;
+        popStack(); // the iterator
+        popStack(); // the object
+        incrementIndex();
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        JsonToken token = peek();
+        return token != JsonToken.END_OBJECT && token != JsonToken.END_ARRAY && token != JsonToken.END_DOCUMENT;
+    }
+
+    @Override
+    public JsonToken peek() throws IOException {
+        if (stackSize == 0)
+            return JsonToken.END_DOCUMENT;
+        Object top = peekStack();
+        if (top instanceof ContainerIterator) {
+            ContainerIterator iterator = (ContainerIterator) top;
+            if (!iterator.hasNext())
+                return iterator.object ? JsonToken.END_OBJECT : JsonToken.END_ARRAY;
+            if (iterator.object)
+                return JsonToken.NAME;
+            push(normalize(iterator.next()));
+            return peek();
+        }
+        if (top == null)
+            return JsonToken.NULL;
+        if (top instanceof String)
+            return JsonToken.STRING;
+        if (top instanceof Number)
+            return JsonToken.NUMBER;
+        if (top instanceof Boolean)
+            return JsonToken.BOOLEAN;
+        if (top instanceof Map || top instanceof JsonObject)
+            return JsonToken.BEGIN_OBJECT;
+        if (top instanceof Iterable || top instanceof Object[])
+            return JsonToken.BEGIN_ARRAY;
+        if (top == CLOSED)
+            throw new IllegalStateException("JsonReader is closed");
+        throw new IllegalStateException("Unexpected value in tree: " + top.getClass().getName());
+    }
+
+    @Override
+    public String nextName() throws IOException {
+        expect(JsonToken.NAME);
+        Map.Entry<?, ?> entry = (Map.Entry<?, ?>) ((ContainerIterator) peekStack()).next();
+        String name = String.valueOf(entry.getKey());
+        pathNames[stackSize - 1] = name;
+        push(normalize(entry.getValue()));
+        return name;
+    }
+
+    @Override
+    void promoteNameToValue() throws IOException {
+        expect(JsonToken.NAME);
+        Map.Entry<?, ?> entry = (Map.Entry<?, ?>) ((ContainerIterator) peekStack()).next();
+        String name = String.valueOf(entry.getKey());
+        pathNames[stackSize - 1] = name;
+        push(normalize(entry.getValue()));
+        push(name);
+    }
+
+    @Override
+    public String nextString() throws IOException {
+        JsonToken token = peek();
+        if (token != JsonToken.STRING && token != JsonToken.NUMBER)
+            throw new IllegalStateException("Expected " + JsonToken.STRING + " but was " + token + locationString());
+        String result = popStack().toString();
+        incrementIndex();
+        return result;
+    }
+
+    @Override
+    public boolean nextBoolean() throws IOException {
+        expect(JsonToken.BOOLEAN);
+        boolean result = (Boolean) popStack();
+        incrementIndex();
+        return result;
+    }
+
+    @Override
+    public void nextNull() throws IOException {
+        expect(JsonToken.NULL);
+        popStack();
+        incrementIndex();
+    }
+
+    @Override
+    public double nextDouble() throws IOException {
+        double result = asDouble(peekNumber());
+        popStack();
+        incrementIndex();
+        return result;
+    }
+
+    @Override
+    public long nextLong() throws IOException {
+        long result = asLong(peekNumber());
+        popStack();
+        incrementIndex();
+        return result;
+    }
+
+    @Override
+    public int nextInt() throws IOException {
+        int result = asInt(peekNumber());
+        popStack();
+        incrementIndex();
+        return result;
+    }
+
+    @Override
+    public void skipValue() throws IOException {
+        switch (peek()) {
+            case NAME:
+                nextName();
+                pathNames[stackSize - 2] = "<skipped>";
+                break;
+            case END_ARRAY:
+                endArray();
+                break;
+            case END_OBJECT:
+                endObject();
+                break;
+            case END_DOCUMENT:
+                break;
+            default:
+                popStack();
+                incrementIndex();
+        }
+    }
+
+    @Override
+    public void close() {
+        stack = new Object[]{CLOSED};
+        stackSize = 1;
+    }
+
+    @Override
+    @NotNull List<Object> path() {
+        List<Object> path = new ArrayList<>();
+        for (int i = 0; i < stackSize; i++) {
+            if (!(stack[i] instanceof ContainerIterator))
+                continue;
+            if (((ContainerIterator) stack[i]).object) {
+                if (pathNames[i] != null)
+                    path.add(pathNames[i]);
+            } else {
+                path.add(pathIndices[i]);
+            }
+        }
+        return path;
+    }
+
+    private void expect(@NotNull JsonToken expected) throws IOException {
+        JsonToken token = peek();
+        if (token != expected)
+            throw new IllegalStateException("Expected " + expected + " but was " + token + locationString());
+    }
+
+    private Object peekNumber() throws IOException {
+        JsonToken token = peek();
+        if (token != JsonToken.NUMBER && token != JsonToken.STRING)
+            throw new IllegalStateException("Expected " + JsonToken.NUMBER + " but was " + token + locationString());
+        return peekStack();
+    }
+
+    private Object peekStack() {
+        return stack[stackSize - 1];
+    }
+
+    private Object popStack() {
+        Object result = stack[--stackSize];
+        stack[stackSize] = null;
+        return result;
+    }
+
+    private void push(Object value) {
+        if (stackSize == stack.length) {
+            int newLength = stackSize * 2;
+            stack = Arrays.copyOf(stack, newLength);
+            pathIndices = Arrays.copyOf(pathIndices, newLength);
+            pathNames = Arrays.copyOf(pathNames, newLength);
+        }
+        stack[stackSize++] = value;
+    }
+
+    private void incrementIndex() {
+        if (stackSize > 0)
+            pathIndices[stackSize - 1]++;
+    }
+
+    /**
+     * Converts the given value to one of the types that {@link #peek()} understands
+     */
+    private Object normalize(Object value) {
+        if (value instanceof JsonElement)
+            return normalize((JsonElement) value);
+        if (value == null || value instanceof String || value instanceof Number || value instanceof Boolean
+                || value instanceof Map || value instanceof Iterable || value instanceof Object[])
+            return value;
+        if (value instanceof Character)
+            return value.toString();
+        return normalize(gson.toJsonTree(value));
+    }
+
+    private static Object normalize(@NotNull JsonElement element) {
+        if (element instanceof JsonNull)
+            return null;
+        if (element instanceof JsonPrimitive) {
+            JsonPrimitive primitive = (JsonPrimitive) element;
+            if (primitive.isBoolean())
+                return primitive.getAsBoolean();
+            if (primitive.isNumber())
+                return primitive.getAsNumber();
+            return primitive.getAsString();
+        }
+        return element;
+    }
+
+    private static @NotNull ContainerIterator elements(@NotNull Object array) {
+        if (array instanceof Object[])
+            return new ContainerIterator(Arrays.asList((Object[]) array).iterator(), false);
+        return new ContainerIterator(((Iterable<?>) array).iterator(), false);
+    }
+
+    private static @NotNull ContainerIterator entries(@NotNull Object object) {
+        if (object instanceof JsonObject)
+            return new ContainerIterator(((JsonObject) object).entrySet().iterator(), true);
+        return new ContainerIterator(((Map<?, ?>) object).entrySet().iterator(), true);
+    }
+
+    /**
+     * An iterator over the elements of an array, or the entries of an object
+     */
+    private static final class ContainerIterator implements Iterator<Object> {
+
+        private final Iterator<?> iterator;
+        private final boolean object;
+
+        private ContainerIterator(@NotNull Iterator<?> iterator, boolean object) {
+            this.iterator = iterator;
+            this.object = object;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return iterator.hasNext();
+        }
+
+        @Override
+        public Object next() {
+            return iterator.next();
+        }
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ * This file is part of Cream, licensed under the MIT License.
+ *
+ *  Copyright (c) Revxrsal <reflxction.github@gmail.com>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+package revxrsal.spec;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonWriter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+
+/**
+ * A {@link JsonWriter} that builds a tree of {@link LinkedHashMap}s,
+ * {@link ArrayList}s and scalars, which SnakeYAML can dump as-is.
+ * <p>
+ * This is the counterpart of {@link TreeReader}, and lets Gson encode
+ * configurations directly into their data, without writing them to a
+ * JSON string and parsing it again.
+ * <p>
+ * Integral numbers are stored as {@link Integer}s when they fit, and
+ * {@link Long}s otherwise, like SnakeYAML does when loading.
+ */
+final class TreeWriter extends JsonWriter {
+
+    private static final Writer UNWRITABLE = new Writer() {
+        @Override
+        public void write(char @NotNull [] buffer, int offset, int count) {
+            throw new AssertionError();
+        }
+
+        @Override
+        public void flush() {
+            throw new AssertionError();
+        }
+
+        @Override
+        public void close() {
+            throw new AssertionError();
+        }
+    };
+
+    /**
+     * The containers being written. The last one is the innermost
+     */
+    private final List<Object> stack = new ArrayList<>();
+
+    /**
+     * The name of the next value of the innermost object. Null if
+     * the next value is not in an object
+     */
+    private @Nullable String pendingName;
+
+    private @Nullable Object result;
+    private boolean written;
+
+    TreeWriter() {
+        super(UNWRITABLE);
+    }
+
+    /**
+     * Returns the written value
+     *
+     * @return The written value
+     */
+    @Nullable Object get() {
+        if (!stack.isEmpty() || !written)
+            throw new IllegalStateException("Expected one complete value but the document is incomplete");
+        return result;
+    }
+
+    @Override
+    public JsonWriter beginArray() {
+        List<Object> array = new ArrayList<>();
+        put(array);
+        stack.add(array);
+        return this;
+    }
+
+    @Override
+    public JsonWriter endArray() {
+        if (stack.isEmpty() || pendingName != null || !(peek() instanceof List))
+            throw new IllegalStateException("Not in an array");
+        stack.remove(stack.size() - 1);
+        return this;
+    }
+
+    @Override
+    public JsonWriter beginObject() {
+        Map<String, Object> object = new LinkedHashMap<>();
+        put(object);
+        stack.add(object);
+        return this;
+    }
+
+    @Override
+    public JsonWriter endObject() {
+        if (stack.isEmpty() || pendingName != null || !(peek() instanceof Map))
+            throw new IllegalStateException("Not in an object");
+        stack.remove(stack.size() - 1);
+        return this;
+    }
+
+    @Override
+    public JsonWriter name(@NotNull String name) {
+        Objects.requireNonNull(name, "name == null");
+        if (stack.isEmpty() || pendingName != null || !(peek() instanceof Map))
+            throw new IllegalStateException("Did not expect a name");
+        pendingName = name;
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(@Nullable String value) {
+        if (value == null)
+            return nullValue();
+        put(value);
+        return this;
+    }
+
+    @Override
+    public JsonWriter jsonValue(@Nullable String value) {
+        if (value == null)
+            return nullValue();
+        put(fromElement(JsonParser.parseString(value)));
+        return this;
+    }
+
+    @Override
+    public JsonWriter nullValue() {
+        if (pendingName != null && !getSerializeNulls()) {
+            // Omit the property, like JsonWriter does
+            pendingName = null;
+            return this;
+        }
+        put(null);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(boolean value) {
+        put(value);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(@Nullable Boolean value) {
+        if (value == null)
+            return nullValue();
+        put(value);
+        return this;
+    }
+
+    // Not an override on older versions of Gson
+    public JsonWriter value(float value) {
+        checkFinite(value);
+        put(value);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(double value) {
+        checkFinite(value);
+        put(value);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(long value) {
+        put(integral(value));
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(@Nullable Number value) {
+        if (value == null)
+            return nullValue();
+        put(number(value));
+        return this;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+        if (!stack.isEmpty())
+            throw new IllegalStateException("Incomplete document");
+    }
+
+    private Object peek() {
+        return stack.get(stack.size() - 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void put(@Nullable Object value) {
+        if (stack.isEmpty()) {
+            if (written)
+                throw new IllegalStateException("JSON must have only one top-level value.");
+            result = value;
+            written = true;
+            return;
+        }
+        Object container = peek();
+        if (container instanceof List) {
+            ((List<Object>) container).add(value);
+        } else {
+            if (pendingName == null)
+                throw new IllegalStateException("Expected a name before the value");
+            ((Map<String, Object>) container).put(pendingName, value);
+            pendingName = null;
+        }
+    }
+
+    private void checkFinite(double value) {
+        if (!isLenient() && (Double.isNaN(value) || Double.isInfinite(value)))
+            throw new IllegalArgumentException("Numeric values must be finite, but was " + value);
+    }
+
+    private static @NotNull Object integral(long value) {
+        if (value == (int) value)
+            return (int) value;
+        return value;
+    }
+
+    /**
+     * Converts the given number to a type that SnakeYAML can represent
+     */
+    private @NotNull Object number(@NotNull Number value) {
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte)
+            return integral(value.longValue());
+        if (value instanceof Double || value instanceof Float) {
+            checkFinite(value.doubleValue());
+            return value;
+        }
+        if (value instanceof BigInteger || value instanceof BigDecimal)
+            return value;
+        // Other numbers, like Gson's lazily parsed ones, are read from their text
+        String text = value.toString();
+        try {
+            return integral(Long.parseLong(text));
+        } catch (NumberFormatException e) {
+            double asDouble = Double.parseDouble(text);
+            checkFinite(asDouble);
+            return asDouble;
+        }
+    }
+
+    private @Nullable Object fromElement(@NotNull JsonElement element) {
+        if (element.isJsonNull())
+            return null;
+        if (element.isJsonObject()) {
+            Map<String, Object> object = new LinkedHashMap<>();
+            for (Map.Entry<String, JsonElement> entry : ((JsonObject) element).entrySet())
+                object.put(entry.getKey(), fromElement(entry.getValue()));
+            return object;
+        }
+        if (element.isJsonArray()) {
+            List<Object> array = new ArrayList<>();
+            for (JsonElement child : (JsonArray) element)
+                array.add(fromElement(child));
+            return array;
+        }
+        JsonPrimitive primitive = (JsonPrimitive) element;
+        if (primitive.isBoolean())
+            return primitive.getAsBoolean();
+        if (primitive.isNumber())
+            return number(primitive.getAsNumber());
+        return primitive.getAsString();
+    }
+}
@@ -43,6 +43,23 @@ final class Util {
     private Util() {
     }
 
+    /**
+     * Throws the given exception, bypassing the compiler's checks for
+     * checked exceptions.
+     *
+     * @param t The exception to throw
+     * @return Nothing. This is only for allowing {@code throw sneakyThrow(t)}
+     */
+    public static RuntimeException sneakyThrow(Throwable t) {
+        if (t == null) throw new NullPointerException("t");
+        return sneakyThrow0(t);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends Throwable> T sneakyThrow0(Throwable t) throws T {
+        throw (T) t;
+    }
+
     /**
      * Returns the {@link Class} object representing the class or interface
      * that declared this type.
@@ -253,6 +270,9 @@ final class Util {
 
     @SneakyThrows
     public static List<Object> getJsonPath(JsonReader reader) {
+      if (reader instanceof DataReader) {
+        return ((DataReader) reader).path();
+      }
       int[] stack = (int[]) stackF.get(reader);
       int stackSize = (int) stackSizeF.get(reader);
       String[] pathNames = (String[]) pathNameF.get(reader);
@@ -0,0 +1,78 @@
+/*
+ * This file is part of Cream, licensed under the MIT License.
+ *
+ *  Copyright (c) Revxrsal <reflxction.github@gmail.com>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+package revxrsal.spec;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The default threads of {@link FileWatcher}, and of reloads and saves
+ * that run in the background (see {@link Specs#reloadExecutor()}).
+ * <p>
+ * This is the Java 11 implementation, which watches on a daemon platform
+ * thread and runs tasks in the common pool. Java 21+ replaces it with
+ * an implementation that uses virtual threads (see {@code src/main/java21}).
+ */
+final class WatcherThreads {
+
+    private static final ThreadFactory WATCHER_FACTORY = new ThreadFactory() {
+        private final AtomicInteger counter = new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(@NotNull Runnable r) {
+            Thread t = new Thread(r);
+            t.setDaemon(true);
+            t.setName("FileWatcher-Thread-" + counter.getAndIncrement());
+            return t;
+        }
+    };
+
+    private WatcherThreads() {
+    }
+
+    /**
+     * Returns the factory of the threads that poll the watch service
+     *
+     * @param virtual Whether to use virtual threads. Ignored before Java 21
+     * @return The thread factory
+     */
+    static @NotNull ThreadFactory watcherFactory(boolean virtual) {
+        return WATCHER_FACTORY;
+    }
+
+    /**
+     * Returns the executor that runs the callbacks of file events, and
+     * background reloads and saves
+     *
+     * @param virtual Whether to use virtual threads. Ignored before Java 21
+     * @return The executor
+     */
+    static @NotNull Executor taskExecutor(boolean virtual) {
+        return ForkJoinPool.commonPool();
+    }
+}
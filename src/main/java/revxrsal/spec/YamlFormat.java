@@ -0,0 +1,147 @@
+/*
+ * This file is part of Cream, licensed under the MIT License.
+ *
+ *  Copyright (c) Revxrsal <reflxction.github@gmail.com>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+package revxrsal.spec;
+
+import com.google.gson.stream.JsonToken;
+import org.jetbrains.annotations.NotNull;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.events.Event;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.util.*;
+
+import static revxrsal.spec.CommentedConfiguration.NEW_LINE;
+
+/**
+ * The {@link ConfigFormat#YAML YAML} format, which uses SnakeYAML.
+ * <p>
+ * Comments are inserted by dumping the data, and then adding comments
+ * to the lines of the keys they belong to with
+ * {@link CommentedConfiguration#handleEvents(Iterator, List)}.
+ */
+final class YamlFormat implements ConfigFormat {
+
+    static final YamlFormat INSTANCE = new YamlFormat();
+
+    private YamlFormat() {
+    }
+
+    @Override
+    public @NotNull Map<String, Object> read(@NotNull CommentedConfiguration config, @NotNull Reader reader) throws IOException {
+        Yaml yaml = config.borrowYaml();
+        try (BufferedReader buffered = new BufferedReader(reader)) {
+            Map<String, Object> data = yaml.load(buffered);
+            return data == null ? new LinkedHashMap<>() : data;
+        } finally {
+            config.releaseYaml(yaml);
+        }
+    }
+
+    /**
+     * Decodes the content from the events of the parser, with {@link EventReader}.
+     * Content that needs the whole tree, such as merge keys, is loaded as a tree
+     * instead. The content is read once, and kept as text until it is decoded,
+     * so that it does not have to be read again in that case.
+     */
+    @Override
+    public <T> T readAs(@NotNull CommentedConfiguration config, @NotNull Reader reader, @NotNull Type type) throws IOException {
+        String content = readFully(reader);
+        Yaml yaml = config.borrowYaml();
+        try {
+            EventReader events = new EventReader(config.gson, yaml.parse(new StringReader(content)));
+            JsonToken first = events.peek();
+            if (first == JsonToken.END_DOCUMENT || first == JsonToken.NULL)
+                return config.getAs(new LinkedHashMap<>(), type);
+            return config.gson.fromJson(events, type);
+        } catch (RuntimeException e) {
+            if (!EventReader.isUnsupported(e))
+                throw e;
+        } finally {
+            config.releaseYaml(yaml);
+        }
+        return config.getAs(read(config, new StringReader(content)), type);
+    }
+
+    private static @NotNull String readFully(@NotNull Reader reader) throws IOException {
+        try (Reader r = reader) {
+            StringBuilder content = new StringBuilder();
+            char[] buffer = new char[8192];
+            int read;
+            while ((read = r.read(buffer)) != -1)
+                content.append(buffer, 0, read);
+            return content.toString();
+        }
+    }
+
+    @Override
+    public void write(@NotNull CommentedConfiguration config, @NotNull Writer writer) throws IOException {
+        Yaml yaml = config.borrowYaml();
+        try (BufferedWriter buffered = new BufferedWriter(writer)) {
+            write(config, yaml, buffered);
+        } finally {
+            config.releaseYaml(yaml);
+        }
+    }
+
+    private void write(@NotNull CommentedConfiguration config, @NotNull Yaml yaml, @NotNull BufferedWriter writer) throws IOException {
+        if (config.configComments.isEmpty()) {
+            yaml.dump(config.data, writer);
+            return;
+        }
+        String simpleDump = yaml.dump(config.data);
+        String[] split = NEW_LINE.split(simpleDump);
+        List<String> lines = new ArrayList<>(split.length);
+        Collections.addAll(lines, split);
+        StringReader reader = new StringReader(simpleDump);
+        Iterable<Event> events = yaml.parse(reader);
+        config.handleEvents(events.iterator(), lines); // terribly inefficient way but I can't care less lol
+        if (!lines.isEmpty()) {
+            String first = lines.get(0);
+            if (Character.isWhitespace(first.charAt(0))) {
+                lines.set(0, first.substring(1));
+            }
+        }
+        List<String> headers = config.headers;
+        for (int i = 0; i < headers.size(); i++) {
+            String l = headers.get(i);
+            if (l.startsWith("#"))
+                lines.add(i, "#" + l);
+            else
+                lines.add(i, "# " + l);
+        }
+        if (!headers.isEmpty()) {
+            lines.add(headers.size(), "");
+        }
+        for (String line : lines) {
+            writer.append(line);
+            writer.newLine();
+        }
+    }
+}
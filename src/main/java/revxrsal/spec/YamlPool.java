@@ -0,0 +1,81 @@
+/*
+ * This file is part of Cream, licensed under the MIT License.
+ *
+ *  Copyright (c) Revxrsal <reflxction.github@gmail.com>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+package revxrsal.spec;
+
+import org.jetbrains.annotations.NotNull;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A bounded pool of {@link Yaml} instances, shared by all
+ * {@link CommentedConfiguration configurations} that were not given their own.
+ * <p>
+ * {@link Yaml} is not thread-safe, so every parse or dump borrows an
+ * instance for its duration. Borrowing never blocks: if the pool is empty,
+ * a new instance is created. At most {@link #CAPACITY} idle instances are
+ * kept, so the number of instances follows the number of concurrent
+ * parses, rather than the number of threads that have ever parsed.
+ */
+final class YamlPool {
+
+    /**
+     * The maximum number of idle instances
+     */
+    private static final int CAPACITY = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    private static final BlockingQueue<Yaml> IDLE = new ArrayBlockingQueue<>(CAPACITY);
+
+    private YamlPool() {
+    }
+
+    /**
+     * Borrows an instance from the pool. It must be returned with
+     * {@link #release(Yaml)} once it is no longer used.
+     *
+     * @return The instance
+     */
+    static @NotNull Yaml borrow() {
+        Yaml yaml = IDLE.poll();
+        return yaml != null ? yaml : create();
+    }
+
+    /**
+     * Returns an instance to the pool
+     *
+     * @param yaml The instance
+     */
+    static void release(@NotNull Yaml yaml) {
+        IDLE.offer(yaml);
+    }
+
+    private static @NotNull Yaml create() {
+        DumperOptions options = new DumperOptions();
+        CommentedConfiguration.setProcessComments(options, false);
+        options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+        return new Yaml(options);
+    }
+}
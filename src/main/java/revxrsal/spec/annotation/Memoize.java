@@ -4,6 +4,7 @@ import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
 
 /**
  * An annotation that allows to compute certain values and cache their result.
@@ -11,12 +12,25 @@ import java.lang.annotation.Target;
  * This is very useful for heavy, repetitive computations that depend
  * on the configuration values.
  * <p>
- * Note: {@link Memoize @Memoize} does not (yet) consider arguments
- * when caching values. Therefore, it is best to just use it to compute the
- * parts that depend on the configuration values
+ * Methods that take parameters cache one result for every distinct combination
+ * of arguments. Arguments are compared with {@link Object#equals(Object)},
+ * and arrays are compared by their contents. The number of cached results is
+ * bounded by {@link #maximumSize()}, and results are evicted according to
+ * {@link #eviction()}.
  * <p>
- * Reloading, resetting, or calling a setter will re-compute
- * all memoized values.
+ * Memoized values keep track of the properties they read, including the
+ * properties of nested specs and the values of other memoized methods. Calling
+ * a setter only re-computes the values that read the property. Reloading only
+ * re-computes the values that read properties which changed. Resetting
+ * re-computes all memoized values. Only the spec and the specs it contains
+ * are tracked: reading specs that are not part of it, such as specs kept in
+ * a static field, does not invalidate the value when they change.
+ * <p>
+ * Memoized values are computed lazily, by the first caller. {@link #eager() Eager}
+ * values are computed in the background when the config is reloaded, before the
+ * reloaded config becomes visible. Values that depend on something other than the
+ * config can be {@link #refreshAfter() refreshed} in the background periodically,
+ * or {@link #expireAfter() expire}.
  * <p>
  * Example:
  * <pre>{@code @ConfigSpec
@@ -58,9 +72,110 @@ import java.lang.annotation.Target;
  * 1000.0
  * 1000.0
  * </pre>
+ * <p>
+ * Methods with parameters:
+ * <pre>{@code @ConfigSpec
+ * public interface Levels {
+ *
+ *     default double baseDamage() {
+ *         return 2;
+ *     }
+ *
+ *     @Memoize(maximumSize = 100, eviction = Memoize.Eviction.LFU)
+ *     default double damageFor(int level) {
+ *         return baseDamage() * Math.pow(1.1, level);
+ *     }
+ * }}</pre>
  */
 @HandledByProxy
 @Target(ElementType.METHOD)
 @Retention(RetentionPolicy.RUNTIME)
 public @interface Memoize {
+
+    /**
+     * The maximum number of results cached for different arguments. When
+     * the limit is reached, a result is evicted according to {@link #eviction()}.
+     * <p>
+     * Zero or less means that the number of results is not bounded. This
+     * has no effect on methods that do not have parameters.
+     *
+     * @return The maximum number of cached results
+     */
+    int maximumSize() default 256;
+
+    /**
+     * The policy used for evicting results when there are more than
+     * {@link #maximumSize()} of them
+     *
+     * @return The eviction policy
+     */
+    Eviction eviction() default Eviction.LRU;
+
+    /**
+     * Whether cached results should be held by {@link java.lang.ref.SoftReference soft references},
+     * so that they can be garbage collected when memory is low. Collected results
+     * are computed again when they are requested.
+     *
+     * @return if results should be softly referenced
+     */
+    boolean softValues() default false;
+
+    /**
+     * Whether the value should be computed in the background when the config
+     * is reloaded, before the reloaded config is visible through its
+     * {@link revxrsal.spec.SpecReference}.
+     * <p>
+     * For methods with parameters, the results that were cached before the
+     * reload (and were invalidated by it) are computed again.
+     * <p>
+     * Values are computed on {@link revxrsal.spec.Specs#memoizeExecutor()}.
+     *
+     * @return if the value should be computed eagerly
+     */
+    boolean eager() default false;
+
+    /**
+     * The time after which the value is refreshed in the background. Until the
+     * new value is computed, callers still get the old one.
+     * <p>
+     * Zero or less means that the value is never refreshed. Values are refreshed
+     * on {@link revxrsal.spec.Specs#memoizeExecutor()}.
+     *
+     * @return The time after which the value is refreshed, in {@link #timeUnit()}
+     */
+    long refreshAfter() default 0;
+
+    /**
+     * The time after which the value expires. An expired value is computed
+     * again by the next caller.
+     * <p>
+     * Zero or less means that the value never expires.
+     *
+     * @return The time after which the value expires, in {@link #timeUnit()}
+     */
+    long expireAfter() default 0;
+
+    /**
+     * The unit of {@link #refreshAfter()} and {@link #expireAfter()}
+     *
+     * @return The time unit
+     */
+    TimeUnit timeUnit() default TimeUnit.SECONDS;
+
+    /**
+     * Policies for evicting memoized results
+     */
+    enum Eviction {
+
+        /**
+         * Evicts the least recently used result
+         */
+        LRU,
+
+        /**
+         * Evicts the least frequently used result. Between results that were
+         * used equally, the oldest one is evicted.
+         */
+        LFU
+    }
 }
@@ -0,0 +1,55 @@
+/*
+ * This file is part of Cream, licensed under the MIT License.
+ *
+ *  Copyright (c) Revxrsal <reflxction.github@gmail.com>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+package revxrsal.spec;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.invoke.MethodHandles.Lookup;
+
+/**
+ * Defines the classes generated by {@link SpecGenerator}.
+ * <p>
+ * This is the Java 16+ implementation, which defines hidden classes. Hidden
+ * classes are not registered in the class loader of the spec, so they can be
+ * unloaded as soon as their layout is unreachable, and they can't clash with
+ * other classes of the same name.
+ */
+final class ClassDefiner {
+
+    private ClassDefiner() {
+    }
+
+    /**
+     * Defines a hidden class in the same package as the lookup class
+     *
+     * @param lookup A private lookup in the package to define the class in
+     * @param bytes  The class bytes
+     * @return A private lookup in the defined class
+     * @throws IllegalAccessException if the lookup does not have access to
+     *                                define classes
+     */
+    static @NotNull Lookup define(@NotNull Lookup lookup, byte @NotNull [] bytes) throws IllegalAccessException {
+        return lookup.defineHiddenClass(bytes, true);
+    }
+}
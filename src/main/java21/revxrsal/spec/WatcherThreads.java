@@ -0,0 +1,79 @@
+/*
+ * This file is part of Cream, licensed under the MIT License.
+ *
+ *  Copyright (c) Revxrsal <reflxction.github@gmail.com>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+package revxrsal.spec;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The default threads of {@link FileWatcher}, and of reloads and saves
+ * that run in the background (see {@link Specs#reloadExecutor()}).
+ * <p>
+ * This is the Java 21+ implementation. The watch service is polled from a
+ * virtual thread, and every task runs in its own virtual thread, so
+ * tasks that block on I/O (like reloading a config) do not occupy
+ * the common pool. When virtual threads are disabled, this behaves like the
+ * Java 11 implementation.
+ */
+final class WatcherThreads {
+
+    private static final ThreadFactory WATCHER_FACTORY = Thread.ofVirtual().name("FileWatcher-Thread-", 0).factory();
+
+    private static final Executor TASK_EXECUTOR = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("FileWatcher-Task-", 0).factory()
+    );
+
+    private static final ThreadFactory PLATFORM_WATCHER_FACTORY = Thread.ofPlatform()
+            .daemon(true)
+            .name("FileWatcher-Thread-", 0)
+            .factory();
+
+    private WatcherThreads() {
+    }
+
+    /**
+     * Returns the factory of the threads that poll the watch service
+     *
+     * @param virtual Whether to use virtual threads
+     * @return The thread factory
+     */
+    static @NotNull ThreadFactory watcherFactory(boolean virtual) {
+        return virtual ? WATCHER_FACTORY : PLATFORM_WATCHER_FACTORY;
+    }
+
+    /**
+     * Returns the executor that runs the callbacks of file events, and
+     * background reloads and saves
+     *
+     * @param virtual Whether to use virtual threads
+     * @return The executor
+     */
+    static @NotNull Executor taskExecutor(boolean virtual) {
+        return virtual ? TASK_EXECUTOR : ForkJoinPool.commonPool();
+    }
+}
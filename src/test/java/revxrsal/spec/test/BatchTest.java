@@ -0,0 +1,114 @@
+package revxrsal.spec.test;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import revxrsal.spec.CommentedConfiguration;
+import revxrsal.spec.DataSocket;
+import revxrsal.spec.SpecBackend;
+import revxrsal.spec.SpecReference;
+import revxrsal.spec.Specs;
+import revxrsal.spec.annotation.ConfigSpec;
+import revxrsal.spec.annotation.HandledByProxy;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BatchTest {
+
+    @HandledByProxy
+    @Retention(RetentionPolicy.RUNTIME)
+    public @interface Transient {
+    }
+
+    @ConfigSpec
+    public interface Arena {
+
+        default int capacity() {
+            return 16;
+        }
+
+        void setCapacity(int capacity);
+
+        @Transient
+        String note();
+
+        void setNote(String note);
+
+        Bounds bounds();
+    }
+
+    @ConfigSpec
+    public interface Bounds {
+
+        default int radius() {
+            return 8;
+        }
+
+        void setRadius(int radius);
+    }
+
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void resetBackend() {
+        Specs.setBackend(SpecBackend.PROXY);
+    }
+
+    private SpecReference<Arena> reference() {
+        return Specs.reference(Arena.class, CommentedConfiguration.from(DataSocket.fromPath(directory.resolve("arena.yml"))));
+    }
+
+    @ParameterizedTest
+    @EnumSource(SpecBackend.class)
+    void changesAreStagedUntilTheyAreApplied(SpecBackend backend) {
+        Specs.setBackend(backend);
+        Arena arena = Specs.createDefault(Arena.class);
+        Specs.batch(arena, staged -> {
+            staged.setCapacity(4);
+            staged.setNote("staged");
+            staged.bounds().setRadius(2);
+            assertEquals(4, staged.capacity());
+            assertEquals("staged", staged.note());
+            assertEquals(2, staged.bounds().radius());
+            assertEquals(16, arena.capacity());
+            assertNull(arena.note());
+            assertEquals(8, arena.bounds().radius());
+        });
+        assertEquals(4, arena.capacity());
+        assertEquals("staged", arena.note());
+        assertEquals(2, arena.bounds().radius());
+    }
+
+    @ParameterizedTest
+    @EnumSource(SpecBackend.class)
+    void copiesUseTheBackendOfTheValue(SpecBackend backend) {
+        Specs.setBackend(backend);
+        SpecReference<Arena> reference = reference();
+        Arena old = Specs.createDefault(Arena.class);
+        old.setNote("kept");
+        reference.set(old);
+        Specs.setBackend(backend == SpecBackend.PERSISTENT ? SpecBackend.PROXY : SpecBackend.PERSISTENT);
+
+        reference.batch(staged -> staged.setCapacity(4), false);
+        Arena arena = reference.get();
+        assertEquals(16, old.capacity());
+        assertEquals(4, arena.capacity());
+        assertEquals("kept", arena.note());
+
+        // Only snapshots of persistent values are unaffected by later changes
+        Arena snapshot = reference.snapshot();
+        arena.setCapacity(5);
+        assertEquals(backend == SpecBackend.PERSISTENT ? 4 : 5, snapshot.capacity());
+
+        reference.batch(staged -> staged.setNote("changed"), false);
+        assertEquals("changed", arena.note());
+        assertEquals("kept", old.note());
+        assertEquals(5, arena.capacity());
+    }
+}
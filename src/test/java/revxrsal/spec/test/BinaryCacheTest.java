@@ -0,0 +1,198 @@
+package revxrsal.spec.test;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import revxrsal.spec.CommentedConfiguration;
+import revxrsal.spec.DataSocket;
+import revxrsal.spec.SpecReference;
+import revxrsal.spec.Specs;
+import revxrsal.spec.annotation.ConfigSpec;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BinaryCacheTest {
+
+    private static final FileTime STALE = FileTime.fromMillis(0);
+
+    @ConfigSpec
+    public interface Zone {
+
+        default String name() {
+            return "zone";
+        }
+
+        int level();
+
+        double ratio();
+
+        long big();
+
+        List<String> tags();
+
+        Map<String, Bounds> areas();
+
+        Bounds bounds();
+    }
+
+    @ConfigSpec
+    public interface ZoneWithOwner {
+
+        default String name() {
+            return "zone";
+        }
+
+        default String owner() {
+            return "nobody";
+        }
+
+        int level();
+    }
+
+    @ConfigSpec
+    public interface Bounds {
+
+        default int radius() {
+            return 1;
+        }
+    }
+
+    @TempDir
+    Path directory;
+
+    private Path file;
+    private Path cache;
+
+    @BeforeEach
+    void enableCache() {
+        Specs.setBinaryCacheEnabled(true);
+        file = directory.resolve("zone.yml");
+        cache = directory.resolve("zone.yml.cache");
+    }
+
+    @AfterEach
+    void disableCache() {
+        Specs.setBinaryCacheEnabled(false);
+    }
+
+    private <T> T load(Class<T> type) {
+        SpecReference<T> reference = Specs.reference(type, CommentedConfiguration.from(DataSocket.fromPath(file)));
+        reference.reload();
+        return reference.get();
+    }
+
+    /**
+     * Loads the config, and tells whether it was read from the cache. The
+     * cache is only rewritten when it could not be used.
+     */
+    private boolean loadedFromCache() throws IOException {
+        Files.setLastModifiedTime(cache, STALE);
+        load(Zone.class);
+        return Files.getLastModifiedTime(cache).equals(STALE);
+    }
+
+    private void write(String content) throws IOException {
+        Files.write(file, content.getBytes());
+    }
+
+    @Test
+    void cachedSpecsAreDecodedLikeTheConfig() throws IOException {
+        write("name: spawn\n"
+                + "level: 3\n"
+                + "ratio: 1.5\n"
+                + "big: 12345678901234\n"
+                + "tags: [a, b]\n"
+                + "areas:\n"
+                + "  a: {radius: 4}\n"
+                + "  b: {}\n"
+                + "bounds: {radius: 5}\n"
+                + "unknown: {deep: [1, {x: 2}]}\n");
+        Zone parsed = load(Zone.class);
+        assertTrue(Files.exists(cache));
+        assertTrue(loadedFromCache());
+
+        Zone cached = load(Zone.class);
+        assertEquals(parsed.toString(), cached.toString());
+        assertEquals("spawn", cached.name());
+        assertEquals(3, cached.level());
+        assertEquals(1.5, cached.ratio());
+        assertEquals(12345678901234L, cached.big());
+        assertEquals(Arrays.asList("a", "b"), cached.tags());
+        assertEquals(4, cached.areas().get("a").radius());
+        assertEquals(1, cached.areas().get("b").radius());
+        assertEquals(5, cached.bounds().radius());
+    }
+
+    @Test
+    void sizeChangesInvalidateTheCache() throws IOException {
+        write("level: 3\n");
+        load(Zone.class);
+        FileTime modified = Files.getLastModifiedTime(file);
+        write("level: 30\n");
+        Files.setLastModifiedTime(file, modified);
+        assertFalse(loadedFromCache());
+        assertEquals(30, load(Zone.class).level());
+    }
+
+    @Test
+    void contentChangesInvalidateTheCache() throws IOException {
+        write("level: 3\n");
+        load(Zone.class);
+        FileTime modified = Files.getLastModifiedTime(file);
+        write("level: 4\n");
+        Files.setLastModifiedTime(file, modified);
+        assertFalse(loadedFromCache());
+        assertEquals(4, load(Zone.class).level());
+    }
+
+    @Test
+    void modificationTimeChangesInvalidateTheCache() throws IOException {
+        write("level: 3\n");
+        load(Zone.class);
+        assertTrue(loadedFromCache());
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() - 10_000));
+        assertFalse(loadedFromCache());
+        assertTrue(loadedFromCache());
+    }
+
+    @Test
+    void schemaChangesInvalidateTheCache() throws IOException {
+        write("level: 3\nowner: steve\n");
+        load(Zone.class);
+        Files.setLastModifiedTime(cache, STALE);
+        ZoneWithOwner zone = load(ZoneWithOwner.class);
+        assertNotEquals(STALE, Files.getLastModifiedTime(cache));
+        assertEquals("steve", zone.owner());
+        assertEquals(3, zone.level());
+    }
+
+    @Test
+    void unreadableCachesAreIgnored() throws IOException {
+        write("level: 3\n");
+        load(Zone.class);
+        Files.write(cache, Arrays.copyOf(Files.readAllBytes(cache), 40));
+        assertFalse(loadedFromCache());
+        assertEquals(3, load(Zone.class).level());
+
+        Files.write(cache, new byte[0]);
+        assertFalse(loadedFromCache());
+        assertTrue(loadedFromCache());
+    }
+
+    @Test
+    void nothingIsCachedWhenDisabled() throws IOException {
+        Specs.setBinaryCacheEnabled(false);
+        write("level: 3\n");
+        assertEquals(3, load(Zone.class).level());
+        assertFalse(Files.exists(cache));
+    }
+}
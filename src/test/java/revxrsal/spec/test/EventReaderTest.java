@@ -0,0 +1,193 @@
+package revxrsal.spec.test;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import revxrsal.spec.CommentedConfiguration;
+import revxrsal.spec.DataSocket;
+import revxrsal.spec.SpecSerializationException;
+import revxrsal.spec.annotation.ConfigSpec;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EventReaderTest {
+
+    @ConfigSpec
+    public interface Zone {
+
+        default String name() {
+            return "zone";
+        }
+
+        int level();
+
+        List<Integer> ids();
+
+        Map<String, Bounds> areas();
+
+        Bounds bounds();
+    }
+
+    @ConfigSpec
+    public interface Bounds {
+
+        default int radius() {
+            return 1;
+        }
+
+        default List<String> tags() {
+            return Collections.singletonList("default");
+        }
+    }
+
+    @TempDir
+    Path directory;
+
+    private CommentedConfiguration config(String content) throws IOException {
+        Path file = directory.resolve("zone.yml");
+        Files.write(file, content.getBytes());
+        return CommentedConfiguration.from(DataSocket.fromPath(file));
+    }
+
+    /**
+     * Decodes the content as it is parsed, and checks that it gives the
+     * same spec as decoding the whole tree
+     */
+    private Zone decode(String content) throws IOException {
+        CommentedConfiguration config = config(content);
+        config.setStreaming(true);
+        Zone streamed = config.readAs(Zone.class);
+        Zone tree = config.getAs(config.read(), Zone.class);
+        assertEquals(tree, streamed);
+        return streamed;
+    }
+
+    private List<Object> errorPath(String content) throws IOException {
+        CommentedConfiguration config = config(content);
+        config.setStreaming(true);
+        Throwable streamed = assertThrows(Exception.class, () -> config.readAs(Zone.class));
+        Throwable tree = assertThrows(Exception.class, () -> config.getAs(config.read(), Zone.class));
+        List<Object> path = pathOf(streamed);
+        assertEquals(pathOf(tree), path);
+        return path;
+    }
+
+    private static List<Object> pathOf(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SpecSerializationException)
+                return ((SpecSerializationException) cause).getPath();
+        }
+        throw new AssertionError("no path in " + error, error);
+    }
+
+    @Test
+    void documentsAreDecodedLikeTrees() throws IOException {
+        Zone zone = decode("name: spawn\n"
+                + "level: 3\n"
+                + "ids: [1, 2, 3]\n"
+                + "areas:\n"
+                + "  a: {radius: 4, tags: [x, y]}\n"
+                + "  b: {}\n"
+                + "bounds:\n"
+                + "  radius: 5\n");
+        assertEquals("spawn", zone.name());
+        assertEquals(3, zone.level());
+        assertEquals(Arrays.asList(1, 2, 3), zone.ids());
+        assertEquals(Arrays.asList("x", "y"), zone.areas().get("a").tags());
+        assertEquals(1, zone.areas().get("b").radius());
+        assertEquals(5, zone.bounds().radius());
+    }
+
+    @Test
+    void emptyDocumentsAreDecodedAsDefaults() throws IOException {
+        assertEquals("zone", decode("").name());
+        assertEquals("zone", decode("# only a comment\n").name());
+    }
+
+    @Test
+    void unknownKeysAreSkipped() throws IOException {
+        Zone zone = decode("unknown:\n"
+                + "  deep: [1, {x: [2, 3]}, {y: {z: 4}}]\n"
+                + "level: 2\n"
+                + "other: [[], {}]\n"
+                + "bounds: {radius: 6, extra: {a: 1}}\n");
+        assertEquals(2, zone.level());
+        assertEquals(6, zone.bounds().radius());
+    }
+
+    @Test
+    void aliasesAreDecodedLikeTheirAnchors() throws IOException {
+        Zone zone = decode("areas:\n"
+                + "  a: &shared {radius: 7, tags: &tags [t]}\n"
+                + "  b: *shared\n"
+                + "bounds: *shared\n"
+                + "ids: &ids [1, 2]\n");
+        assertEquals(7, zone.areas().get("b").radius());
+        assertEquals(7, zone.bounds().radius());
+        assertEquals(Collections.singletonList("t"), zone.bounds().tags());
+        assertNotSame(zone.areas().get("a"), zone.bounds());
+    }
+
+    @Test
+    void anchorsInSkippedKeysCanBeUsed() throws IOException {
+        Zone zone = decode("unknown: &base {radius: 8}\n"
+                + "level: &level 9\n"
+                + "bounds: *base\n"
+                + "ids: [*level]\n");
+        assertEquals(8, zone.bounds().radius());
+        assertEquals(Collections.singletonList(9), zone.ids());
+    }
+
+    @Test
+    void mergeKeysFallBackToTheTree() throws IOException {
+        Zone zone = decode("base: &base {radius: 2, tags: [b]}\n"
+                + "bounds:\n"
+                + "  <<: *base\n"
+                + "  radius: 3\n");
+        assertEquals(3, zone.bounds().radius());
+        assertEquals(Collections.singletonList("b"), zone.bounds().tags());
+    }
+
+    @Test
+    void mergeKeysFallBackWithoutReadingAgain() {
+        String content = "base: &base {radius: 2}\n"
+                + "bounds:\n"
+                + "  <<: *base\n";
+        AtomicInteger opened = new AtomicInteger();
+        CommentedConfiguration config = CommentedConfiguration.from(DataSocket.readOnly(() -> {
+            if (opened.incrementAndGet() > 1)
+                throw new IOException("the content can only be read once");
+            return new StringReader(content);
+        }));
+        Zone zone = config.readAs(Zone.class);
+        assertEquals(2, zone.bounds().radius());
+        assertEquals(1, opened.get());
+    }
+
+    @Test
+    void errorsHaveThePathOfTheValue() throws IOException {
+        assertEquals(Collections.singletonList("level"), errorPath("level: abc\n"));
+        assertEquals(Arrays.asList("ids", 1), errorPath("ids: [1, x]\n"));
+        assertEquals(Arrays.asList("areas", "a", "radius"), errorPath("areas:\n  a:\n    radius: [1]\n"));
+        assertEquals(Arrays.asList("bounds", "tags"), errorPath("unknown: {x: 1}\nbounds: {tags: {a: 1}}\n"));
+    }
+
+    @Test
+    void malformedDocumentsAreRejected() throws IOException {
+        CommentedConfiguration config = config("level: [1\n");
+        config.setStreaming(true);
+        assertThrows(Exception.class, () -> config.readAs(Zone.class));
+        CommentedConfiguration list = config("- 1\n- 2\n");
+        list.setStreaming(true);
+        assertThrows(Exception.class, () -> list.readAs(Zone.class));
+    }
+}
@@ -0,0 +1,59 @@
+package revxrsal.spec.test;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import revxrsal.spec.FileWatcher;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FileWatcherTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void burstsOfChangesAreDispatchedOnce() throws Exception {
+        Path file = directory.resolve("config.yml");
+        Files.write(file, "a: 0\n".getBytes());
+        AtomicInteger events = new AtomicInteger();
+        CountDownLatch first = new CountDownLatch(1);
+        try (FileWatcher watcher = FileWatcher.create()) {
+            watcher.listenToFile(file, event -> {
+                events.incrementAndGet();
+                first.countDown();
+            });
+            for (int i = 1; i <= 5; i++)
+                Files.write(file, ("a: " + i + "\n").getBytes());
+            assertTrue(first.await(10, TimeUnit.SECONDS));
+            // Give any extra event the time to arrive
+            Thread.sleep(300);
+        }
+        assertEquals(1, events.get());
+    }
+
+    @Test
+    void otherFilesAreNotDispatched() throws Exception {
+        Path file = directory.resolve("config.yml");
+        Path other = directory.resolve("other.yml");
+        AtomicInteger events = new AtomicInteger();
+        CountDownLatch first = new CountDownLatch(1);
+        try (FileWatcher watcher = FileWatcher.create()) {
+            watcher.listenToFile(file, event -> {
+                events.incrementAndGet();
+                first.countDown();
+            });
+            Files.write(other, "b: 1\n".getBytes());
+            Files.write(file, "a: 1\n".getBytes());
+            assertTrue(first.await(10, TimeUnit.SECONDS));
+            Thread.sleep(300);
+        }
+        assertEquals(1, events.get());
+    }
+}
@@ -0,0 +1,39 @@
+package revxrsal.spec.test;
+
+import revxrsal.spec.SpecBackend;
+import revxrsal.spec.Specs;
+
+/**
+ * A rough benchmark for the cost of calling getters on specs. Run with
+ * the backend to test as an argument (defaults to {@link SpecBackend#PROXY}).
+ */
+public class GetterBenchmark {
+
+    private static final int ITERATIONS = 10_000_000;
+    private static final int ROUNDS = 10;
+
+    public static void main(String[] args) {
+        if (args.length > 0)
+            Specs.setBackend(SpecBackend.valueOf(args[0]));
+        // Alternate between two instances so the JIT cannot hoist the reads out of the loop
+        ServerConfig[] configs = {
+                Specs.createDefault(ServerConfig.class),
+                Specs.createDefault(ServerConfig.class)
+        };
+
+        long sink = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                ServerConfig config = configs[i & 1];
+                sink += config.maxPlayers();
+                sink += config.numbers().chunkRadius();
+                sink += config.motd().length();
+            }
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("%s round %d: %.2f ns/getter%n",
+                    Specs.backend(), round, elapsed / (ITERATIONS * 4.0));
+        }
+        System.out.println(sink);
+    }
+}
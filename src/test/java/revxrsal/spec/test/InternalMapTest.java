@@ -0,0 +1,116 @@
+package revxrsal.spec.test;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import revxrsal.spec.CommentedConfiguration;
+import revxrsal.spec.SpecBackend;
+import revxrsal.spec.Specs;
+import revxrsal.spec.annotation.ConfigSpec;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InternalMapTest {
+
+    @ConfigSpec
+    public interface Player {
+
+        default String name() {
+            return "steve";
+        }
+
+        void setName(String name);
+
+        default Integer level() {
+            return 1;
+        }
+
+        void setLevel(Integer level);
+    }
+
+    @ConfigSpec
+    public interface Server {
+
+        default int port() {
+            return 25565;
+        }
+
+        default long seed() {
+            return 0;
+        }
+
+        default double ratio() {
+            return 1;
+        }
+    }
+
+    @AfterEach
+    void resetBackend() {
+        Specs.setBackend(SpecBackend.PROXY);
+    }
+
+    @ParameterizedTest
+    @EnumSource(SpecBackend.class)
+    void unsafeSpecsAreBackedByTheGivenMap(SpecBackend backend) {
+        Specs.setBackend(backend);
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("name", "alex");
+        Player player = Specs.createUnsafe(Player.class, properties);
+        assertEquals("alex", player.name());
+        assertNull(player.level());
+
+        properties.put("level", 5);
+        assertEquals(Integer.valueOf(5), player.level());
+        player.setName("notch");
+        assertEquals("notch", properties.get("name"));
+        assertSame(properties, Specs.getInternalMap(player));
+    }
+
+    @ParameterizedTest
+    @EnumSource(SpecBackend.class)
+    void internalMapsAcceptUnknownKeysAndRemovals(SpecBackend backend) {
+        Specs.setBackend(backend);
+        Player player = Specs.createDefault(Player.class);
+        Map<String, Object> map = Specs.getInternalMap(player);
+        assertEquals(2, map.size());
+
+        assertNull(map.put("unknown", true));
+        assertEquals(true, map.get("unknown"));
+        assertTrue(map.containsKey("unknown"));
+        assertEquals(3, map.size());
+        assertEquals(true, map.remove("unknown"));
+        assertFalse(map.containsKey("unknown"));
+
+        assertEquals("steve", map.remove("name"));
+        assertNull(player.name());
+        map.put("name", "alex");
+        assertEquals("alex", player.name());
+    }
+
+    @Test
+    void clearingAnInternalMapClearsEveryProperty() {
+        Player player = Specs.createDefault(Player.class);
+        Map<String, Object> map = Specs.getInternalMap(player);
+        map.put("unknown", 1);
+        map.clear();
+        assertNull(player.name());
+        assertNull(player.level());
+        assertFalse(map.containsKey("unknown"));
+    }
+
+    @ParameterizedTest
+    @EnumSource(SpecBackend.class)
+    void primitivePropertiesAreWrittenFromAnyNumber(SpecBackend backend) {
+        Specs.setBackend(backend);
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("port", 8080L);
+        properties.put("seed", 42);
+        properties.put("ratio", 2);
+        Server server = Specs.createUnsafe(Server.class, properties);
+        assertEquals("{\"port\":8080,\"seed\":42,\"ratio\":2.0}", CommentedConfiguration.GSON.toJson(server, Server.class));
+    }
+}
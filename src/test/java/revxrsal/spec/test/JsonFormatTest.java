@@ -0,0 +1,130 @@
+package revxrsal.spec.test;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import revxrsal.spec.ArrayCommentStyle;
+import revxrsal.spec.CommentedConfiguration;
+import revxrsal.spec.ConfigFormat;
+import revxrsal.spec.DataSocket;
+import revxrsal.spec.SpecReference;
+import revxrsal.spec.Specs;
+import revxrsal.spec.annotation.ConfigSpec;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JsonFormatTest {
+
+    @ConfigSpec
+    public interface Settings {
+
+        default int count() {
+            return 1;
+        }
+
+        void setCount(int count);
+
+        default double ratio() {
+            return 0.5;
+        }
+
+        void setRatio(double ratio);
+    }
+
+    @TempDir
+    Path directory;
+
+    private static CommentedConfiguration config(Path file) {
+        return CommentedConfiguration.from(DataSocket.fromPath(file, ConfigFormat.JSON));
+    }
+
+    @Test
+    void specsAreWrittenAndReadBack() throws IOException {
+        Path file = directory.resolve("settings.json");
+        SpecReference<Settings> reference = Specs.reference(Settings.class, config(file));
+        reference.reload();
+        reference.get().setCount(3);
+        reference.save();
+        assertEquals("{\"count\":3,\"ratio\":0.5}", new String(Files.readAllBytes(file)));
+
+        Files.write(file, "{\"count\": 5, \"unknown\": [1, {\"a\": null}], \"ratio\": 2}".getBytes());
+        reference.reload();
+        assertEquals(5, reference.get().count());
+        assertEquals(2.0, reference.get().ratio());
+    }
+
+    @Test
+    void streamingReadsAreAsStrictAsTreeReads() throws IOException {
+        Path file = directory.resolve("settings.json");
+        String[] malformed = {
+                "{count: 2}",
+                "{\"count\": 2} {\"count\": 3}",
+                "{\"count\": 2} // comment",
+                "[1, 2]"
+        };
+        for (String content : malformed) {
+            Files.write(file, content.getBytes());
+            CommentedConfiguration config = config(file);
+            assertTrue(config.isStreaming());
+            assertThrows(Exception.class, () -> config.readAs(Settings.class), content);
+            assertThrows(Exception.class, config::read, content);
+        }
+    }
+
+    @Test
+    void emptyFilesAreReadAsDefaults() throws IOException {
+        Path file = directory.resolve("settings.json");
+        Files.write(file, new byte[0]);
+        Settings settings = config(file).readAs(Settings.class);
+        assertEquals(1, settings.count());
+        assertTrue(config(file).read().isEmpty());
+    }
+
+    @Test
+    void failedSavesLeaveTheFileUntouched() throws IOException {
+        Path file = directory.resolve("settings.json");
+        Files.write(file, "{\"count\": 4}".getBytes());
+        CommentedConfiguration config = config(file);
+        Settings settings = config.readAs(Settings.class);
+        settings.setRatio(Double.NaN);
+        assertThrows(Exception.class, () -> config.save(settings, Settings.class));
+        assertEquals("{\"count\": 4}", new String(Files.readAllBytes(file)));
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.count(), "the temporary file was not deleted");
+        }
+
+        settings.setRatio(1);
+        config.save(settings, Settings.class);
+        Settings saved = config.readAs(Settings.class);
+        assertEquals(4, saved.count());
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    void theFormatIsNeverGuessedFromTheExtension() throws IOException {
+        Path file = directory.resolve("settings.json");
+        Files.write(file, "count: 6\n".getBytes());
+        DataSocket socket = DataSocket.fromPath(file);
+        assertSame(ConfigFormat.YAML, socket.format());
+        Settings settings = CommentedConfiguration.from(socket).readAs(Settings.class);
+        assertEquals(6, settings.count());
+        assertSame(ConfigFormat.JSON, socket.withFormat(ConfigFormat.JSON).format());
+    }
+
+    @Test
+    void subclassesCanUseTheirYaml() {
+        DataSocket socket = DataSocket.fromPath(directory.resolve("settings.yml"));
+        new CommentedConfiguration(socket, CommentedConfiguration.GSON, ArrayCommentStyle.COMMENT_FIRST_ELEMENT) {
+            {
+                assertEquals("a: 1\n", yaml.dump(Collections.singletonMap("a", 1)));
+            }
+        };
+    }
+}
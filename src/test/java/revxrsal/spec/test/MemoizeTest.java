@@ -0,0 +1,342 @@
+package revxrsal.spec.test;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import revxrsal.spec.CommentedConfiguration;
+import revxrsal.spec.DataSocket;
+import revxrsal.spec.SpecBackend;
+import revxrsal.spec.SpecReference;
+import revxrsal.spec.Specs;
+import revxrsal.spec.annotation.ConfigSpec;
+import revxrsal.spec.annotation.Memoize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class MemoizeTest {
+
+    static final AtomicInteger DOUBLED = new AtomicInteger();
+    static final AtomicInteger QUADRUPLED = new AtomicInteger();
+    static final AtomicInteger TITLE = new AtomicInteger();
+    static final AtomicInteger WEIGHT = new AtomicInteger();
+    static final AtomicInteger SCALED = new AtomicInteger();
+    static final AtomicInteger SUM = new AtomicInteger();
+    static final AtomicInteger LABEL = new AtomicInteger();
+    static final AtomicInteger VOLUME = new AtomicInteger();
+
+    @TempDir
+    Path directory;
+
+    @ConfigSpec
+    public interface Shop {
+
+        default int price() {
+            return 10;
+        }
+
+        void setPrice(int price);
+
+        default String name() {
+            return "shop";
+        }
+
+        void setName(String name);
+
+        Item item();
+
+        @Memoize
+        default int doubled() {
+            DOUBLED.incrementAndGet();
+            return price() * 2;
+        }
+
+        @Memoize
+        default int quadrupled() {
+            QUADRUPLED.incrementAndGet();
+            return doubled() * 2;
+        }
+
+        @Memoize
+        default String title() {
+            TITLE.incrementAndGet();
+            return name().toUpperCase();
+        }
+
+        @Memoize
+        default int totalWeight() {
+            WEIGHT.incrementAndGet();
+            return item().weight() * 3;
+        }
+
+        @Memoize(maximumSize = 4)
+        default int scaled(int factor) {
+            SCALED.incrementAndGet();
+            return price() * factor;
+        }
+
+        @Memoize
+        default int sum(int[] values) {
+            SUM.incrementAndGet();
+            int sum = price();
+            for (int value : values)
+                sum += value;
+            return sum;
+        }
+
+        @Memoize
+        default String label(String prefix, int times) {
+            LABEL.incrementAndGet();
+            return prefix + name() + times;
+        }
+    }
+
+    @ConfigSpec
+    public interface Item {
+
+        default int weight() {
+            return 1;
+        }
+
+        void setWeight(int weight);
+    }
+
+    @ConfigSpec
+    public interface Crate {
+
+        List<Box> boxes();
+
+        void setBoxes(List<Box> boxes);
+
+        @Memoize
+        default int volume() {
+            VOLUME.incrementAndGet();
+            int volume = 0;
+            for (Box box : boxes())
+                volume += box.size();
+            return volume;
+        }
+    }
+
+    @ConfigSpec
+    public interface Box {
+
+        default int size() {
+            return 2;
+        }
+
+        void setSize(int size);
+    }
+
+    @BeforeEach
+    void resetCounters() {
+        DOUBLED.set(0);
+        QUADRUPLED.set(0);
+        TITLE.set(0);
+        WEIGHT.set(0);
+        SCALED.set(0);
+        SUM.set(0);
+        LABEL.set(0);
+        VOLUME.set(0);
+    }
+
+    @AfterEach
+    void resetBackend() {
+        Specs.setBackend(SpecBackend.PROXY);
+    }
+
+    @ParameterizedTest
+    @EnumSource(SpecBackend.class)
+    void resultsAreCachedUntilAPropertyTheyReadChanges(SpecBackend backend) {
+        Specs.setBackend(backend);
+        Shop shop = Specs.createDefault(Shop.class);
+        assertEquals(20, shop.doubled());
+        assertEquals(20, shop.doubled());
+        assertEquals(1, DOUBLED.get());
+
+        shop.setName("other");
+        assertEquals(20, shop.doubled());
+        assertEquals(1, DOUBLED.get(), "changing an unrelated property invalidated the result");
+
+        shop.setPrice(7);
+        assertEquals(14, shop.doubled());
+        assertEquals(2, DOUBLED.get());
+    }
+
+    @ParameterizedTest
+    @EnumSource(SpecBackend.class)
+    void resultsThatUseInvalidatedResultsAreInvalidated(SpecBackend backend) {
+        Specs.setBackend(backend);
+        Shop shop = Specs.createDefault(Shop.class);
+        assertEquals(40, shop.quadrupled());
+        assertEquals("SHOP", shop.title());
+
+        shop.setPrice(5);
+        assertEquals(20, shop.quadrupled());
+        assertEquals(2, QUADRUPLED.get());
+        assertEquals(2, DOUBLED.get());
+        assertEquals("SHOP", shop.title());
+        assertEquals(1, TITLE.get());
+    }
+
+    @ParameterizedTest
+    @EnumSource(SpecBackend.class)
+    void nestedSpecChangesInvalidateResults(SpecBackend backend) {
+        Specs.setBackend(backend);
+        Shop shop = Specs.createDefault(Shop.class);
+        assertEquals(3, shop.totalWeight());
+        shop.item().setWeight(4);
+        assertEquals(12, shop.totalWeight());
+        assertEquals(2, WEIGHT.get());
+        shop.setPrice(1);
+        assertEquals(12, shop.totalWeight());
+        assertEquals(2, WEIGHT.get());
+    }
+
+    @ParameterizedTest
+    @EnumSource(SpecBackend.class)
+    void evictedResultsAreStillInvalidatedOnceCachedAgain(SpecBackend backend) {
+        Specs.setBackend(backend);
+        Shop shop = Specs.createDefault(Shop.class);
+        for (int round = 0; round < 3; round++) {
+            for (int factor = 0; factor < 10; factor++)
+                assertEquals(shop.price() * factor, shop.scaled(factor));
+            shop.setPrice(shop.price() + 1);
+            assertEquals(shop.price() * 9, shop.scaled(9));
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(SpecBackend.class)
+    void resultsAreCachedByTheirArguments(SpecBackend backend) {
+        Specs.setBackend(backend);
+        Shop shop = Specs.createDefault(Shop.class);
+        assertEquals("a-shop1", shop.label("a-", 1));
+        assertEquals("a-shop1", shop.label("a-", 1));
+        assertEquals("a-shop2", shop.label("a-", 2));
+        assertEquals("b-shop1", shop.label("b-", 1));
+        assertEquals(3, LABEL.get());
+
+        shop.setName("mall");
+        assertEquals("a-mall1", shop.label("a-", 1));
+        assertEquals(4, LABEL.get());
+    }
+
+    @ParameterizedTest
+    @EnumSource(SpecBackend.class)
+    void arrayArgumentsAreComparedByContent(SpecBackend backend) {
+        Specs.setBackend(backend);
+        Shop shop = Specs.createDefault(Shop.class);
+        int[] values = {1, 2, 3};
+        assertEquals(16, shop.sum(values));
+        assertEquals(16, shop.sum(new int[]{1, 2, 3}));
+        assertEquals(1, SUM.get());
+
+        // Changing the array must not change the cached key
+        values[0] = 5;
+        assertEquals(20, shop.sum(values));
+        assertEquals(16, shop.sum(new int[]{1, 2, 3}));
+        assertEquals(2, SUM.get());
+    }
+
+    @ParameterizedTest
+    @EnumSource(SpecBackend.class)
+    void concurrentComputationsNeverCacheStaleResults(SpecBackend backend) throws Exception {
+        Specs.setBackend(backend);
+        Shop shop = Specs.createDefault(Shop.class);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 2_000; i++) {
+                        shop.scaled(i % 8);
+                        shop.quadrupled();
+                    }
+                }));
+            }
+            for (int price = 0; price < 200; price++)
+                shop.setPrice(price);
+            for (Future<?> future : futures)
+                future.get();
+        } finally {
+            executor.shutdown();
+        }
+        for (int factor = 0; factor < 8; factor++)
+            assertEquals(199 * factor, shop.scaled(factor));
+        assertEquals(199 * 4, shop.quadrupled());
+    }
+
+    @ParameterizedTest
+    @EnumSource(SpecBackend.class)
+    void reloadsKeepResultsThatReadUnchangedProperties(SpecBackend backend) throws IOException {
+        Specs.setBackend(backend);
+        Path file = directory.resolve("shop.yml");
+        Files.write(file, "price: 10\nname: shop\nitem:\n  weight: 2\n".getBytes());
+        SpecReference<Shop> reference = Specs.reference(Shop.class, CommentedConfiguration.from(DataSocket.fromPath(file)));
+        reference.reload();
+        Shop shop = reference.get();
+        assertEquals(40, shop.quadrupled());
+        assertEquals("SHOP", shop.title());
+        assertEquals(6, shop.totalWeight());
+        assertEquals(30, shop.scaled(3));
+
+        Files.write(file, "price: 10\nname: mall\nitem:\n  weight: 2\n".getBytes());
+        reference.reload();
+        assertEquals(40, shop.quadrupled());
+        assertEquals(6, shop.totalWeight());
+        assertEquals(30, shop.scaled(3));
+        assertEquals("MALL", shop.title());
+        assertEquals(1, QUADRUPLED.get());
+        assertEquals(1, DOUBLED.get());
+        assertEquals(1, WEIGHT.get());
+        assertEquals(1, SCALED.get());
+        assertEquals(2, TITLE.get());
+
+        Files.write(file, "price: 5\nname: mall\nitem:\n  weight: 3\n".getBytes());
+        reference.reload();
+        assertEquals(20, shop.quadrupled());
+        assertEquals(9, shop.totalWeight());
+        assertEquals(15, shop.scaled(3));
+        assertEquals("MALL", shop.title());
+        assertEquals(2, QUADRUPLED.get());
+        assertEquals(2, WEIGHT.get());
+        assertEquals(2, TITLE.get());
+
+        // Copied results are still invalidated by the new value
+        shop.setPrice(1);
+        assertEquals(4, shop.quadrupled());
+        shop.item().setWeight(1);
+        assertEquals(3, shop.totalWeight());
+    }
+
+    @ParameterizedTest
+    @EnumSource(SpecBackend.class)
+    void specsInCollectionsInvalidateResults(SpecBackend backend) {
+        Specs.setBackend(backend);
+        Box box = Specs.createDefault(Box.class);
+        // Read before any result depends on it
+        assertEquals(2, box.size());
+        Crate crate = Specs.createDefault(Crate.class);
+        crate.setBoxes(Arrays.asList(box, Specs.createDefault(Box.class)));
+        assertEquals(4, crate.volume());
+        assertEquals(4, crate.volume());
+        assertEquals(1, VOLUME.get());
+
+        box.setSize(5);
+        assertEquals(7, crate.volume());
+        assertEquals(2, VOLUME.get());
+    }
+}
@@ -0,0 +1,56 @@
+package revxrsal.spec.test;
+
+import org.junit.jupiter.api.Test;
+import revxrsal.spec.Specs;
+import revxrsal.spec.annotation.ConfigSpec;
+import revxrsal.spec.annotation.Order;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class OrderTest {
+
+    @ConfigSpec
+    public interface Settings {
+
+        @Order(2)
+        default int cooldown() {
+            return 20;
+        }
+
+        @Order(1)
+        default String message() {
+            return "wait";
+        }
+
+        @Order(1)
+        default boolean enabled() {
+            return true;
+        }
+
+        default String zone() {
+            return "spawn";
+        }
+
+        void setZone(String zone);
+
+        default String alias() {
+            return "a";
+        }
+    }
+
+    @Test
+    void propertiesAreSortedByOrder() {
+        Settings settings = Specs.createDefault(Settings.class);
+        List<String> keys = new ArrayList<>(Specs.getInternalMap(settings).keySet());
+        assertEquals(5, keys.size());
+        // Methods with the same order are not sorted any further
+        assertEquals(new HashSet<>(Arrays.asList("alias", "zone")), new HashSet<>(keys.subList(0, 2)));
+        assertEquals(new HashSet<>(Arrays.asList("enabled", "message")), new HashSet<>(keys.subList(2, 4)));
+        assertEquals("cooldown", keys.get(4));
+    }
+}
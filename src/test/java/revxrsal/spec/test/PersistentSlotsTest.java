@@ -0,0 +1,182 @@
+package revxrsal.spec.test;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import revxrsal.spec.CommentedConfiguration;
+import revxrsal.spec.DataSocket;
+import revxrsal.spec.SpecBackend;
+import revxrsal.spec.SpecReference;
+import revxrsal.spec.Specs;
+import revxrsal.spec.annotation.ConfigSpec;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PersistentSlotsTest {
+
+    /**
+     * Has enough properties that every write copies a large array
+     */
+    @ConfigSpec
+    public interface Wide {
+
+        int p00();
+
+        int p01();
+
+        int p02();
+
+        int p03();
+
+        int p04();
+
+        int p05();
+
+        int p06();
+
+        int p07();
+
+        int p08();
+
+        int p09();
+
+        int p10();
+
+        int p11();
+
+        int p12();
+
+        int p13();
+
+        int p14();
+
+        int p15();
+
+        int p16();
+
+        int p17();
+
+        int p18();
+
+        int p19();
+
+        int p20();
+
+        int p21();
+
+        int p22();
+
+        int p23();
+
+        int p24();
+
+        int p25();
+
+        int p26();
+
+        int p27();
+
+        int p28();
+
+        int p29();
+
+        int p30();
+
+        int p31();
+
+        int p32();
+
+        int p33();
+
+        int p34();
+
+        int p35();
+
+        int p36();
+
+        int p37();
+
+        int p38();
+
+        int p39();
+
+        void setP03(int value);
+
+        void setP35(int value);
+    }
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    void usePersistentBackend() {
+        Specs.setBackend(SpecBackend.PERSISTENT);
+    }
+
+    @AfterEach
+    void resetBackend() {
+        Specs.setBackend(SpecBackend.PROXY);
+    }
+
+    private static int get(Wide wide, int slot) {
+        try {
+            return (int) Wide.class.getMethod(String.format("p%02d", slot)).invoke(wide);
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    @Test
+    void collidingSlotsKeepTheirOwnValues() {
+        Wide wide = Specs.createDefault(Wide.class);
+        Map<String, Object> map = Specs.getInternalMap(wide);
+        for (int slot = 39; slot >= 0; slot--)
+            map.put(String.format("p%02d", slot), slot * 10);
+        for (int slot = 0; slot < 40; slot++)
+            assertEquals(slot * 10, get(wide, slot), "p" + slot);
+
+        wide.setP03(-1);
+        wide.setP35(-2);
+        assertEquals(-1, wide.p03());
+        assertEquals(-2, wide.p35());
+        for (int slot = 0; slot < 40; slot++) {
+            if (slot != 3 && slot != 35)
+                assertEquals(slot * 10, get(wide, slot), "p" + slot);
+        }
+        assertEquals(40, map.size());
+    }
+
+    @Test
+    void unsetSlotsReadAsNull() {
+        Wide wide = Specs.createDefault(Wide.class);
+        Map<String, Object> map = Specs.getInternalMap(wide);
+        map.put("p01", null);
+        map.put("p33", 5);
+        assertNull(map.get("p01"));
+        assertEquals(5, map.get("p33"));
+        assertEquals(0, map.get("p00"));
+    }
+
+    @Test
+    void snapshotsAreNotAffectedByLaterWrites() throws IOException {
+        Path file = directory.resolve("wide.yml");
+        Files.write(file, "p03: 3\np35: 35\n".getBytes());
+        SpecReference<Wide> reference = Specs.reference(Wide.class, CommentedConfiguration.from(DataSocket.fromPath(file)));
+        reference.reload();
+        Wide snapshot = reference.snapshot();
+
+        reference.get().setP03(30);
+        reference.get().setP35(350);
+        assertEquals(3, snapshot.p03());
+        assertEquals(35, snapshot.p35());
+        assertEquals(30, reference.get().p03());
+        assertEquals(350, reference.get().p35());
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.setP35(0));
+    }
+}
@@ -0,0 +1,217 @@
+package revxrsal.spec.test;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import revxrsal.spec.CommentedConfiguration;
+import revxrsal.spec.DataSocket;
+import revxrsal.spec.SpecReference;
+import revxrsal.spec.Specs;
+import revxrsal.spec.annotation.ConfigSpec;
+import revxrsal.spec.annotation.Reload;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReloadTest {
+
+    @ConfigSpec
+    public interface Counter {
+
+        default int count() {
+            return 0;
+        }
+
+        void setCount(int count);
+    }
+
+    static final AtomicInteger RELOADED = new AtomicInteger();
+
+    @ConfigSpec
+    public interface Notified {
+
+        default int count() {
+            return 0;
+        }
+
+        @Reload
+        default void onReload() {
+            RELOADED.incrementAndGet();
+        }
+    }
+
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void resetReloadExecutor() {
+        Specs.setReloadExecutor(ForkJoinPool.commonPool());
+    }
+
+    private SpecReference<Counter> reference(Path file) {
+        return Specs.reference(Counter.class, CommentedConfiguration.from(DataSocket.fromPath(file)));
+    }
+
+    private static void write(Path file, int count) throws IOException {
+        Files.write(file, ("count: " + count + "\n").getBytes());
+    }
+
+    @Test
+    void failedReloadsKeepTheCurrentValue() throws IOException {
+        Path file = directory.resolve("counter.yml");
+        write(file, 1);
+        SpecReference<Counter> reference = reference(file);
+        reference.reload();
+        Counter before = reference.get();
+
+        Files.write(file, "count: [\n".getBytes());
+        assertThrows(Exception.class, reference::reload);
+        assertEquals(1, reference.get().count());
+        assertSame(before, reference.get());
+
+        CompletableFuture<Counter> failed = reference.reloadAsync(Runnable::run);
+        assertThrows(Exception.class, failed::join);
+        assertEquals(1, reference.get().count());
+
+        write(file, 2);
+        reference.reload();
+        assertEquals(2, reference.get().count());
+    }
+
+    @Test
+    void reloadMethodsRunAfterEverySuccessfulReload() throws IOException {
+        RELOADED.set(0);
+        Path file = directory.resolve("counter.yml");
+        write(file, 1);
+        SpecReference<Notified> reference = Specs.reference(Notified.class, CommentedConfiguration.from(DataSocket.fromPath(file)));
+        for (int i = 0; i < 3; i++)
+            reference.reloadAsync(Runnable::run).join();
+        assertEquals(3, RELOADED.get());
+
+        Files.write(file, "count: [\n".getBytes());
+        assertThrows(Exception.class, () -> reference.reloadAsync(Runnable::run).join());
+        assertEquals(3, RELOADED.get());
+    }
+
+    @Test
+    void reloadsRequestedWhileReadingReadAgain() throws IOException {
+        Specs.setReloadExecutor(Runnable::run);
+        Path file = directory.resolve("counter.yml");
+        write(file, 1);
+        SpecReference<Counter> reference = reference(file);
+        Deque<Runnable> applies = new ArrayDeque<>();
+        Executor later = applies::add;
+
+        // Reads right away, and waits for the applies to be run
+        CompletableFuture<Counter> first = reference.reloadAsync(later);
+        write(file, 2);
+        CompletableFuture<Counter> second = reference.reloadAsync(later);
+        assertNotSame(first, second);
+        assertEquals(2, applies.size());
+
+        // Publish them out of order. The older value must not win
+        applies.removeLast().run();
+        applies.removeLast().run();
+        assertEquals(2, second.join().count());
+        assertEquals(2, first.join().count());
+        assertEquals(2, reference.get().count());
+    }
+
+    @Test
+    void queuedReloadsAreCoalesced() throws IOException {
+        List<Runnable> stages = new ArrayList<>();
+        Specs.setReloadExecutor(stages::add);
+        Path file = directory.resolve("counter.yml");
+        write(file, 3);
+        SpecReference<Counter> reference = reference(file);
+        Executor direct = Runnable::run;
+
+        CompletableFuture<Counter> first = reference.reloadAsync(direct);
+        CompletableFuture<Counter> second = reference.reloadAsync(direct);
+        assertSame(first, second);
+        assertEquals(1, stages.size());
+        stages.get(0).run();
+        assertEquals(3, first.join().count());
+    }
+
+    @Test
+    void synchronousReloadsNeverWaitForAnotherExecutor() throws Exception {
+        Path file = directory.resolve("counter.yml");
+        write(file, 4);
+        SpecReference<Counter> reference = reference(file);
+        ExecutorService tick = Executors.newSingleThreadExecutor();
+        try {
+            CompletableFuture<Integer> count = CompletableFuture.supplyAsync(() -> {
+                reference.reloadAsync(tick);
+                // The background reload can only publish once this returns
+                reference.reload();
+                return reference.get().count();
+            }, tick);
+            assertEquals(4, (int) count.get(5, TimeUnit.SECONDS));
+        } finally {
+            tick.shutdown();
+        }
+    }
+
+    @Test
+    void queuedSavesAreServedByASingleSave() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<StringWriter> writers = new ArrayList<>();
+        DataSocket socket = new DataSocket(() -> new StringReader("count: 1\n"), () -> {
+            StringWriter writer = new StringWriter();
+            boolean first;
+            synchronized (writers) {
+                writers.add(writer);
+                first = writers.size() == 1;
+            }
+            if (first) {
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+            }
+            return writer;
+        });
+        SpecReference<Counter> reference = Specs.reference(Counter.class, CommentedConfiguration.from(socket));
+        reference.reload();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<CompletableFuture<Void>> saves = new ArrayList<>();
+            saves.add(CompletableFuture.runAsync(reference::save, executor));
+            assertTrue(writing.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 3; i++)
+                saves.add(CompletableFuture.runAsync(reference::save, executor));
+            // Give the queued saves time to queue up behind the first one
+            Thread.sleep(100);
+            reference.get().setCount(7);
+            release.countDown();
+            CompletableFuture.allOf(saves.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(2, writers.size());
+        assertTrue(writers.get(1).toString().contains("count: 7"), writers.get(1).toString());
+    }
+}
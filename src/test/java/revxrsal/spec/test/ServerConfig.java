@@ -82,11 +82,11 @@ public interface ServerConfig {
         //
         // This is very useful for heavy, repetitive computations.
         //
-        // Note: @Memoize does not (yet) consider arguments when caching values.
-        // Therefore, it is best to just use it to compute the parts that depend on the
-        // configuration values
+        // Methods with parameters cache one result per combination of arguments,
+        // up to @Memoize(maximumSize = ...) results.
         //
-        // Reloading, resetting, or calling a setter will re-compute all memoized values.
+        // Calling a setter or reloading will only re-compute the values that read
+        // the properties that changed. Resetting will re-compute all memoized values.
         //
         // See the docs of @Memoize for more info
         @Memoize
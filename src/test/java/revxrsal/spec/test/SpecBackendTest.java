@@ -0,0 +1,255 @@
+package revxrsal.spec.test;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import revxrsal.spec.CommentedConfiguration;
+import revxrsal.spec.SpecBackend;
+import revxrsal.spec.Specs;
+import revxrsal.spec.annotation.AsMap;
+import revxrsal.spec.annotation.ConfigSpec;
+import revxrsal.spec.annotation.HandledByProxy;
+import revxrsal.spec.annotation.IgnoreMethod;
+import revxrsal.spec.annotation.Key;
+import revxrsal.spec.annotation.Reset;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SpecBackendTest {
+
+    @ConfigSpec
+    public interface Arena {
+
+        default boolean enabled() {
+            return true;
+        }
+
+        void setEnabled(boolean enabled);
+
+        default int capacity() {
+            return 16;
+        }
+
+        void setCapacity(int capacity);
+
+        default long seed() {
+            return 42;
+        }
+
+        void setSeed(long seed);
+
+        default double ratio() {
+            return 0.5;
+        }
+
+        void setRatio(double ratio);
+
+        default char symbol() {
+            return 'a';
+        }
+
+        void setSymbol(char symbol);
+
+        @Key("display-name")
+        default String name() {
+            return "arena";
+        }
+
+        @Key("display-name")
+        void setName(String name);
+
+        default List<String> spawns() {
+            return Arrays.asList("north", "south");
+        }
+
+        void setSpawns(List<String> spawns);
+
+        Bounds bounds();
+
+        @IgnoreMethod
+        default String describe(String prefix) {
+            return prefix + name() + "/" + capacity();
+        }
+
+        @AsMap
+        Map<String, Object> view();
+
+        @AsMap(AsMap.Behavior.CLONE)
+        Map<String, Object> copy();
+
+        @AsMap(AsMap.Behavior.UNDERLYING_MAP)
+        Map<String, Object> underlying();
+
+        @Reset
+        void reset();
+    }
+
+    @ConfigSpec
+    public interface Bounds {
+
+        default int radius() {
+            return 8;
+        }
+
+        void setRadius(int radius);
+    }
+
+    @HandledByProxy
+    @Retention(RetentionPolicy.RUNTIME)
+    public @interface Transient {
+    }
+
+    @ConfigSpec
+    public interface Tagged {
+
+        default int weight() {
+            return 1;
+        }
+
+        @Transient
+        String note();
+
+        void setNote(String note);
+
+        @AsMap(AsMap.Behavior.UNDERLYING_MAP)
+        Map<String, Object> underlying();
+    }
+
+    @AfterEach
+    void resetBackend() {
+        Specs.setBackend(SpecBackend.PROXY);
+    }
+
+    private static Arena create(SpecBackend backend) {
+        Specs.setBackend(backend);
+        Arena arena = Specs.createDefault(Arena.class);
+        assertEquals(backend != SpecBackend.GENERATED, Proxy.isProxyClass(arena.getClass()));
+        return arena;
+    }
+
+    @ParameterizedTest
+    @EnumSource(SpecBackend.class)
+    void gettersReturnTheDefaults(SpecBackend backend) {
+        Arena arena = create(backend);
+        assertTrue(arena.enabled());
+        assertEquals(16, arena.capacity());
+        assertEquals(42L, arena.seed());
+        assertEquals(0.5, arena.ratio());
+        assertEquals('a', arena.symbol());
+        assertEquals("arena", arena.name());
+        assertEquals(Arrays.asList("north", "south"), arena.spawns());
+        assertEquals(8, arena.bounds().radius());
+        assertEquals("> arena/16", arena.describe("> "));
+    }
+
+    @ParameterizedTest
+    @EnumSource(SpecBackend.class)
+    void settersWriteTheProperties(SpecBackend backend) {
+        Arena arena = create(backend);
+        arena.setEnabled(false);
+        arena.setCapacity(-3);
+        arena.setSeed(Long.MAX_VALUE);
+        arena.setRatio(1.25);
+        arena.setSymbol('z');
+        arena.setName(null);
+        arena.setSpawns(Arrays.asList("east"));
+        arena.bounds().setRadius(2);
+
+        assertFalse(arena.enabled());
+        assertEquals(-3, arena.capacity());
+        assertEquals(Long.MAX_VALUE, arena.seed());
+        assertEquals(1.25, arena.ratio());
+        assertEquals('z', arena.symbol());
+        assertNull(arena.name());
+        assertEquals(Arrays.asList("east"), arena.spawns());
+        assertEquals(2, arena.bounds().radius());
+        assertEquals("> null/-3", arena.describe("> "));
+    }
+
+    @ParameterizedTest
+    @EnumSource(SpecBackend.class)
+    void mapsExposeThePropertiesByKey(SpecBackend backend) {
+        Arena arena = create(backend);
+        Map<String, Object> view = arena.view();
+        assertEquals("arena", view.get("display-name"));
+        assertEquals(16, view.get("capacity"));
+        assertThrows(UnsupportedOperationException.class, () -> view.put("capacity", 1));
+
+        Map<String, Object> copy = arena.copy();
+        copy.put("capacity", 1);
+        assertEquals(16, arena.capacity());
+
+        arena.underlying().put("capacity", 2);
+        assertEquals(2, arena.capacity());
+        assertEquals(2, view.get("capacity"));
+    }
+
+    @ParameterizedTest
+    @EnumSource(SpecBackend.class)
+    void resetRestoresTheDefaults(SpecBackend backend) {
+        Arena arena = create(backend);
+        arena.setCapacity(1);
+        arena.setName("other");
+        arena.bounds().setRadius(1);
+        arena.reset();
+        assertEquals(16, arena.capacity());
+        assertEquals("arena", arena.name());
+        assertEquals(8, arena.bounds().radius());
+    }
+
+    @ParameterizedTest
+    @EnumSource(SpecBackend.class)
+    void objectMethodsUseTheProperties(SpecBackend backend) {
+        Arena arena = create(backend);
+        Arena other = Specs.createDefault(Arena.class);
+        assertEquals(arena, other);
+        assertEquals(arena.hashCode(), other.hashCode());
+        assertNotEquals(arena, null);
+        assertTrue(arena.toString().startsWith("Arena("), arena.toString());
+        assertTrue(arena.toString().contains("capacity=16"), arena.toString());
+        assertTrue(arena.toString().contains("display-name=arena"), arena.toString());
+
+        other.setCapacity(17);
+        assertNotEquals(arena, other);
+        assertTrue(other.toString().contains("capacity=17"), other.toString());
+    }
+
+    @ParameterizedTest
+    @EnumSource(SpecBackend.class)
+    void specsAreSerializedTheSameWay(SpecBackend backend) {
+        Arena arena = create(backend);
+        arena.setSymbol('q');
+        arena.bounds().setRadius(3);
+        String json = CommentedConfiguration.GSON.toJson(arena, Arena.class);
+        Specs.setBackend(SpecBackend.PROXY);
+        String expected = CommentedConfiguration.GSON.toJson(Specs.createDefault(Arena.class), Arena.class)
+                .replace("\"symbol\":\"a\"", "\"symbol\":\"q\"")
+                .replace("\"radius\":8", "\"radius\":3");
+        assertEquals(expected, json);
+
+        Specs.setBackend(backend);
+        Arena decoded = CommentedConfiguration.GSON.fromJson(json, Arena.class);
+        assertEquals(arena, decoded);
+        assertEquals('q', decoded.symbol());
+        assertEquals(3, decoded.bounds().radius());
+    }
+
+    @ParameterizedTest
+    @EnumSource(SpecBackend.class)
+    void propertiesWithoutSlotsAreKeptInTheMap(SpecBackend backend) {
+        Specs.setBackend(backend);
+        Tagged tagged = Specs.createDefault(Tagged.class);
+        assertNull(tagged.note());
+        tagged.setNote("heavy");
+        assertEquals("heavy", tagged.note());
+        assertEquals("heavy", tagged.underlying().get("note"));
+        assertEquals(1, tagged.weight());
+    }
+}
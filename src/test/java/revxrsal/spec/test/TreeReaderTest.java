@@ -0,0 +1,154 @@
+package revxrsal.spec.test;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+import org.junit.jupiter.api.io.TempDir;
+import revxrsal.spec.CommentedConfiguration;
+import revxrsal.spec.DataSocket;
+import revxrsal.spec.SpecSerializationException;
+import revxrsal.spec.annotation.ConfigSpec;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TreeReaderTest {
+
+    public enum Color {
+        RED, BLUE
+    }
+
+    @ConfigSpec
+    public interface Zone {
+
+        String name();
+
+        int level();
+
+        double ratio();
+
+        long big();
+
+        char letter();
+
+        boolean active();
+
+        Color color();
+
+        List<Integer> ids();
+
+        Map<String, Bounds> areas();
+
+        Bounds bounds();
+    }
+
+    @ConfigSpec
+    public interface Bounds {
+
+        default int radius() {
+            return 1;
+        }
+
+        default List<String> tags() {
+            return Arrays.asList("default");
+        }
+    }
+
+    private static final String ZONE = "name: spawn\n"
+            + "level: 3\n"
+            + "ratio: 1.5\n"
+            + "big: 12345678901234\n"
+            + "letter: q\n"
+            + "active: true\n"
+            + "color: BLUE\n"
+            + "ids: [1, 2, 3]\n"
+            + "areas:\n"
+            + "  a: {radius: 4, tags: [x, y]}\n"
+            + "  b: {}\n"
+            + "bounds:\n"
+            + "  radius: 5\n"
+            + "unknown: {deep: [1, {x: 2}]}\n";
+
+    @TempDir
+    Path directory;
+
+    private CommentedConfiguration config(String content) throws IOException {
+        Path file = directory.resolve("zone.yml");
+        Files.write(file, content.getBytes());
+        return CommentedConfiguration.from(DataSocket.fromPath(file));
+    }
+
+    /**
+     * Decodes the data through a JSON string, like specs used to be decoded
+     */
+    private static Zone throughJson(Map<String, Object> data) {
+        return CommentedConfiguration.GSON.fromJson(CommentedConfiguration.GSON.toJson(data), Zone.class);
+    }
+
+    private static List<Object> errorPath(Executable executable) {
+        Throwable error = assertThrows(Exception.class, executable);
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SpecSerializationException)
+                return ((SpecSerializationException) cause).getPath();
+        }
+        throw new AssertionError("no path in " + error, error);
+    }
+
+    @Test
+    void treesAreDecodedLikeJson() throws IOException {
+        CommentedConfiguration config = config(ZONE);
+        Map<String, Object> data = config.read();
+        Zone zone = config.getAs(data, Zone.class);
+        assertEquals(throughJson(data), zone);
+
+        assertEquals("spawn", zone.name());
+        assertEquals(3, zone.level());
+        assertEquals(1.5, zone.ratio());
+        assertEquals(12345678901234L, zone.big());
+        assertEquals('q', zone.letter());
+        assertTrue(zone.active());
+        assertEquals(Color.BLUE, zone.color());
+        assertEquals(Arrays.asList(1, 2, 3), zone.ids());
+        assertEquals(4, zone.areas().get("a").radius());
+        assertEquals(Arrays.asList("x", "y"), zone.areas().get("a").tags());
+        assertEquals(1, zone.areas().get("b").radius());
+        assertEquals(Arrays.asList("default"), zone.areas().get("b").tags());
+        assertEquals(5, zone.bounds().radius());
+    }
+
+    @Test
+    void singleValuesAreDecodedLikeJson() throws IOException {
+        CommentedConfiguration config = config(ZONE);
+        config.load();
+        assertEquals(Integer.valueOf(3), config.get("level", Integer.class));
+        assertEquals(Long.valueOf(3), config.get("level", Long.class));
+        assertEquals("3", config.get("level", String.class));
+        assertEquals(Double.valueOf(12345678901234.0), config.get("big", Double.class));
+        assertEquals(Color.BLUE, config.get("color", Color.class));
+        assertEquals(5, config.get("bounds", Bounds.class).radius());
+        assertNull(config.get("missing", String.class));
+        assertThrows(Exception.class, () -> config.get("missing", Bounds.class));
+        assertThrows(Exception.class, () -> CommentedConfiguration.GSON.fromJson("null", Bounds.class));
+    }
+
+    @Test
+    void errorsHaveThePathOfTheValue() throws IOException {
+        Map<String, Object> data = config("level: abc\n").read();
+        CommentedConfiguration config = config("");
+        assertEquals(Arrays.asList("level"), errorPath(() -> config.getAs(data, Zone.class)));
+        assertEquals(Arrays.asList("level"), errorPath(() -> throughJson(data)));
+
+        Map<String, Object> list = config("ids: [1, x]\n").read();
+        assertEquals(Arrays.asList("ids", 1), errorPath(() -> config.getAs(list, Zone.class)));
+        assertEquals(Arrays.asList("ids", 1), errorPath(() -> throughJson(list)));
+
+        // Gson's own reader leaves map keys out of the path
+        Map<String, Object> nested = config("areas:\n  a:\n    radius: [1]\n").read();
+        assertEquals(Arrays.asList("areas", "a", "radius"), errorPath(() -> config.getAs(nested, Zone.class)));
+    }
+}
@@ -0,0 +1,143 @@
+package revxrsal.spec.test;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import revxrsal.spec.CommentedConfiguration;
+import revxrsal.spec.DataSocket;
+import revxrsal.spec.Specs;
+import revxrsal.spec.annotation.ConfigSpec;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TreeWriterTest {
+
+    public enum Color {
+        RED, BLUE
+    }
+
+    @ConfigSpec
+    public interface Zone {
+
+        default String name() {
+            return "spawn";
+        }
+
+        void setName(String name);
+
+        default int level() {
+            return 3;
+        }
+
+        default double ratio() {
+            return 1.5;
+        }
+
+        default long big() {
+            return 12345678901234L;
+        }
+
+        default char letter() {
+            return 'q';
+        }
+
+        default Color color() {
+            return Color.BLUE;
+        }
+
+        default List<Integer> ids() {
+            return Arrays.asList(1, 2, 3);
+        }
+
+        default Map<String, Bounds> areas() {
+            Map<String, Bounds> areas = new LinkedHashMap<>();
+            areas.put("a", Specs.createDefault(Bounds.class));
+            return areas;
+        }
+
+        Bounds bounds();
+    }
+
+    @ConfigSpec
+    public interface Bounds {
+
+        default int radius() {
+            return 4;
+        }
+
+        default List<String> tags() {
+            return Arrays.asList("x", "y");
+        }
+    }
+
+    @TempDir
+    Path directory;
+
+    private CommentedConfiguration config() {
+        return CommentedConfiguration.from(DataSocket.fromPath(directory.resolve("zone.yml")));
+    }
+
+    @Test
+    void specsAreWrittenLikeJson() {
+        Zone zone = Specs.createDefault(Zone.class);
+        CommentedConfiguration config = config();
+        config.setTo(zone, Zone.class);
+        Map<String, Object> data = config.getData();
+        assertEquals(CommentedConfiguration.GSON.toJson(zone, Zone.class), CommentedConfiguration.GSON.toJson(data));
+
+        assertEquals(3, data.get("level"));
+        assertEquals(1.5, data.get("ratio"));
+        assertEquals(12345678901234L, data.get("big"));
+        assertEquals("q", data.get("letter"));
+        assertEquals("BLUE", data.get("color"));
+        assertEquals(Arrays.asList(1, 2, 3), data.get("ids"));
+        Map<?, ?> area = (Map<?, ?>) ((Map<?, ?>) data.get("areas")).get("a");
+        assertEquals(4, area.get("radius"));
+        assertEquals(Arrays.asList("x", "y"), area.get("tags"));
+        assertEquals(config.getAs(Zone.class), zone);
+    }
+
+    @Test
+    void nullPropertiesAreLeftOut() {
+        Zone zone = Specs.createDefault(Zone.class);
+        zone.setName(null);
+        CommentedConfiguration config = config();
+        config.setTo(zone, Zone.class);
+        assertFalse(config.contains("name"));
+        assertTrue(config.contains("level"));
+    }
+
+    @Test
+    void singleValuesAreWrittenLikeJson() {
+        CommentedConfiguration config = config();
+        config.set("level", 7);
+        config.set("ids", Arrays.asList(4, 5));
+        config.set("bounds", Specs.createDefault(Bounds.class), Bounds.class);
+        config.set("color", Color.RED);
+        assertEquals(7, config.getData().get("level"));
+        assertEquals(Arrays.asList(4, 5), config.getData().get("ids"));
+        assertEquals(4, ((Map<?, ?>) config.getData().get("bounds")).get("radius"));
+        assertEquals("RED", config.getData().get("color"));
+
+        config.set("color", null);
+        assertFalse(config.contains("color"));
+    }
+
+    @Test
+    void writtenTreesAreSavedAndReadBack() {
+        Zone zone = Specs.createDefault(Zone.class);
+        CommentedConfiguration config = config();
+        config.setTo(zone, Zone.class);
+        config.save();
+
+        CommentedConfiguration other = config();
+        other.load();
+        assertEquals(config.getData(), other.getData());
+        assertEquals(zone, other.getAs(Zone.class));
+    }
+}